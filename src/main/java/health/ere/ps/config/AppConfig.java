@@ -1,5 +1,6 @@
 package health.ere.ps.config;
 
+import java.time.Duration;
 import java.util.Optional;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -33,18 +34,69 @@ public class AppConfig {
     @ConfigProperty(name = "ere-workflow-service.vau.enable")
     boolean enableVau;
 
+    @ConfigProperty(name = "ere-workflow-service.vau.key-cache.ttl", defaultValue = "PT1H")
+    Duration vauKeyCacheTtl;
+
+    @ConfigProperty(name = "ere-workflow-service.vau.connection-pool.max-total", defaultValue = "20")
+    int vauConnectionPoolMaxTotal;
+
+    @ConfigProperty(name = "ere-workflow-service.vau.connection-pool.max-per-route", defaultValue = "10")
+    int vauConnectionPoolMaxPerRoute;
+
+    @ConfigProperty(name = "ere-workflow-service.vau.connection-pool.idle-timeout", defaultValue = "PT30S")
+    Duration vauConnectionPoolIdleTimeout;
+
+    @ConfigProperty(name = "ere-workflow-service.vau.connection-pool.time-to-live", defaultValue = "PT5M")
+    Duration vauConnectionPoolTimeToLive;
+
+    @ConfigProperty(name = "ere-workflow-service.vau.connect-timeout", defaultValue = "PT10S")
+    Duration vauConnectTimeout;
+
+    @ConfigProperty(name = "ere-workflow-service.vau.socket-timeout", defaultValue = "PT60S")
+    Duration vauSocketTimeout;
+
+    @ConfigProperty(name = "ere-workflow-service.vau.tls-session-timeout", defaultValue = "PT1H")
+    Duration vauTlsSessionTimeout;
+
     @ConfigProperty(name = "ere-workflow-service.batch-sign.enable")
     boolean enableBatchSign;
 
     @ConfigProperty(name = "ere-workflow-service.includeRevocationInfo.enable", defaultValue = "true")
     boolean includeRevocationInfo;
 
+    @ConfigProperty(name = "ere-workflow-service.task-parallelism", defaultValue = "4")
+    int taskParallelism;
+
+    @ConfigProperty(name = "ere-workflow-service.max-task-parallelism", defaultValue = "16")
+    int maxTaskParallelism;
+
     @ConfigProperty(name = "ere.workflow-service.prescription.write-signature-file")
     boolean writeSignatureFile;
 
     @ConfigProperty(name = "ere-workflow-service.user-agent")
     String userAgent;
 
+    @ConfigProperty(name = "connector.services-provider.max-size", defaultValue = "50")
+    int connectorServicesProviderMaxSize;
+
+    @ConfigProperty(name = "connector.services-provider.idle-timeout", defaultValue = "PT1H")
+    Duration connectorServicesProviderIdleTimeout;
+
+    @ConfigProperty(name = "connector.card-handle-cache.ttl", defaultValue = "PT5M")
+    Duration cardHandleCacheTtl;
+
+    @ConfigProperty(name = "connector.card-handle-cache.max-size", defaultValue = "50")
+    int cardHandleCacheMaxSize;
+
+    @ConfigProperty(name = "idp.bearer-token-cache.max-size", defaultValue = "50")
+    int bearerTokenCacheMaxSize;
+
+    @ConfigProperty(name = "idp.bearer-token-cache.idle-timeout", defaultValue = "PT1H")
+    Duration bearerTokenCacheIdleTimeout;
+
+    @ConfigProperty(name = "idp.bearer-token-cache.refresh-before-expiry", defaultValue = "PT1M")
+    Duration bearerTokenRefreshBeforeExpiry;
+
     @ConfigProperty(name = "connector.crypt")
     String connectorCrypt;
 
@@ -89,6 +141,38 @@ public class AppConfig {
         return enableVau;
     }
 
+    public Duration getVauKeyCacheTtl() {
+        return vauKeyCacheTtl;
+    }
+
+    public int getVauConnectionPoolMaxTotal() {
+        return vauConnectionPoolMaxTotal;
+    }
+
+    public int getVauConnectionPoolMaxPerRoute() {
+        return vauConnectionPoolMaxPerRoute;
+    }
+
+    public Duration getVauConnectionPoolIdleTimeout() {
+        return vauConnectionPoolIdleTimeout;
+    }
+
+    public Duration getVauConnectionPoolTimeToLive() {
+        return vauConnectionPoolTimeToLive;
+    }
+
+    public Duration getVauConnectTimeout() {
+        return vauConnectTimeout;
+    }
+
+    public Duration getVauSocketTimeout() {
+        return vauSocketTimeout;
+    }
+
+    public Duration getVauTlsSessionTimeout() {
+        return vauTlsSessionTimeout;
+    }
+
     public boolean enableBatchSign() {
         return enableBatchSign;
     }
@@ -97,6 +181,14 @@ public class AppConfig {
         return includeRevocationInfo;
     }
 
+    public int getTaskParallelism() {
+        return taskParallelism;
+    }
+
+    public int getMaxTaskParallelism() {
+        return maxTaskParallelism;
+    }
+
     public String getUserAgent() {
         return userAgent;
     }
@@ -105,6 +197,34 @@ public class AppConfig {
         return connectorCrypt;
     }
 
+    public int getConnectorServicesProviderMaxSize() {
+        return connectorServicesProviderMaxSize;
+    }
+
+    public Duration getConnectorServicesProviderIdleTimeout() {
+        return connectorServicesProviderIdleTimeout;
+    }
+
+    public Duration getCardHandleCacheTtl() {
+        return cardHandleCacheTtl;
+    }
+
+    public int getCardHandleCacheMaxSize() {
+        return cardHandleCacheMaxSize;
+    }
+
+    public int getBearerTokenCacheMaxSize() {
+        return bearerTokenCacheMaxSize;
+    }
+
+    public Duration getBearerTokenCacheIdleTimeout() {
+        return bearerTokenCacheIdleTimeout;
+    }
+
+    public Duration getBearerTokenRefreshBeforeExpiry() {
+        return bearerTokenRefreshBeforeExpiry;
+    }
+
     public Optional<String> getCertAuthStoreFile() {
         return certAuthStoreFile;
     }
@@ -27,6 +27,8 @@ public class RuntimeConfig extends UserConfig {
 
     protected String prescriptionServerURL = null;
 
+    protected Integer taskParallelism = null;
+
     
     public RuntimeConfig() {
         this.updateProperties(new UserConfigurations());
@@ -89,6 +91,7 @@ public class RuntimeConfig extends UserConfig {
         this.idpClientId = httpServletRequest.getHeader("X-idpClientId");
         this.idpAuthRequestRedirectURL = httpServletRequest.getHeader("X-idpAuthRequestRedirectURL");
         this.prescriptionServerURL = httpServletRequest.getHeader("X-prescriptionServerURL");
+        this.taskParallelism = parseInteger(httpServletRequest.getHeader("X-taskParallelism"));
         this.updateProperties(new UserConfigurations(httpServletRequest));
     }
 
@@ -104,6 +107,9 @@ public class RuntimeConfig extends UserConfig {
             this.idpClientId = jsonObject.getString("idp.client.id", null);
             this.idpAuthRequestRedirectURL = jsonObject.getString("idp.auth.request.redirect.url", null);
             this.prescriptionServerURL = jsonObject.getString("ere.workflow-service.prescription.server.url", null);
+            if(jsonObject.containsKey("ere-workflow-service.task-parallelism")) {
+                this.taskParallelism = parseInteger(jsonObject.get("ere-workflow-service.task-parallelism").toString().replace("\"", ""));
+            }
             this.updateProperties(new UserConfigurations(jsonObject));
         }
     }
@@ -156,6 +162,26 @@ public class RuntimeConfig extends UserConfig {
         this.prescriptionServerURL = prescriptionServerURL;
     }
 
+    public Integer getTaskParallelism() {
+        return this.taskParallelism;
+    }
+
+    public void setTaskParallelism(Integer taskParallelism) {
+        this.taskParallelism = taskParallelism;
+    }
+
+    private static Integer parseInteger(String value) {
+        if(value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch(NumberFormatException ex) {
+            log.log(Level.WARNING, "Could not parse integer: "+value, ex);
+            return null;
+        }
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(eHBAHandle, SMCBHandle, idpBaseURL, idpAuthRequestRedirectURL, idpClientId, prescriptionServerURL, this.getConfigurations(), super.hashCode());
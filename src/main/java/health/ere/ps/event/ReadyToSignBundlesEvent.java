@@ -10,21 +10,20 @@ import javax.websocket.Session;
 
 import org.hl7.fhir.r4.model.Bundle;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
+import health.ere.ps.service.fhir.FhirContextProvider;
 
 public class ReadyToSignBundlesEvent extends AbstractEvent {
 
     public List<List<Bundle>> listOfListOfBundles = new ArrayList<>();
 
     public ReadyToSignBundlesEvent(JsonObject jsonObject) {
+        IParser jsonParser = FhirContextProvider.newJsonParser();
         for (JsonValue jsonValue : jsonObject.getJsonArray("payload")) {
             List<Bundle> bundles = new ArrayList<>();
 
             if (jsonValue instanceof JsonArray) {
                 for (JsonValue singleBundle : (JsonArray) jsonValue) {
-                    IParser jsonParser = FhirContext.forR4().newJsonParser();
-
                     Bundle bundle = jsonParser.parseResource(Bundle.class, singleBundle.toString());
                     bundles.add(bundle);
                 }
@@ -15,8 +15,8 @@ import javax.websocket.Session;
 
 import org.hl7.fhir.r4.model.Bundle;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
+import health.ere.ps.service.fhir.FhirContextProvider;
 
 public class SignAndUploadBundlesEvent extends AbstractEvent {
 
@@ -32,6 +32,14 @@ public class SignAndUploadBundlesEvent extends AbstractEvent {
 
 
     public SignAndUploadBundlesEvent(JsonObject jsonObject) {
+        this(jsonObject, parseBundles(getBundleJsons(jsonObject)));
+    }
+
+    /**
+     * Creates the event for bundles that were already parsed from the payload
+     * of the given message, the payload is not parsed again.
+     */
+    public SignAndUploadBundlesEvent(JsonObject jsonObject, List<List<Bundle>> listOfListOfBundles) {
         parseRuntimeConfig(jsonObject);
         if(jsonObject.containsKey("flowtype")) {        	
         	setFlowtype(jsonObject.getString("flowtype"));
@@ -48,20 +56,13 @@ public class SignAndUploadBundlesEvent extends AbstractEvent {
                 kimConfigMap.put(entry.getKey(), ((JsonString)entry.getValue()).getString());
             }
         }
-        
-        for (JsonValue jsonValue : jsonObject.getJsonArray("payload")) {
-            List<Bundle> bundles = new ArrayList<>();
-
-            if (jsonValue instanceof JsonArray) {
-                for (JsonValue singleBundle : (JsonArray) jsonValue) {
-                    IParser jsonParser = FhirContext.forR4().newJsonParser();
+        this.listOfListOfBundles = listOfListOfBundles;
+    }
 
-                    Bundle bundle = jsonParser.parseResource(Bundle.class, singleBundle.toString());
-                    bundles.add(bundle);
-                }
-            }
-            listOfListOfBundles.add(bundles);
-        }
+    public SignAndUploadBundlesEvent(JsonObject jsonObject, List<List<Bundle>> listOfListOfBundles, Session replyTo, String id) {
+        this(jsonObject, listOfListOfBundles);
+        this.replyTo = replyTo;
+        this.id = id;
     }
 
     public SignAndUploadBundlesEvent(JsonObject jsonObject, Session replyTo, String id) {
@@ -80,6 +81,38 @@ public class SignAndUploadBundlesEvent extends AbstractEvent {
         listOfListOfBundles.add(Arrays.asList(bundles));
     }
 
+    /**
+     * Serializes every bundle of the payload once, the result can be used
+     * for the validation and for {@link #parseBundles(List)}.
+     */
+    public static List<List<String>> getBundleJsons(JsonObject jsonObject) {
+        List<List<String>> bundleJsons = new ArrayList<>();
+        for (JsonValue jsonValue : jsonObject.getJsonArray("payload")) {
+            List<String> bundles = new ArrayList<>();
+
+            if (jsonValue instanceof JsonArray) {
+                for (JsonValue singleBundle : (JsonArray) jsonValue) {
+                    bundles.add(singleBundle.toString());
+                }
+            }
+            bundleJsons.add(bundles);
+        }
+        return bundleJsons;
+    }
+
+    public static List<List<Bundle>> parseBundles(List<List<String>> bundleJsons) {
+        IParser jsonParser = FhirContextProvider.newJsonParser();
+        List<List<Bundle>> listOfListOfBundles = new ArrayList<>(bundleJsons.size());
+        for (List<String> singleBundles : bundleJsons) {
+            List<Bundle> bundles = new ArrayList<>(singleBundles.size());
+            for (String singleBundle : singleBundles) {
+                bundles.add(jsonParser.parseResource(Bundle.class, singleBundle));
+            }
+            listOfListOfBundles.add(bundles);
+        }
+        return listOfListOfBundles;
+    }
+
     public List<List<Bundle>> getListOfListOfBundles() {
         return this.listOfListOfBundles;
     }
@@ -0,0 +1,18 @@
+package health.ere.ps.exception.bundle;
+
+/**
+ * Thrown when a bundle should be validated before the validator finished its
+ * warm-up.
+ */
+public class ValidatorNotReadyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ValidatorNotReadyException(String msg) {
+        super(msg);
+    }
+
+    public ValidatorNotReadyException(String msg, Throwable e) {
+        super(msg, e);
+    }
+}
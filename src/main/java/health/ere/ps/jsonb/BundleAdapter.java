@@ -1,7 +1,5 @@
 package health.ere.ps.jsonb;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.IParser;
 import org.hl7.fhir.r4.model.Bundle;
 
 import javax.json.Json;
@@ -9,17 +7,17 @@ import javax.json.JsonObject;
 import javax.json.bind.adapter.JsonbAdapter;
 import java.io.StringReader;
 
+import health.ere.ps.service.fhir.FhirContextProvider;
+
 public class BundleAdapter implements JsonbAdapter<Bundle, JsonObject> {
 
-    IParser iParser = FhirContext.forR4().newJsonParser();
-    
     @Override
     public JsonObject adaptToJson(Bundle b) {
-        return Json.createReader(new StringReader(iParser.encodeResourceToString(b))).readObject();
+        return Json.createReader(new StringReader(FhirContextProvider.newJsonParser().encodeResourceToString(b))).readObject();
     }
 
     @Override
     public Bundle adaptFromJson(JsonObject adapted) {
-        return iParser.parseResource(Bundle.class, adapted.toString());
+        return FhirContextProvider.newJsonParser().parseResource(Bundle.class, adapted.toString());
     }
 }
\ No newline at end of file
@@ -20,6 +20,12 @@ public class Status implements Serializable{
     private String comfortsignatureInformation;
     private boolean fachdienstReachable;
     private String fachdienstInformation;
+    private String vauInformation;
+    private boolean validatorReady;
+    private String validatorInformation;
+    private String websocketInformation;
+    private String connectorServicesInformation;
+    private String bearerTokenInformation;
 
     public void setConnectorReachable(boolean isOK, String statusDescription) {
         this.connectorReachable = isOK;
@@ -66,6 +72,27 @@ public class Status implements Serializable{
         this.fachdienstInformation = statusDescription;
     }
 
+    public void setVauInformation(String vauInformation) {
+        this.vauInformation = vauInformation;
+    }
+
+    public void setValidatorReady(boolean isOK, String statusDescription) {
+        this.validatorReady = isOK;
+        this.validatorInformation = statusDescription;
+    }
+
+    public void setWebsocketInformation(String websocketInformation) {
+        this.websocketInformation = websocketInformation;
+    }
+
+    public void setConnectorServicesInformation(String connectorServicesInformation) {
+        this.connectorServicesInformation = connectorServicesInformation;
+    }
+
+    public void setBearerTokenInformation(String bearerTokenInformation) {
+        this.bearerTokenInformation = bearerTokenInformation;
+    }
+
     // the following GET-ers are needed in JsonbBuilder...toJson
     // in Websocket to create a JSON string from this object
     public boolean getConnectorReachable() {
@@ -127,5 +154,26 @@ public class Status implements Serializable{
     public String getBearerToken() {
         return this.bearerToken;
     }
+    public String getVauInformation() {
+        return this.vauInformation;
+    }
+
+    public boolean getValidatorReady() {
+        return this.validatorReady;
+    }
+    public String getValidatorInformation() {
+        return this.validatorInformation;
+    }
+    public String getWebsocketInformation() {
+        return this.websocketInformation;
+    }
+
+    public String getConnectorServicesInformation() {
+        return this.connectorServicesInformation;
+    }
+
+    public String getBearerTokenInformation() {
+        return this.bearerTokenInformation;
+    }
 
 }
@@ -22,14 +22,13 @@ import javax.ws.rs.core.Response;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Task;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
-import ca.uhn.fhir.parser.IParser;
 import de.gematik.ws.conn.eventservice.v7.GetCardsResponse;
 import de.gematik.ws.conn.eventservice.wsdl.v7.FaultMessage;
 import de.gematik.ws.conn.signatureservice.v7.SignResponse;
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.exception.gematik.ERezeptWorkflowException;
+import health.ere.ps.service.fhir.FhirContextProvider;
 import health.ere.ps.service.gematik.ERezeptWorkflowService;
 
 @Path("/workflow")
@@ -38,9 +37,6 @@ public class ERezeptWorkflowResource {
     @Inject
     ERezeptWorkflowService eRezeptWorkflowService;
 
-    static IParser jsonParser = FhirContext.forR4().newJsonParser();
-    static IParser xmlParser = FhirContext.forR4().newXmlParser();
-
     @Context
     HttpServletRequest httpServletRequest;
 
@@ -53,9 +49,9 @@ public class ERezeptWorkflowResource {
 	}
         Task task = eRezeptWorkflowService.createERezeptTask(true, extractRuntimeConfigFromHeaders(httpServletRequest), flowtype);
         if("application/xml".equals(accept)) {
-            return Response.ok().entity(xmlParser.encodeResourceToString(task)).type(MediaType.APPLICATION_XML).build();
+            return Response.ok().entity(FhirContextProvider.newXmlParser().encodeResourceToString(task)).type(MediaType.APPLICATION_XML).build();
         } else {
-            return Response.ok().entity(jsonParser.encodeResourceToString(task)).type(MediaType.APPLICATION_JSON).build();
+            return Response.ok().entity(FhirContextProvider.newJsonParser().encodeResourceToString(task)).type(MediaType.APPLICATION_JSON).build();
         }
     }
 
@@ -82,7 +78,7 @@ public class ERezeptWorkflowResource {
     }
 
     static Bundle string2bundle(String contentType, String bundle) {
-        Bundle bundleObject = "application/xml".equals(contentType) ? xmlParser.parseResource(Bundle.class, bundle) : jsonParser.parseResource(Bundle.class, bundle);
+        Bundle bundleObject = "application/xml".equals(contentType) ? FhirContextProvider.newXmlParser().parseResource(Bundle.class, bundle) : FhirContextProvider.newJsonParser().parseResource(Bundle.class, bundle);
         return bundleObject;
     }
 
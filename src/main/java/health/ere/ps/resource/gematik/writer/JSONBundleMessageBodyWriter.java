@@ -15,15 +15,12 @@ import javax.ws.rs.ext.Provider;
 
 import org.hl7.fhir.r4.model.Bundle;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.IParser;
+import health.ere.ps.service.fhir.FhirContextProvider;
 
 @Provider
 @Produces(MediaType.APPLICATION_JSON)
 public class JSONBundleMessageBodyWriter implements MessageBodyWriter<Bundle> {
 
-    static IParser jsonParser = FhirContext.forR4().newJsonParser();
-
     @Override
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return type.isAssignableFrom(Bundle.class) && mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE); 
@@ -33,7 +30,7 @@ public class JSONBundleMessageBodyWriter implements MessageBodyWriter<Bundle> {
     public void writeTo(Bundle t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
             MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
             throws IOException, WebApplicationException {
-        jsonParser.encodeResourceToWriter(t, new OutputStreamWriter(entityStream, "UTF-8"));
+        FhirContextProvider.newJsonParser().encodeResourceToWriter(t, new OutputStreamWriter(entityStream, "UTF-8"));
     }
     
 }
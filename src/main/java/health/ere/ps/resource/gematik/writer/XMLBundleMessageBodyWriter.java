@@ -15,15 +15,12 @@ import javax.ws.rs.ext.Provider;
 
 import org.hl7.fhir.r4.model.Bundle;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.IParser;
+import health.ere.ps.service.fhir.FhirContextProvider;
 
 @Provider
 @Produces(MediaType.APPLICATION_XML)
 public class XMLBundleMessageBodyWriter implements MessageBodyWriter<Bundle> {
 
-    static IParser xmlParser = FhirContext.forR4().newXmlParser();
-
     @Override
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return type.isAssignableFrom(Bundle.class) && mediaType.isCompatible(MediaType.APPLICATION_XML_TYPE); 
@@ -33,7 +30,7 @@ public class XMLBundleMessageBodyWriter implements MessageBodyWriter<Bundle> {
     public void writeTo(Bundle t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
             MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
             throws IOException, WebApplicationException {
-        xmlParser.encodeResourceToWriter(t, new OutputStreamWriter(entityStream, "UTF-8"));
+        FhirContextProvider.newXmlParser().encodeResourceToWriter(t, new OutputStreamWriter(entityStream, "UTF-8"));
     }
     
 }
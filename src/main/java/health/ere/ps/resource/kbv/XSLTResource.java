@@ -13,8 +13,7 @@ import javax.xml.transform.TransformerException;
 
 import org.hl7.fhir.r4.model.Bundle;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.IParser;
+import health.ere.ps.service.fhir.FhirContextProvider;
 import health.ere.ps.service.kbv.XSLTService;
 
 @Path("/kbv")
@@ -22,9 +21,6 @@ public class XSLTResource {
     @Inject
     XSLTService xsltService;
 
-    IParser jsonParser = FhirContext.forR4().newJsonParser();
-    IParser xmlParser = FhirContext.forR4().newXmlParser();
-
     @POST
     @Path("/transform")
     public Response transform(@HeaderParam("Content-Type") String contentType, String bundle) {
@@ -38,7 +34,7 @@ public class XSLTResource {
     }
 
     Bundle string2bundle(String contentType, String bundle) {
-        Bundle bundleObject = "application/xml".equals(contentType) ? xmlParser.parseResource(Bundle.class, bundle) : jsonParser.parseResource(Bundle.class, bundle);
+        Bundle bundleObject = "application/xml".equals(contentType) ? FhirContextProvider.newXmlParser().parseResource(Bundle.class, bundle) : FhirContextProvider.newJsonParser().parseResource(Bundle.class, bundle);
         return bundleObject;
     }
 }
@@ -13,6 +13,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
+import health.ere.ps.exception.bundle.ValidatorNotReadyException;
 import health.ere.ps.validation.fhir.bundle.PrescriptionBundleValidator;
 
 @Path("/validate")
@@ -24,8 +25,12 @@ public class PrescriptionBundleValidatorResource {
     @POST
     @Consumes("application/json")
     public Response post(JsonObject bundle) {
-        JsonObjectBuilder builder = prescriptionBundleValidator.validateBundle(bundle);
-        return Response.ok(builder.build()).build();
+        try {
+            JsonObjectBuilder builder = prescriptionBundleValidator.validateBundle(bundle);
+            return Response.ok(builder.build()).build();
+        } catch (ValidatorNotReadyException e) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).build();
+        }
     }
 
     @POST
@@ -33,11 +38,15 @@ public class PrescriptionBundleValidatorResource {
     public Response post(String bundle) {
         List<String> errorsList = new ArrayList<>();
 
-        if (!prescriptionBundleValidator.validateResource(bundle,
-            true, errorsList).isSuccessful()) {
-            return Response.status(Status.BAD_REQUEST).entity(getXmlForErrorsList(errorsList)).build();
-        } else {
-            return Response.ok().build();
+        try {
+            if (!prescriptionBundleValidator.validateResource(bundle,
+                true, errorsList).isSuccessful()) {
+                return Response.status(Status.BAD_REQUEST).entity(getXmlForErrorsList(errorsList)).build();
+            } else {
+                return Response.ok().build();
+            }
+        } catch (ValidatorNotReadyException e) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).build();
         }
     }
 
@@ -0,0 +1,149 @@
+package health.ere.ps.service.common.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the values that were computed for the last contents, e.g. the
+ * validation result or the HTML of a bundle.
+ * <p>
+ * The key is a digest of the content, by default the SHA-256 of its UTF-8
+ * bytes, so the content itself is not kept. The least recently used value
+ * is removed when the cache is full. A max size of 0 disables the cache.
+ *
+ * @param <V> the computed value, it is shared by all callers and must not be changed
+ */
+public class DigestCache<V> {
+
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception> {
+        V load(String content) throws E;
+    }
+
+    private final int maxSize;
+    private final Function<String, String> digest;
+    private final Map<String, V> values;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DigestCache(int maxSize) {
+        this(maxSize, DigestCache::sha256);
+    }
+
+    /**
+     * @param digest creates the key of a content, contents with the same key
+     *               share the value
+     */
+    public DigestCache(int maxSize, Function<String, String> digest) {
+        this.maxSize = Math.max(0, maxSize);
+        this.digest = digest;
+        this.values = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                if (size() > DigestCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value of the content or loads it. The loader is
+     * called outside of the lock, so the same content may be loaded twice
+     * when it is requested twice at the same time.
+     */
+    public <E extends Exception> V get(String content, Loader<V, E> loader) throws E {
+        return get(content, () -> digest.apply(content), loader);
+    }
+
+    /**
+     * Like {@link #get(String, Loader)} but with a key that the caller
+     * creates, e.g. from an already parsed form of the content. The key is
+     * only created when the cache is enabled.
+     */
+    public <E extends Exception> V get(String content, Supplier<String> keySupplier, Loader<V, E> loader) throws E {
+        if (maxSize == 0) {
+            misses.incrementAndGet();
+            return loader.load(content);
+        }
+        String key = keySupplier.get();
+        V value;
+        synchronized (values) {
+            value = values.get(key);
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+        misses.incrementAndGet();
+        value = loader.load(content);
+        synchronized (values) {
+            values.put(key, value);
+        }
+        return value;
+    }
+
+    public void clear() {
+        synchronized (values) {
+            values.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (values) {
+            return values.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public double getHitRate() {
+        long requests = getHits() + getMisses();
+        return requests == 0 ? 0d : (double) getHits() / requests;
+    }
+
+    /**
+     * @return the Base64 encoded SHA-256 of the UTF-8 bytes of the content
+     */
+    public static String sha256(String content) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(messageDigest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d/%d, hits=%d, misses=%d, hitRate=%.2f, evictions=%d",
+            size(), maxSize, getHits(), getMisses(), getHitRate(), getEvictions());
+    }
+}
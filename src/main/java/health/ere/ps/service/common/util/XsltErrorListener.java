@@ -0,0 +1,39 @@
+package health.ere.ps.service.common.util;
+
+import java.util.logging.Logger;
+
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.TransformerException;
+
+/**
+ * Logs the warnings and errors of XSLT transformations instead of printing
+ * them to System.err. The transformation is not stopped.
+ */
+public class XsltErrorListener implements ErrorListener {
+
+    private static final String MSG = "Error in XSLT:";
+
+    private final Logger log;
+
+    /**
+     * @param log the logger of the service that runs the transformation
+     */
+    public XsltErrorListener(Logger log) {
+        this.log = log;
+    }
+
+    @Override
+    public void warning(TransformerException exception) {
+        log.warning(MSG + exception);
+    }
+
+    @Override
+    public void error(TransformerException exception) {
+        log.severe(MSG + exception);
+    }
+
+    @Override
+    public void fatalError(TransformerException exception) {
+        log.severe(MSG + exception);
+    }
+}
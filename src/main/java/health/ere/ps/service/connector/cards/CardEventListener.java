@@ -0,0 +1,288 @@
+package health.ere.ps.service.connector.cards;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.Holder;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import de.gematik.ws.conn.connectorcommon.v5.Status;
+import de.gematik.ws.conn.eventservice.v7.Event;
+import de.gematik.ws.conn.eventservice.v7.SubscriptionType;
+import health.ere.ps.config.UserConfig;
+import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
+import io.quarkus.runtime.Startup;
+
+/**
+ * Subscribes to the CARD events of the connector and invalidates the cached
+ * card handles when a card is inserted or removed.
+ * <p>
+ * The connector sends the events with the Card Event Transport Protocol
+ * (CETP) to a local TCP port: "CETP", the length as 4 byte integer and the
+ * Event as XML. The subscription is done for the default connector config
+ * and is renewed periodically. Other configs rely on the TTL of the cache.
+ * <p>
+ * CETP is plain TCP. The port is only opened on the interface of the
+ * configured host, connections from other addresses than the connector are
+ * closed right away and only a few connections are read at the same time.
+ */
+@ApplicationScoped
+@Startup
+public class CardEventListener {
+    private static final Logger log = Logger.getLogger(CardEventListener.class.getName());
+
+    static final byte[] CETP_HEADER = "CETP".getBytes(StandardCharsets.US_ASCII);
+    static final String CARD_TOPIC = "CARD";
+    // larger events are not sent by the connector
+    static final int MAX_EVENT_LENGTH = 1024 * 1024;
+    static final long RENEW_INTERVAL_MINUTES = 10;
+
+    private static JAXBContext jaxbContext;
+
+    @Inject
+    ConnectorCardsService connectorCardsService;
+
+    @Inject
+    MultiConnectorServicesProvider connectorServicesProvider;
+
+    @Inject
+    UserConfig userConfig;
+
+    @ConfigProperty(name = "connector.card-events.cetp-port")
+    Optional<Integer> cetpPort;
+
+    @ConfigProperty(name = "connector.card-events.host")
+    Optional<String> host;
+
+    // the port is opened on this address, by default on the address of the host
+    @ConfigProperty(name = "connector.card-events.bind-address")
+    Optional<String> bindAddress;
+
+    // addresses that may send events, by default the address of connector.base-uri
+    @ConfigProperty(name = "connector.card-events.allowed-addresses")
+    Optional<List<String>> allowedAddresses;
+
+    @ConfigProperty(name = "connector.card-events.max-connections", defaultValue = "2")
+    int maxConnections = 2;
+
+    private ServerSocket serverSocket;
+    private Set<InetAddress> allowedPeers;
+    private Semaphore connections;
+    private ExecutorService acceptExecutor;
+    private ExecutorService connectionExecutor;
+    private ScheduledExecutorService subscriptionExecutor;
+    private volatile String subscriptionId;
+
+    @PostConstruct
+    void init() {
+        if (cetpPort.isEmpty() || host.isEmpty()) {
+            log.fine("No CETP port and host configured, card handles are only refreshed periodically");
+            return;
+        }
+        try {
+            allowedPeers = resolveAllowedPeers();
+            InetAddress bindInetAddress = InetAddress.getByName(bindAddress.orElse(host.get()));
+            serverSocket = new ServerSocket(cetpPort.get(), 0, bindInetAddress);
+            log.info("Listening for card events on " + bindInetAddress + ":" + cetpPort.get() + " from " + allowedPeers);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not open CETP port " + cetpPort.get(), e);
+            return;
+        }
+        connections = new Semaphore(Math.max(1, maxConnections));
+        acceptExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cetp-accept");
+            thread.setDaemon(true);
+            return thread;
+        });
+        connectionExecutor = Executors.newFixedThreadPool(Math.max(1, maxConnections), runnable -> {
+            Thread thread = new Thread(runnable, "cetp-listener");
+            thread.setDaemon(true);
+            return thread;
+        });
+        acceptExecutor.submit(this::accept);
+
+        subscriptionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cetp-subscription");
+            thread.setDaemon(true);
+            return thread;
+        });
+        subscriptionExecutor.scheduleWithFixedDelay(this::subscribeOrRenew, 0, RENEW_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (subscriptionExecutor != null) {
+            subscriptionExecutor.shutdownNow();
+        }
+        if (subscriptionId != null) {
+            try {
+                connectorServicesProvider.getEventServicePortType(null)
+                    .unsubscribe(connectorServicesProvider.getContextType(null), subscriptionId, null);
+            } catch (Exception e) {
+                log.log(Level.FINE, "Could not unsubscribe from card events", e);
+            }
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                log.log(Level.FINE, "Could not close CETP port", e);
+            }
+        }
+        if (acceptExecutor != null) {
+            acceptExecutor.shutdownNow();
+        }
+        if (connectionExecutor != null) {
+            connectionExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the addresses of connector.card-events.allowed-addresses or of the host of the connector
+     */
+    Set<InetAddress> resolveAllowedPeers() throws IOException {
+        List<String> hosts = allowedAddresses.filter(addresses -> !addresses.isEmpty())
+            .orElseGet(() -> List.of(URI.create(userConfig.getConnectorBaseURL()).getHost()));
+        Set<InetAddress> peers = new HashSet<>();
+        for (String allowedHost : hosts) {
+            peers.addAll(Arrays.asList(InetAddress.getAllByName(allowedHost.trim())));
+        }
+        return peers;
+    }
+
+    int getLocalPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    void subscribeOrRenew() {
+        try {
+            if (subscriptionId != null) {
+                Holder<Status> status = new Holder<>();
+                connectorServicesProvider.getEventServicePortType(null).renewSubscriptions(
+                    connectorServicesProvider.getContextType(null), Arrays.asList(subscriptionId), status, new Holder<>());
+                return;
+            }
+        } catch (Exception e) {
+            log.log(Level.INFO, "Could not renew card event subscription, subscribing again", e);
+            subscriptionId = null;
+        }
+        try {
+            SubscriptionType subscriptionType = new SubscriptionType();
+            subscriptionType.setEventTo("cetp://" + host.get() + ":" + cetpPort.get());
+            subscriptionType.setTopic(CARD_TOPIC);
+            Holder<Status> status = new Holder<>();
+            Holder<String> newSubscriptionId = new Holder<>();
+            connectorServicesProvider.getEventServicePortType(null).subscribe(
+                connectorServicesProvider.getContextType(null), subscriptionType, status, newSubscriptionId, new Holder<>());
+            subscriptionId = newSubscriptionId.value;
+            // events that happened before the subscription are not known
+            connectorCardsService.invalidateAllCardHandles();
+            log.info("Subscribed to card events with id " + subscriptionId);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not subscribe to card events", e);
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (!allowedPeers.contains(socket.getInetAddress())) {
+                    log.warning("Closed CETP connection from " + socket.getInetAddress() + ", it is not the connector");
+                    socket.close();
+                } else if (!connections.tryAcquire()) {
+                    log.warning("Closed CETP connection from " + socket.getInetAddress() + ", "
+                        + maxConnections + " connections are open");
+                    socket.close();
+                } else {
+                    connectionExecutor.submit(() -> {
+                        try {
+                            read(socket);
+                        } finally {
+                            connections.release();
+                        }
+                    });
+                }
+            } catch (SocketException e) {
+                // socket was closed
+                return;
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Could not accept CETP connection", e);
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        try (socket; DataInputStream in = new DataInputStream(socket.getInputStream())) {
+            while (true) {
+                onEvent(readEvent(in));
+            }
+        } catch (EOFException e) {
+            // connector closed the connection
+        } catch (IOException | JAXBException e) {
+            log.log(Level.WARNING, "Could not read card event", e);
+        }
+    }
+
+    /**
+     * Reads one CETP message.
+     */
+    static Event readEvent(DataInputStream in) throws IOException, JAXBException {
+        byte[] header = new byte[CETP_HEADER.length];
+        in.readFully(header);
+        if (!Arrays.equals(CETP_HEADER, header)) {
+            throw new IOException("Message does not start with CETP");
+        }
+        int length = in.readInt();
+        if (length < 0 || length > MAX_EVENT_LENGTH) {
+            throw new IOException("Invalid CETP message length: " + length);
+        }
+        byte[] message = new byte[length];
+        in.readFully(message);
+        return getJaxbContext().createUnmarshaller()
+            .unmarshal(new StreamSource(new ByteArrayInputStream(message)), Event.class).getValue();
+    }
+
+    void onEvent(Event event) {
+        String topic = event.getTopic();
+        log.fine("Received card event " + topic);
+        if (topic != null && topic.startsWith(CARD_TOPIC + "/")) {
+            connectorCardsService.invalidateAllCardHandles();
+        }
+    }
+
+    private static synchronized JAXBContext getJaxbContext() throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(Event.class);
+        }
+        return jaxbContext;
+    }
+}
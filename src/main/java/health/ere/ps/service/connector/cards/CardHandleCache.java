@@ -0,0 +1,187 @@
+package health.ere.ps.service.connector.cards;
+
+import java.math.BigInteger;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import de.gematik.ws.conn.cardservice.v8.CardInfoType;
+import de.gematik.ws.tel.error.v2.Error;
+import health.ere.ps.exception.connector.ConnectorCardsException;
+
+/**
+ * Caches the cards returned by EventService.getCards per connector config.
+ * <p>
+ * Entries are removed when a card is inserted or removed (see
+ * {@link CardEventListener}), when the connector answers with a fault code
+ * 4xxx and at the latest when the TTL is over. Expired entries are swept at
+ * most once per TTL. When there are more than maxSize configs the entry that
+ * expires first is removed.
+ */
+public class CardHandleCache {
+    private static final Logger log = Logger.getLogger(CardHandleCache.class.getName());
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+    public static final int DEFAULT_MAX_SIZE = 50;
+    // used as key for the default config, ConcurrentHashMap does not allow null keys
+    private static final Object DEFAULT_CONFIG = new Object();
+
+    @FunctionalInterface
+    public interface CardsLoader {
+        List<CardInfoType> load() throws ConnectorCardsException;
+    }
+
+    private static class Entry {
+        private List<CardInfoType> cards;
+        // null while the cards are loaded for the first time
+        private volatile Instant validUntil;
+    }
+
+    private final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final int maxSize;
+    private final Clock clock;
+    private volatile Instant nextSweep;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CardHandleCache(Duration ttl, int maxSize) {
+        this(ttl, maxSize, Clock.systemUTC());
+    }
+
+    CardHandleCache(Duration ttl, int maxSize, Clock clock) {
+        this.ttl = ttl == null || ttl.isNegative() ? DEFAULT_TTL : ttl;
+        this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+        this.clock = clock;
+        this.nextSweep = clock.instant().plus(this.ttl);
+    }
+
+    /**
+     * Returns the cached cards for the given config or loads them. A TTL of
+     * zero disables the cache.
+     */
+    public List<CardInfoType> get(Object config, CardsLoader loader) throws ConnectorCardsException {
+        if (ttl.isZero()) {
+            misses.incrementAndGet();
+            return loader.load();
+        }
+        Entry entry = entries.computeIfAbsent(key(config), k -> new Entry());
+        List<CardInfoType> cards;
+        boolean loaded = false;
+        synchronized (entry) {
+            Instant now = clock.instant();
+            if (entry.cards != null && now.isBefore(entry.validUntil)) {
+                hits.incrementAndGet();
+                cards = entry.cards;
+            } else {
+                misses.incrementAndGet();
+                entry.cards = loader.load();
+                entry.validUntil = now.plus(ttl);
+                cards = entry.cards;
+                loaded = true;
+            }
+        }
+        Instant now = clock.instant();
+        if ((loaded && entries.size() > maxSize) || !now.isBefore(nextSweep)) {
+            evict(now);
+        }
+        return cards;
+    }
+
+    private void evict(Instant now) {
+        nextSweep = now.plus(ttl);
+        entries.entrySet().removeIf(e -> {
+            Instant validUntil = e.getValue().validUntil;
+            if (validUntil != null && !now.isBefore(validUntil)) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+        while (entries.size() > maxSize) {
+            entries.entrySet().stream()
+                // entries that are loaded for the first time are removed last
+                .min(Comparator.comparing(e -> e.getValue().validUntil, Comparator.nullsLast(Comparator.naturalOrder())))
+                .ifPresent(e -> {
+                    if (entries.remove(e.getKey(), e.getValue())) {
+                        log.fine("Removing cached card handles of the config that expires first");
+                        evictions.incrementAndGet();
+                    }
+                });
+        }
+    }
+
+    public void invalidate(Object config) {
+        if (entries.remove(key(config)) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public void invalidateAll() {
+        if (!entries.isEmpty()) {
+            log.fine("Invalidating all cached card handles");
+            invalidations.incrementAndGet();
+        }
+        entries.clear();
+    }
+
+    /**
+     * Invalidates the cards of the given config if the fault has an error code
+     * 4xxx, e.g. because a card handle is not valid anymore.
+     *
+     * @return true if the cache was invalidated
+     */
+    public boolean invalidateOnFault(Object config, Error faultInfo) {
+        if (isConnectorFault(faultInfo)) {
+            log.info("Invalidating cached card handles because of connector fault");
+            invalidate(config);
+            return true;
+        }
+        return false;
+    }
+
+    static boolean isConnectorFault(Error faultInfo) {
+        return faultInfo != null && faultInfo.getTrace().stream()
+            .map(Error.Trace::getCode)
+            .anyMatch(code -> code != null && code.compareTo(BigInteger.valueOf(4000)) >= 0 && code.compareTo(BigInteger.valueOf(5000)) < 0);
+    }
+
+    private static Object key(Object config) {
+        return config != null ? config : DEFAULT_CONFIG;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return "size: " + size() + ", max size: " + maxSize + ", hits: " + getHits() + ", misses: " + getMisses()
+            + ", invalidations: " + getInvalidations() + ", evictions: " + getEvictions();
+    }
+}
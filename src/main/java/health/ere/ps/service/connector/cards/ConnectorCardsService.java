@@ -7,6 +7,7 @@ import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.enterprise.event.ObservesAsync;
@@ -23,6 +24,8 @@ import de.gematik.ws.conn.connectorcommon.v5.Status;
 import de.gematik.ws.conn.eventservice.v7.GetCards;
 import de.gematik.ws.conn.eventservice.v7.GetCardsResponse;
 import de.gematik.ws.conn.eventservice.wsdl.v7.FaultMessage;
+import de.gematik.ws.tel.error.v2.Error;
+import health.ere.ps.config.AppConfig;
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.config.UserConfig;
 import health.ere.ps.event.ChangePinEvent;
@@ -67,6 +70,15 @@ public class ConnectorCardsService {
     @Inject
     Event<Exception> exceptionEvent;
 
+    @Inject
+    AppConfig appConfig;
+
+    CardHandleCache cardHandleCache;
+
+    @PostConstruct
+    void init() {
+        cardHandleCache = new CardHandleCache(appConfig.getCardHandleCacheTtl(), appConfig.getCardHandleCacheMaxSize());
+    }
 
     private GetCardsResponse getConnectorCards(RuntimeConfig runtimeConfig) throws ConnectorCardsException {
         GetCards parameter = new GetCards();
@@ -80,6 +92,13 @@ public class ConnectorCardsService {
     }
 
     private Optional<List<CardInfoType>> getConnectorCardsInfo(RuntimeConfig runtimeConfig) throws ConnectorCardsException {
+        if(cardHandleCache == null) {
+            return loadConnectorCardsInfo(runtimeConfig);
+        }
+        return Optional.ofNullable(cardHandleCache.get(runtimeConfig, () -> loadConnectorCardsInfo(runtimeConfig).orElse(null)));
+    }
+
+    private Optional<List<CardInfoType>> loadConnectorCardsInfo(RuntimeConfig runtimeConfig) throws ConnectorCardsException {
         GetCardsResponse response = getConnectorCards(runtimeConfig);
         List<CardInfoType> cardHandleTypeList = null;
 
@@ -131,6 +150,38 @@ public class ConnectorCardsService {
         return cardHandle;
     }
 
+    /**
+     * Removes the cached card handles of the given config, e.g. after a card
+     * was inserted or removed.
+     */
+    public void invalidateCardHandles(RuntimeConfig runtimeConfig) {
+        if(cardHandleCache != null) {
+            cardHandleCache.invalidate(runtimeConfig);
+        }
+    }
+
+    /**
+     * Removes the cached card handles of all configs.
+     */
+    public void invalidateAllCardHandles() {
+        if(cardHandleCache != null) {
+            cardHandleCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Removes the cached card handles of the given config if the connector
+     * answered with a fault code 4xxx.
+     */
+    public void invalidateCardHandlesOnFault(RuntimeConfig runtimeConfig, Error faultInfo) {
+        if(cardHandleCache != null) {
+            cardHandleCache.invalidateOnFault(runtimeConfig, faultInfo);
+        }
+    }
+
+    public CardHandleCache getCardHandleCache() {
+        return this.cardHandleCache;
+    }
 
     public void onChangePinEvent(@ObservesAsync ChangePinEvent changePinEvent) {
         try {
@@ -22,6 +22,7 @@ import de.gematik.ws.conn.certificateservicecommon.v2.X509DataInfoListType;
 import de.gematik.ws.conn.connectorcommon.v5.Status;
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.exception.connector.ConnectorCardCertificateReadException;
+import health.ere.ps.service.connector.cards.ConnectorCardsService;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
 import health.ere.ps.service.idp.crypto.CryptoLoader;
 
@@ -34,6 +35,9 @@ public class CardCertificateReaderService {
     @Inject
     MultiConnectorServicesProvider connectorServicesProvider;
 
+    @Inject
+    ConnectorCardsService connectorCardsService;
+
 
     public X509Certificate retrieveSmcbCardCertificate(String cardHandle)
         throws ConnectorCardCertificateReadException {
@@ -114,6 +118,10 @@ public class CardCertificateReaderService {
                     throw new ConnectorCardCertificateReadException("Could not get certificate", faultMessage);
                 }
             } else {
+                // the card might have been removed, the cached card handle is not valid anymore
+                if(connectorCardsService != null) {
+                    connectorCardsService.invalidateCardHandlesOnFault(runtimeConfig, faultMessage.getFaultInfo());
+                }
                 throw new ConnectorCardCertificateReadException("Could not get certificate", faultMessage);
             }
         }
@@ -9,20 +9,13 @@ import javax.net.ssl.SSLContext;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.ws.BindingProvider;
 
-import de.gematik.ws.conn.authsignatureservice.wsdl.v7.AuthSignatureService;
 import de.gematik.ws.conn.authsignatureservice.wsdl.v7.AuthSignatureServicePortType;
-import de.gematik.ws.conn.cardservice.wsdl.v8.CardService;
 import de.gematik.ws.conn.cardservice.wsdl.v8.CardServicePortType;
-import de.gematik.ws.conn.certificateservice.wsdl.v6.CertificateService;
 import de.gematik.ws.conn.certificateservice.wsdl.v6.CertificateServicePortType;
 import de.gematik.ws.conn.connectorcontext.v2.ContextType;
-import de.gematik.ws.conn.eventservice.wsdl.v7.EventService;
 import de.gematik.ws.conn.eventservice.wsdl.v7.EventServicePortType;
 import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV740;
 import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV755;
-import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServiceV740;
-import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServiceV755;
-import de.gematik.ws.conn.vsds.vsdservice.v5.VSDService;
 import de.gematik.ws.conn.vsds.vsdservice.v5.VSDServicePortType;
 import health.ere.ps.config.UserConfig;
 import health.ere.ps.config.interceptor.ProvidedConfig;
@@ -84,8 +77,7 @@ public abstract class AbstractConnectorServicesProvider {
     }
     
     private void initializeVSDServicePortType() {
-        VSDServicePortType vsdService = new VSDService(getClass().getResource("/vsds/VSDService.wsdl"))
-                .getVSDServicePort();
+        VSDServicePortType vsdService = ConnectorServiceDefinitions.getVSDService().getVSDServicePort();
 
         BindingProvider bp = (BindingProvider) vsdService;
         if(endpointDiscoveryService.getVSDServiceEndpointAddress() != null) {
@@ -100,8 +92,7 @@ public abstract class AbstractConnectorServicesProvider {
     }
 
     private void initializeCardServicePortType() {
-        CardServicePortType cardService = new CardService(getClass().getResource("/CardService.wsdl"))
-                .getCardServicePort();
+        CardServicePortType cardService = ConnectorServiceDefinitions.getCardService().getCardServicePort();
 
         BindingProvider bp = (BindingProvider) cardService;
         if(endpointDiscoveryService.getCardServiceEndpointAddress() != null) {
@@ -116,8 +107,7 @@ public abstract class AbstractConnectorServicesProvider {
     }
 
     private void initializeCertificateService() {
-        CertificateServicePortType service = new CertificateService(getClass()
-                .getResource("/CertificateService_v6_0_1.wsdl")).getCertificateServicePort();
+        CertificateServicePortType service = ConnectorServiceDefinitions.getCertificateService().getCertificateServicePort();
 
         BindingProvider bp = (BindingProvider) service;
         if(endpointDiscoveryService.getCertificateServiceEndpointAddress() != null) {
@@ -132,8 +122,7 @@ public abstract class AbstractConnectorServicesProvider {
     }
 
     private void initializeEventServicePortType() {
-        EventServicePortType service = new EventService(getClass().getResource("/EventService.wsdl"))
-                .getEventServicePort();
+        EventServicePortType service = ConnectorServiceDefinitions.getEventService().getEventServicePort();
 
         BindingProvider bp = (BindingProvider) service;
         if(endpointDiscoveryService.getEventServiceEndpointAddress() != null) {
@@ -148,8 +137,7 @@ public abstract class AbstractConnectorServicesProvider {
     }
 
     private void initializeAuthSignatureServicePortType() {
-        AuthSignatureServicePortType service = new AuthSignatureService(getClass().getResource(
-                "/AuthSignatureService_v7_4_1.wsdl")).getAuthSignatureServicePort();
+        AuthSignatureServicePortType service = ConnectorServiceDefinitions.getAuthSignatureService().getAuthSignatureServicePort();
         BindingProvider bp = (BindingProvider) service;
         if(endpointDiscoveryService.getAuthSignatureServiceEndpointAddress() != null) {
             bp.getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY,
@@ -163,8 +151,7 @@ public abstract class AbstractConnectorServicesProvider {
     }
 
     private void initializeSignatureServicePortType() {
-        SignatureServicePortTypeV740 service = new SignatureServiceV740(getClass()
-                .getResource("/SignatureService.wsdl")).getSignatureServicePortV740();
+        SignatureServicePortTypeV740 service = ConnectorServiceDefinitions.getSignatureServiceV740().getSignatureServicePortV740();
 
         BindingProvider bp = (BindingProvider) service;
         if(endpointDiscoveryService.getSignatureServiceEndpointAddress() != null) {
@@ -179,8 +166,7 @@ public abstract class AbstractConnectorServicesProvider {
     }
 
     private void initializeSignatureServicePortTypeV755() {
-        SignatureServicePortTypeV755 service = new SignatureServiceV755(getClass()
-                .getResource("/SignatureService_V7_5_5.wsdl")).getSignatureServicePortTypeV755();
+        SignatureServicePortTypeV755 service = ConnectorServiceDefinitions.getSignatureServiceV755().getSignatureServicePortTypeV755();
 
         BindingProvider bp = (BindingProvider) service;
         if(endpointDiscoveryService.getSignatureServiceEndpointAddress() != null) {
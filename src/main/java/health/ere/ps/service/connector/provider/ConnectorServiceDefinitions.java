@@ -0,0 +1,100 @@
+package health.ere.ps.service.connector.provider;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import javax.xml.ws.Service;
+
+import de.gematik.ws.conn.authsignatureservice.wsdl.v7.AuthSignatureService;
+import de.gematik.ws.conn.cardservice.wsdl.v8.CardService;
+import de.gematik.ws.conn.certificateservice.wsdl.v6.CertificateService;
+import de.gematik.ws.conn.eventservice.wsdl.v7.EventService;
+import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServiceV740;
+import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServiceV755;
+import de.gematik.ws.conn.vsds.vsdservice.v5.VSDService;
+
+/**
+ * Process wide cache of the parsed WSDL service definitions of the connector.
+ * <p>
+ * Parsing a WSDL takes long, creating a port proxy from an already parsed
+ * service is cheap. The services are thread safe, so every connector services
+ * provider creates its own ports from the same service instances.
+ */
+public final class ConnectorServiceDefinitions {
+
+    private static final Logger log = Logger.getLogger(ConnectorServiceDefinitions.class.getName());
+
+    static final String VSD_SERVICE_WSDL = "/vsds/VSDService.wsdl";
+    static final String CARD_SERVICE_WSDL = "/CardService.wsdl";
+    static final String CERTIFICATE_SERVICE_WSDL = "/CertificateService_v6_0_1.wsdl";
+    static final String EVENT_SERVICE_WSDL = "/EventService.wsdl";
+    static final String AUTH_SIGNATURE_SERVICE_WSDL = "/AuthSignatureService_v7_4_1.wsdl";
+    static final String SIGNATURE_SERVICE_WSDL = "/SignatureService.wsdl";
+    static final String SIGNATURE_SERVICE_V755_WSDL = "/SignatureService_V7_5_5.wsdl";
+
+    private static final Map<String, Service> SERVICES = new ConcurrentHashMap<>();
+
+    private ConnectorServiceDefinitions() {
+    }
+
+    public static VSDService getVSDService() {
+        return get(VSD_SERVICE_WSDL, VSDService.class, VSDService::new);
+    }
+
+    public static CardService getCardService() {
+        return get(CARD_SERVICE_WSDL, CardService.class, CardService::new);
+    }
+
+    public static CertificateService getCertificateService() {
+        return get(CERTIFICATE_SERVICE_WSDL, CertificateService.class, CertificateService::new);
+    }
+
+    public static EventService getEventService() {
+        return get(EVENT_SERVICE_WSDL, EventService.class, EventService::new);
+    }
+
+    public static AuthSignatureService getAuthSignatureService() {
+        return get(AUTH_SIGNATURE_SERVICE_WSDL, AuthSignatureService.class, AuthSignatureService::new);
+    }
+
+    public static SignatureServiceV740 getSignatureServiceV740() {
+        return get(SIGNATURE_SERVICE_WSDL, SignatureServiceV740.class, SignatureServiceV740::new);
+    }
+
+    public static SignatureServiceV755 getSignatureServiceV755() {
+        return get(SIGNATURE_SERVICE_V755_WSDL, SignatureServiceV755.class, SignatureServiceV755::new);
+    }
+
+    /**
+     * Parses all WSDLs, so the first connector services provider does not
+     * have to wait for it.
+     */
+    public static void warmUp() {
+        long start = System.currentTimeMillis();
+        getVSDService();
+        getCardService();
+        getCertificateService();
+        getEventService();
+        getAuthSignatureService();
+        getSignatureServiceV740();
+        getSignatureServiceV755();
+        log.info("Connector WSDLs parsed in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    static int size() {
+        return SERVICES.size();
+    }
+
+    static void clear() {
+        SERVICES.clear();
+    }
+
+    private static <T extends Service> T get(String wsdlLocation, Class<T> serviceClass, Function<URL, T> factory) {
+        // computeIfAbsent makes sure every WSDL is parsed only once, even for concurrent calls
+        return serviceClass.cast(SERVICES.computeIfAbsent(wsdlLocation,
+            location -> factory.apply(ConnectorServiceDefinitions.class.getResource(location))));
+    }
+}
@@ -0,0 +1,39 @@
+package health.ere.ps.service.connector.provider;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.runtime.Startup;
+
+/**
+ * Parses the connector WSDLs in the background when the application starts.
+ */
+@ApplicationScoped
+@Startup
+public class ConnectorServiceDefinitionsWarmUp {
+    private static final Logger log = Logger.getLogger(ConnectorServiceDefinitionsWarmUp.class.getName());
+
+    @ConfigProperty(name = "connector.wsdl-cache.warm-up", defaultValue = "true")
+    boolean warmUp;
+
+    @PostConstruct
+    void init() {
+        if (!warmUp) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                ConnectorServiceDefinitions.warmUp();
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Could not parse connector WSDLs", e);
+            }
+        }, "connector-wsdl-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
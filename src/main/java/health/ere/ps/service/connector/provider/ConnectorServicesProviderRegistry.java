@@ -0,0 +1,137 @@
+package health.ere.ps.service.connector.provider;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import health.ere.ps.config.UserConfig;
+
+/**
+ * Thread safe registry of the connector services providers per user config.
+ * <p>
+ * A provider is created only once per config, even if many threads ask for
+ * the same new config at the same time. When there are more than maxSize
+ * providers the least recently used one is removed, providers that were not
+ * used for longer than the idle timeout are removed as well. Idle providers
+ * are swept when a provider is created and at most once per idle timeout
+ * when existing providers are used.
+ */
+public class ConnectorServicesProviderRegistry {
+    private static final Logger log = Logger.getLogger(ConnectorServicesProviderRegistry.class.getName());
+
+    public static final int DEFAULT_MAX_SIZE = 50;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofHours(1);
+
+    private static class Entry {
+        private SingleConnectorServicesProvider provider;
+        private volatile Instant lastAccess;
+
+        Entry(Instant lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final Map<UserConfig, Entry> entries = new ConcurrentHashMap<>();
+    private final Function<UserConfig, SingleConnectorServicesProvider> factory;
+    private final int maxSize;
+    private final Duration idleTimeout;
+    private final Clock clock;
+    private volatile Instant nextSweep;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ConnectorServicesProviderRegistry(Function<UserConfig, SingleConnectorServicesProvider> factory, int maxSize, Duration idleTimeout) {
+        this(factory, maxSize, idleTimeout, Clock.systemUTC());
+    }
+
+    ConnectorServicesProviderRegistry(Function<UserConfig, SingleConnectorServicesProvider> factory, int maxSize, Duration idleTimeout, Clock clock) {
+        this.factory = factory;
+        this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+        this.idleTimeout = idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero() ? DEFAULT_IDLE_TIMEOUT : idleTimeout;
+        this.clock = clock;
+        this.nextSweep = clock.instant().plus(this.idleTimeout);
+    }
+
+    /**
+     * Returns the provider for the given config and creates it if necessary.
+     */
+    public SingleConnectorServicesProvider get(UserConfig userConfig) {
+        Instant now = clock.instant();
+        // creating the entry is cheap, the provider is created outside of the map lock
+        Entry entry = entries.computeIfAbsent(userConfig, key -> new Entry(now));
+        entry.lastAccess = now;
+        SingleConnectorServicesProvider provider;
+        boolean created = false;
+        synchronized (entry) {
+            if (entry.provider == null) {
+                misses.incrementAndGet();
+                entry.provider = factory.apply(userConfig);
+                created = true;
+            } else {
+                hits.incrementAndGet();
+            }
+            provider = entry.provider;
+        }
+        if (created || !now.isBefore(nextSweep)) {
+            evict(now);
+        }
+        return provider;
+    }
+
+    private void evict(Instant now) {
+        nextSweep = now.plus(idleTimeout);
+        Instant idleLimit = now.minus(idleTimeout);
+        entries.entrySet().removeIf(e -> {
+            if (e.getValue().lastAccess.isBefore(idleLimit)) {
+                log.info("Removing idle connector services provider");
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+        while (entries.size() > maxSize) {
+            entries.entrySet().stream()
+                .min(Comparator.comparing(e -> e.getValue().lastAccess))
+                .ifPresent(e -> {
+                    if (entries.remove(e.getKey(), e.getValue())) {
+                        log.info("Removing least recently used connector services provider");
+                        evictions.incrementAndGet();
+                    }
+                });
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "size: " + size() + ", max size: " + maxSize + ", hits: " + getHits() + ", misses: " + getMisses()
+            + ", evictions: " + getEvictions();
+    }
+}
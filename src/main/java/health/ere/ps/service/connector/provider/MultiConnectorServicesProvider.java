@@ -1,9 +1,8 @@
 package health.ere.ps.service.connector.provider;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
@@ -16,6 +15,7 @@ import de.gematik.ws.conn.eventservice.wsdl.v7.EventServicePortType;
 import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV740;
 import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV755;
 import de.gematik.ws.conn.vsds.vsdservice.v5.VSDServicePortType;
+import health.ere.ps.config.AppConfig;
 import health.ere.ps.config.UserConfig;
 
 @ApplicationScoped
@@ -28,8 +28,17 @@ public class MultiConnectorServicesProvider {
     @Inject
     Event<Exception> eventException;
 
+    @Inject
+    AppConfig appConfig;
+
+    ConnectorServicesProviderRegistry singleConnectorServicesProvider;
 
-    Map<UserConfig,SingleConnectorServicesProvider> singleConnectorServicesProvider = new HashMap<>();
+    @PostConstruct
+    void init() {
+        singleConnectorServicesProvider = new ConnectorServicesProviderRegistry(
+            userConfig -> new SingleConnectorServicesProvider(userConfig, eventException),
+            appConfig.getConnectorServicesProviderMaxSize(), appConfig.getConnectorServicesProviderIdleTimeout());
+    }
 
     public CardServicePortType getCardServicePortType(UserConfig userConfig) {
         CardServicePortType cardServicePortType = getSingleConnectorServicesProvider(userConfig).getCardServicePortType();
@@ -40,9 +49,6 @@ public class MultiConnectorServicesProvider {
         if(userConfig == null) {
             return defaultConnectorServicesProvider;
         } else {
-            if(!singleConnectorServicesProvider.containsKey(userConfig)) {
-                singleConnectorServicesProvider.put(userConfig, new SingleConnectorServicesProvider(userConfig, eventException));
-            }
             return singleConnectorServicesProvider.get(userConfig);
         }
     }
@@ -90,6 +96,13 @@ public class MultiConnectorServicesProvider {
     }
 
     public void clearAll() {
-        singleConnectorServicesProvider = new HashMap<>();
+        singleConnectorServicesProvider.clear();
+    }
+
+    /**
+     * Returns the registry of the providers for the configs from the requests.
+     */
+    public ConnectorServicesProviderRegistry getRegistry() {
+        return singleConnectorServicesProvider;
     }
 }
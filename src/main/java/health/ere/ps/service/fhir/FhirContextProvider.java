@@ -0,0 +1,36 @@
+package health.ere.ps.service.fhir;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ * Provides the one FHIR R4 context of the application.
+ * <p>
+ * Creating a FhirContext scans the whole R4 model and every context keeps its
+ * own model definitions, so all classes use this one. The context is thread
+ * safe. Parsers are cheap to create from it but not thread safe once they are
+ * configured, so every user creates its own parser with
+ * {@link #newJsonParser()} or {@link #newXmlParser()}.
+ */
+public class FhirContextProvider {
+
+    // initialized on first use, classes that never parse FHIR do not load the model
+    private static class Holder {
+        private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+    }
+
+    private FhirContextProvider() {
+    }
+
+    public static FhirContext getFhirContext() {
+        return Holder.FHIR_CONTEXT;
+    }
+
+    public static IParser newJsonParser() {
+        return getFhirContext().newJsonParser();
+    }
+
+    public static IParser newXmlParser() {
+        return getFhirContext().newXmlParser();
+    }
+}
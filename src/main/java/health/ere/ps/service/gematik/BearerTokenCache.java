@@ -0,0 +1,293 @@
+package health.ere.ps.service.gematik;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+
+/**
+ * Thread safe cache of the bearer tokens of the IDP per runtime config.
+ * <p>
+ * The expiry of a token is parsed only once when it is stored. Only one login
+ * runs per config at a time, threads that wait for it use its token. A token
+ * that expires within the refresh time is still returned, a new one is
+ * requested in the background. When there are more than maxSize tokens the
+ * least recently used one is removed, tokens that were not used for longer
+ * than the idle timeout are removed as well.
+ */
+public class BearerTokenCache {
+    private static final Logger log = Logger.getLogger(BearerTokenCache.class.getName());
+
+    public static final int DEFAULT_MAX_SIZE = 50;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofHours(1);
+    public static final Duration DEFAULT_REFRESH_BEFORE_EXPIRY = Duration.ofMinutes(1);
+    // used as key for the default config, ConcurrentHashMap does not allow null keys
+    private static final Object DEFAULT_CONFIG = new Object();
+
+    // only reads the claims, the token is checked by the prescription server
+    private static final JwtConsumer CLAIMS_READER = new JwtConsumerBuilder()
+        .setDisableRequireSignature()
+        .setSkipSignatureVerification()
+        .setSkipAllValidators()
+        .build();
+
+    private static final AtomicInteger REFRESH_THREAD_COUNTER = new AtomicInteger();
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "bearer-token-refresh-" + REFRESH_THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @FunctionalInterface
+    public interface TokenLoader {
+        String load();
+    }
+
+    private static class Entry {
+        private volatile String token;
+        private volatile Instant expiresAt = Instant.EPOCH;
+        // incremented with every new token, so waiting threads see that a login happened
+        private volatile long version;
+        private volatile Instant lastAccess;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Instant lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+
+        private void set(String token) {
+            this.token = token;
+            this.expiresAt = parseExpiry(token);
+            this.version++;
+        }
+    }
+
+    private final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final Duration idleTimeout;
+    private final Duration refreshBeforeExpiry;
+    private final Clock clock;
+    private final Executor refreshExecutor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong loginNanos = new AtomicLong();
+
+    public BearerTokenCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT, DEFAULT_REFRESH_BEFORE_EXPIRY);
+    }
+
+    public BearerTokenCache(int maxSize, Duration idleTimeout, Duration refreshBeforeExpiry) {
+        this(maxSize, idleTimeout, refreshBeforeExpiry, Clock.systemUTC(), REFRESH_EXECUTOR);
+    }
+
+    BearerTokenCache(int maxSize, Duration idleTimeout, Duration refreshBeforeExpiry, Clock clock, Executor refreshExecutor) {
+        this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+        this.idleTimeout = idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero() ? DEFAULT_IDLE_TIMEOUT : idleTimeout;
+        this.refreshBeforeExpiry = refreshBeforeExpiry == null || refreshBeforeExpiry.isNegative() ? DEFAULT_REFRESH_BEFORE_EXPIRY : refreshBeforeExpiry;
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Returns a token for the given config that is not expired. If there is
+     * none the loader is called, only by one thread per config.
+     *
+     * @param loader called when there is no valid token
+     * @param refresher called in the background when the token expires soon
+     */
+    public String get(Object config, TokenLoader loader, TokenLoader refresher) {
+        Instant now = clock.instant();
+        Entry entry = entries.computeIfAbsent(key(config), k -> new Entry(now));
+        entry.lastAccess = now;
+        long version = entry.version;
+        if (entry.token != null && now.isBefore(entry.expiresAt)) {
+            hits.incrementAndGet();
+            if (!now.isBefore(entry.expiresAt.minus(refreshBeforeExpiry))) {
+                refreshInBackground(entry, refresher);
+            }
+            return entry.token;
+        }
+        String token;
+        synchronized (entry) {
+            if (entry.version != version && entry.token != null) {
+                // another thread logged in while this one was waiting
+                hits.incrementAndGet();
+                return entry.token;
+            }
+            misses.incrementAndGet();
+            token = login(entry, loader);
+        }
+        evict(now);
+        return token;
+    }
+
+    /**
+     * Returns the stored token for the given config without checking if it
+     * is expired.
+     */
+    public String get(Object config) {
+        Entry entry = entries.get(key(config));
+        return entry != null ? entry.token : null;
+    }
+
+    public void put(Object config, String token) {
+        Instant now = clock.instant();
+        Entry entry = entries.computeIfAbsent(key(config), k -> new Entry(now));
+        entry.lastAccess = now;
+        synchronized (entry) {
+            entry.set(token);
+        }
+        evict(now);
+    }
+
+    public void invalidate(Object config) {
+        entries.remove(key(config));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private String login(Entry entry, TokenLoader loader) {
+        long start = System.nanoTime();
+        try {
+            String token = loader.load();
+            entry.set(token);
+            return token;
+        } finally {
+            logins.incrementAndGet();
+            loginNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private void refreshInBackground(Entry entry, TokenLoader refresher) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        long version = entry.version;
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    synchronized (entry) {
+                        if (entry.version == version) {
+                            log.fine("Refreshing bearer token before it expires");
+                            login(entry, refresher);
+                            refreshes.incrementAndGet();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // the token is requested again in the foreground when it is expired
+                    refreshFailures.incrementAndGet();
+                    log.log(Level.WARNING, "Could not refresh bearer token", e);
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            entry.refreshing.set(false);
+            log.log(Level.WARNING, "Could not schedule bearer token refresh", e);
+        }
+    }
+
+    private void evict(Instant now) {
+        Instant idleLimit = now.minus(idleTimeout);
+        entries.entrySet().removeIf(e -> {
+            if (e.getValue().lastAccess.isBefore(idleLimit)) {
+                log.fine("Removing idle bearer token");
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+        while (entries.size() > maxSize) {
+            entries.entrySet().stream()
+                .min(Comparator.comparing(e -> e.getValue().lastAccess))
+                .ifPresent(e -> {
+                    if (entries.remove(e.getKey(), e.getValue())) {
+                        log.fine("Removing least recently used bearer token");
+                        evictions.incrementAndGet();
+                    }
+                });
+        }
+    }
+
+    /**
+     * Returns the expiry of the given token or the epoch if the token has no
+     * expiry or can not be parsed, so it is treated as expired.
+     */
+    static Instant parseExpiry(String token) {
+        if (token == null || token.isEmpty()) {
+            return Instant.EPOCH;
+        }
+        try {
+            NumericDate expirationTime = CLAIMS_READER.processToClaims(token).getExpirationTime();
+            return expirationTime != null ? Instant.ofEpochSecond(expirationTime.getValue()) : Instant.EPOCH;
+        } catch (InvalidJwtException | MalformedClaimException e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    private static Object key(Object config) {
+        return config != null ? config : DEFAULT_CONFIG;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getRefreshes() {
+        return this.refreshes.get();
+    }
+
+    public long getRefreshFailures() {
+        return this.refreshFailures.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Average duration of the IDP logins in milliseconds.
+     */
+    public long getAverageLoginMillis() {
+        long count = logins.get();
+        return count == 0 ? 0 : Duration.ofNanos(loginNanos.get() / count).toMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "size: " + size() + ", max size: " + maxSize + ", hits: " + getHits() + ", misses: " + getMisses()
+            + ", refreshes: " + getRefreshes() + ", refresh failures: " + getRefreshFailures()
+            + ", evictions: " + getEvictions() + ", average login: " + getAverageLoginMillis() + " ms";
+    }
+}
@@ -1,17 +1,12 @@
 package health.ere.ps.service.gematik;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Instant;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
 import javax.websocket.Session;
 
-import org.apache.commons.lang3.StringUtils;
-import org.jose4j.jwt.consumer.InvalidJwtException;
-import org.jose4j.jwt.consumer.JwtConsumer;
-import org.jose4j.jwt.consumer.JwtConsumerBuilder;
-
+import health.ere.ps.config.AppConfig;
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.service.idp.BearerTokenService;
 
@@ -23,52 +18,55 @@ public class BearerTokenManageService {
     BearerTokenService bearerTokenService;
 
     //In the future it should be managed automatically by the webclient, including its renewal
-    Map<RuntimeConfig, String> bearerToken = new HashMap<>();
+    BearerTokenCache bearerTokenCache = new BearerTokenCache();
 
+    /**
+     * Replaces the bearer token cache with one that uses the configured sizes.
+     */
+    protected void initBearerTokenCache(AppConfig appConfig) {
+        bearerTokenCache = new BearerTokenCache(appConfig.getBearerTokenCacheMaxSize(),
+            appConfig.getBearerTokenCacheIdleTimeout(), appConfig.getBearerTokenRefreshBeforeExpiry());
+    }
 
     public void setBearerToken(String bearerToken) {
-        this.bearerToken.put(null, bearerToken);
+        bearerTokenCache.put(null, bearerToken);
     }
 
-    public void requestNewAccessTokenIfNecessary() {
-        requestNewAccessTokenIfNecessary(null, null, null);
+    public String requestNewAccessTokenIfNecessary() {
+        return requestNewAccessTokenIfNecessary(null, null, null);
     }
 
     /**
-     * Requests a new userConfig if the current one is expired
+     * Requests a new bearer token if the current one is expired
+     *
+     * @return the bearer token for the request, use it instead of reading it
+     * again with {@link #getBearerToken(RuntimeConfig)}, the cache may have
+     * removed it in the meantime
      */
-    public void requestNewAccessTokenIfNecessary(RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
-        if (StringUtils.isEmpty(getBearerToken(runtimeConfig)) || isExpired(bearerToken.get(runtimeConfig))) {
+    public String requestNewAccessTokenIfNecessary(RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
+        return bearerTokenCache.get(runtimeConfig, () -> {
             log.info("Request new bearer token.");
-            String bearerTokenString = bearerTokenService.requestBearerToken(runtimeConfig, replyTo, replyToMessageId);
-            bearerToken.put(runtimeConfig, bearerTokenString);
-        }
+            return bearerTokenService.requestBearerToken(runtimeConfig, replyTo, replyToMessageId);
+        }, () -> bearerTokenService.requestBearerToken(runtimeConfig, null, null));
     }
 
     public String getBearerToken() {
-        return bearerToken.get(null);
+        return bearerTokenCache.get(null);
     }
 
     public String getBearerToken(RuntimeConfig runtimeConfig) {
-        return bearerToken.get(runtimeConfig);
+        return bearerTokenCache.get(runtimeConfig);
     }
-    
+
+    public BearerTokenCache getBearerTokenCache() {
+        return bearerTokenCache;
+    }
+
     /**
      * Checks if the given bearer token is expired.
      * @param bearerToken2 the bearer token to check
      */
     boolean isExpired(String bearerToken2) {
-        JwtConsumer consumer = new JwtConsumerBuilder()
-            .setDisableRequireSignature()
-            .setSkipSignatureVerification()
-            .setSkipDefaultAudienceValidation()
-            .setRequireExpirationTime()
-            .build();
-        try {
-            consumer.process(bearerToken2);
-            return false;
-        } catch (InvalidJwtException e) {
-            return true;
-        }
+        return !Instant.now().isBefore(BearerTokenCache.parseExpiry(bearerToken2));
     }
 }
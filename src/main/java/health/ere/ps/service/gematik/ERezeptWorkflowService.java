@@ -14,12 +14,21 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.enterprise.event.ObservesAsync;
@@ -46,6 +55,7 @@ import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
 import org.hl7.fhir.r4.model.Task;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -82,6 +92,8 @@ import health.ere.ps.exception.gematik.ERezeptWorkflowException;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
 import health.ere.ps.service.connector.cards.ConnectorCardsService;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
+import health.ere.ps.service.fhir.FhirContextProvider;
+import health.ere.ps.vau.VAUConnectionPool;
 import health.ere.ps.vau.VAUEngine;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
 import oasis.names.tc.dss._1_0.core.schema.Base64Data;
@@ -94,7 +106,8 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
     static final String EREZEPT_IDENTIFIER_SYSTEM = "https://gematik.de/fhir/NamingSystem/PrescriptionID";
     static final String EREZEPT_IDENTIFIER_SYSTEM_GEM = "https://gematik.de/fhir/erp/NamingSystem/GEM_ERP_NS_PrescriptionId";
     private static final Logger log = Logger.getLogger(ERezeptWorkflowService.class.getName());
-    private static final FhirContext fhirContext = FhirContext.forR4();
+    private static final FhirContext fhirContext = FhirContextProvider.getFhirContext();
+    private static final AtomicInteger TASK_THREAD_COUNTER = new AtomicInteger();
 
     static {
         org.apache.xml.security.Init.init();
@@ -123,6 +136,7 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
     Event<GetCardsResponseEvent> getCardsResponseEvent;
 
     private Client client;
+    ExecutorService taskExecutor;
     private String userIdForComfortSignature;
     
 
@@ -147,6 +161,19 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
     @PostConstruct
     public void init() {
         client = initClientWithVAU(appConfig, exceptionEvent);
+        initBearerTokenCache(appConfig);
+        taskExecutor = Executors.newFixedThreadPool(getMaxTaskParallelism(appConfig), runnable -> {
+            Thread thread = new Thread(runnable, "erezept-workflow-task-" + TASK_THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if(taskExecutor != null) {
+            taskExecutor.shutdown();
+        }
     }
 
     static Client initClientWithVAU(AppConfig appConfig) {
@@ -155,9 +182,15 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
 
     static Client initClientWithVAU(AppConfig appConfig, Event<Exception> exceptionEvent) {
         ClientBuilder clientBuilder = ClientBuilder.newBuilder();
+        // the $create and $activate calls are sent in parallel
+        ((ResteasyClientBuilderImpl) clientBuilder).connectionPoolSize(Math.max(2, getMaxTaskParallelism(appConfig)))
+            .maxPooledPerRoute(Math.max(2, getMaxTaskParallelism(appConfig)));
         if (appConfig.vauEnabled()) {
             try {
-                ((ResteasyClientBuilderImpl) clientBuilder).httpEngine(new VAUEngine(appConfig.getPrescriptionServiceURL()));
+                ((ResteasyClientBuilderImpl) clientBuilder).httpEngine(new VAUEngine(appConfig.getPrescriptionServiceURL(), appConfig.getVauKeyCacheTtl(),
+                    new VAUConnectionPool(appConfig.getVauConnectionPoolMaxTotal(), appConfig.getVauConnectionPoolMaxPerRoute(),
+                        appConfig.getVauConnectionPoolIdleTimeout(), appConfig.getVauConnectionPoolTimeToLive(),
+                        appConfig.getVauConnectTimeout(), appConfig.getVauSocketTimeout(), appConfig.getVauTlsSessionTimeout())));
             } catch (Exception ex) {
                 log.log(Level.SEVERE, "Could not enable VAU", ex);
                 if(exceptionEvent != null) {
@@ -168,6 +201,16 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
         return clientBuilder.build();
     }
 
+    /**
+     * Returns the VAU engine of the client or null if VAU is not enabled.
+     */
+    public VAUEngine getVAUEngine() {
+        if(client instanceof ResteasyClient && ((ResteasyClient) client).httpEngine() instanceof VAUEngine) {
+            return (VAUEngine) ((ResteasyClient) client).httpEngine();
+        }
+        return null;
+    }
+
     /**
      * This function catches the sign and upload bundle events and does the
      * necessary processing
@@ -235,75 +278,164 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
         return createMultipleERezeptsOnPrescriptionServer(bundles, "160", runtimeConfig, replyTo, replyToMessageId);
     }
 
+    /**
+     * Creates the tasks, signs the bundles and activates the tasks.
+     * <p>
+     * The $create and the $activate calls are sent with the task parallelism
+     * from the runtime config or the app config to the prescription server.
+     * The signing starts as soon as all tasks are created. Every error is
+     * saved in the BundleWithAccessCodeOrThrowable with the same index as
+     * the bundle.
+     */
     public List<BundleWithAccessCodeOrThrowable> createMultipleERezeptsOnPrescriptionServer(List<Bundle> bundles,
         String flowtype, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
         List<BundleWithAccessCodeOrThrowable> bundleWithAccessCodes = new ArrayList<>();
-        List<Task> tasks = new ArrayList<>();
-        for (Bundle bundle : bundles) {
+        for (int i = 0; i < bundles.size(); i++) {
+            bundleWithAccessCodes.add(new BundleWithAccessCodeOrThrowable());
+        }
+        // request the bearer token once before the calls are fanned out
+        try {
+            requestNewAccessTokenIfNecessary(runtimeConfig, replyTo, replyToMessageId);
+        } catch(Throwable t) {
+            log.log(Level.WARNING, "Could not request bearer token", t);
+        }
+        Semaphore semaphore = new Semaphore(getTaskParallelism(runtimeConfig));
+
+        List<CompletableFuture<Task>> createdTasks = new ArrayList<>();
+        for (int i = 0; i < bundles.size(); i++) {
+            final Bundle bundle = bundles.get(i);
+            final BundleWithAccessCodeOrThrowable bundleWithAccessCode = bundleWithAccessCodes.get(i);
+            final String bundleFlowtype = getFlowtype(bundle, flowtype);
             // Example: src/test/resources/gematik/Task-4711.xml
-            try {
-                try {
-                    // We have a PKV prescription
-                    if(flowtype.equals("160") &&
-                        bundle.getEntry().stream().filter(be -> be.getResource() instanceof Coverage)
-                            .map(be -> (Coverage)be.getResource())
-                                .filter(c -> c.getType().getCoding().stream()
-                                    .filter(coding -> coding.getCode().equals("PKV")).count() > 0).count() > 0) {
-                        flowtype = "200";
+            createdTasks.add(submitLimited(semaphore, () -> createERezeptTask(true, runtimeConfig, bundleFlowtype))
+                .handle((task, t) -> {
+                    if(t != null) {
+                        bundleWithAccessCode.setThrowable(unwrap(t));
+                        return null;
                     }
-                } catch(Exception ex) {
-                    log.log(Level.WARNING, "Could not determine flowtype", ex);
-                }
-                Task task = createERezeptTask(true, runtimeConfig, flowtype);
-                tasks.add(task);
-                bundleWithAccessCodes.add(new BundleWithAccessCodeOrThrowable());
-            } catch (Throwable t) {
-                bundleWithAccessCodes.add(new BundleWithAccessCodeOrThrowable(t));
-                tasks.add(null);
+                    if(task == null) {
+                        bundleWithAccessCode.setThrowable(new ERezeptWorkflowException("Task is null please check log for errors."));
+                        return null;
+                    }
+                    // Example:
+                    // src/test/resources/gematik/Bundle-4fe2013d-ae94-441a-a1b1-78236ae65680.xml
+                    try {
+                        BundleWithAccessCodeOrThrowable updatedBundle = updateBundleWithTask(task, bundle);
+                        bundleWithAccessCode.setBundle(updatedBundle.getBundle());
+                        bundleWithAccessCode.setAccessCode(updatedBundle.getAccessCode());
+                        return task;
+                    } catch(Throwable t2) {
+                        bundleWithAccessCode.setThrowable(t2);
+                        return null;
+                    }
+                }));
+        }
+        List<Task> tasks = createdTasks.stream().map(CompletableFuture::join).collect(Collectors.toList());
+
+        // only the bundles with a task are signed
+        List<Integer> indexesToSign = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            if(tasks.get(i) != null) {
+                indexesToSign.add(i);
             }
         }
-        int i = 0;
-        for (Task task : tasks) {
-            // Example:
-            // src/test/resources/gematik/Bundle-4fe2013d-ae94-441a-a1b1-78236ae65680.xml
-            if(task != null) {
-                try {
-                    BundleWithAccessCodeOrThrowable bundleWithAccessCode = updateBundleWithTask(task, bundles.get(i));
-                    bundleWithAccessCodes.get(i).setBundle(bundleWithAccessCode.getBundle());
-                    bundleWithAccessCodes.get(i).setAccessCode(bundleWithAccessCode.getAccessCode());
-                } catch(Throwable t) {
-                    bundleWithAccessCodes.get(i).setThrowable(t);
-                }
-            } else {
-                if(bundleWithAccessCodes.get(i).getThrowable() == null) {
-                    bundleWithAccessCodes.get(i).setThrowable(new ERezeptWorkflowException("Task is null please check log for errors."));
-                }
+        if(indexesToSign.isEmpty()) {
+            return bundleWithAccessCodes;
+        }
+
+        List<SignResponse> signedDocuments;
+        try {
+            signedDocuments = signBundleWithIdentifiers(indexesToSign.stream().map(bundles::get).collect(Collectors.toList()), false, runtimeConfig, replyTo, replyToMessageId);
+        } catch(Throwable t) {
+            indexesToSign.forEach(i -> bundleWithAccessCodes.get(i).setThrowable(t));
+            return bundleWithAccessCodes;
+        }
+
+        List<CompletableFuture<Void>> activatedTasks = new ArrayList<>();
+        for (int j = 0; j < indexesToSign.size(); j++) {
+            final Task task = tasks.get(indexesToSign.get(j));
+            final BundleWithAccessCodeOrThrowable bundleWithAccessCode = bundleWithAccessCodes.get(indexesToSign.get(j));
+            final SignResponse signedDocument = j < signedDocuments.size() ? signedDocuments.get(j) : null;
+            if(signedDocument == null) {
+                bundleWithAccessCode.setThrowable(new ERezeptWorkflowException("Could not get signed document. Please check the logs."));
+                continue;
             }
-            i++;
+            activatedTasks.add(submitLimited(semaphore, () -> {
+                byte[] signedBundle = signedDocument.getSignatureObject().getBase64Signature().getValue();
+                bundleWithAccessCode.setSignedBundle(signedBundle);
+                updateERezeptTask(task, bundleWithAccessCode.getAccessCode(), signedBundle, runtimeConfig);
+                return (Void) null;
+            }).exceptionally(t -> {
+                bundleWithAccessCode.setThrowable(unwrap(t));
+                return null;
+            }));
         }
+        CompletableFuture.allOf(activatedTasks.toArray(CompletableFuture<?>[]::new)).join();
+
+        return bundleWithAccessCodes;
+    }
+
+    int getTaskParallelism(RuntimeConfig runtimeConfig) {
+        Integer taskParallelism = (runtimeConfig != null && runtimeConfig.getTaskParallelism() != null) ? runtimeConfig.getTaskParallelism() : (appConfig != null ? appConfig.getTaskParallelism() : 1);
+        return Math.min(getMaxTaskParallelism(appConfig), Math.max(1, taskParallelism));
+    }
+
+    /**
+     * Returns the size of the task thread pool. It is never lower than the
+     * configured default task parallelism.
+     */
+    static int getMaxTaskParallelism(AppConfig appConfig) {
+        return appConfig != null ? Math.max(1, Math.max(appConfig.getTaskParallelism(), appConfig.getMaxTaskParallelism())) : 1;
+    }
+
+    /**
+     * Returns 200 for PKV prescriptions if the flowtype is 160 otherwise the given flowtype.
+     */
+    static String getFlowtype(Bundle bundle, String flowtype) {
         try {
-            List<SignResponse> signedDocuments = signBundleWithIdentifiers(bundles, false, runtimeConfig, replyTo, replyToMessageId);
-            i = 0;
-            for(SignResponse signedDocument : signedDocuments) {
-                BundleWithAccessCodeOrThrowable bundleWithAccessCode = bundleWithAccessCodes.get(i);
+            // We have a PKV prescription
+            if("160".equals(flowtype) &&
+                bundle.getEntry().stream().filter(be -> be.getResource() instanceof Coverage)
+                    .map(be -> (Coverage)be.getResource())
+                        .filter(c -> c.getType().getCoding().stream()
+                            .filter(coding -> "PKV".equals(coding.getCode())).count() > 0).count() > 0) {
+                return "200";
+            }
+        } catch(Exception ex) {
+            log.log(Level.WARNING, "Could not determine flowtype", ex);
+        }
+        return flowtype;
+    }
+
+    /**
+     * Runs the callable on the task executor. The semaphore limits how many
+     * callables of one request are running at the same time.
+     */
+    <T> CompletableFuture<T> submitLimited(Semaphore semaphore, Callable<T> callable) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
                 try {
-                    Task task = tasks.get(i);
-                    if(task != null) {
-                        byte[] signedBundle = signedDocument.getSignatureObject().getBase64Signature().getValue();
-                        bundleWithAccessCode.setSignedBundle(signedBundle);
-                        updateERezeptTask(task, bundleWithAccessCode.getAccessCode(),
-                            signedBundle, runtimeConfig);
-                    }
-                } catch(Throwable t) {
-                    bundleWithAccessCode.setThrowable(t);
+                    return callable.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                } finally {
+                    semaphore.release();
                 }
-                i++;
-            }
-        } catch(Throwable t) {
-            bundleWithAccessCodes.stream().forEach(bundleWithAccessCode -> bundleWithAccessCode.setThrowable(t));
+            }, taskExecutor);
+        } catch(RejectedExecutionException e) {
+            semaphore.release();
+            return CompletableFuture.failedFuture(e);
         }
+    }
 
-        return bundleWithAccessCodes;
+    private static Throwable unwrap(Throwable t) {
+        return (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
     }
 
     public BundleWithAccessCodeOrThrowable createERezeptOnPrescriptionServer(Bundle bundle)
@@ -328,9 +460,9 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
      */
     public BundleWithAccessCodeOrThrowable createERezeptOnPrescriptionServer(Bundle bundle, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId)
             throws ERezeptWorkflowException {
-        requestNewAccessTokenIfNecessary(runtimeConfig, replyTo, replyToMessageId);
+        String bearerToken = requestNewAccessTokenIfNecessary(runtimeConfig, replyTo, replyToMessageId);
         
-        log.fine("Bearer Token: " + bearerToken.get(runtimeConfig));
+        log.fine("Bearer Token: " + bearerToken);
 
         // Example: src/test/resources/gematik/Task-4711.xml
         Task task = createERezeptTask(runtimeConfig);
@@ -375,7 +507,7 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
      * This function adds the E-Rezept to the previously created task.
      */
     public void updateERezeptTask(String taskId, String accessCode, byte[] signedBytes, boolean firstTry, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
-        requestNewAccessTokenIfNecessary(runtimeConfig, replyTo, replyToMessageId);
+        String bearerToken = requestNewAccessTokenIfNecessary(runtimeConfig, replyTo, replyToMessageId);
         Parameters parameters = new Parameters();
         ParametersParameterComponent ePrescriptionParameter = new ParametersParameterComponent();
         ePrescriptionParameter.setName("ePrescription");
@@ -388,7 +520,7 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
         try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task")
                 .path("/" + taskId).path("/$activate").request()
                 .header("User-Agent", appConfig.getUserAgent())
-                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode)
+                .header("Authorization", "Bearer " + bearerToken).header("X-AccessCode", accessCode)
                 .post(Entity.entity(fhirContext.newXmlParser().encodeResourceToString(parameters),
                         "application/fhir+xml; charset=utf-8"))) {
 
@@ -609,6 +741,10 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
                  } 
             }
         } catch (ConnectorCardsException | FaultMessage e) {
+            if(e instanceof FaultMessage) {
+                // e.g. the card was removed and the cached card handle is not valid anymore
+                connectorCardsService.invalidateCardHandlesOnFault(runtimeConfig, ((FaultMessage) e).getFaultInfo());
+            }
             if(firstTry) {
                 log.log(Level.WARNING, "Exception signing bundles with identifiers on first try.", e);
                 return signBundleWithIdentifiers(bundles, wait10secondsAfterJobNumber, runtimeConfig, replyTo, replyToMessageId, false);
@@ -686,7 +822,7 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
      * @return
      */
     public Task createERezeptTask(boolean firstTry, RuntimeConfig runtimeConfig, String flowtype) {
-        requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+        String bearerToken = requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
         // https://github.com/gematik/api-erp/blob/master/docs/erp_bereitstellen.adoc#e-rezept-erstellen
         // POST to https://prescriptionserver.telematik/Task/$create
 
@@ -703,7 +839,7 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
 
         try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task/$create").request()
                 .header("User-Agent", appConfig.getUserAgent())
-                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig))
+                .header("Authorization", "Bearer " + bearerToken)
                 .post(Entity.entity(parameterString, "application/fhir+xml; charset=utf-8"))) {
 
             String taskString = response.readEntity(String.class);
@@ -733,9 +869,9 @@ public class ERezeptWorkflowService extends BearerTokenManageService {
      * @return
      */
     public void abortERezeptTask(RuntimeConfig runtimeConfig, String taskId, String accessCode) {
-        requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+        String bearerToken = requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
         try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task").path("/" + taskId).path("/$abort")
-                .request().header("User-Agent", appConfig.getUserAgent()).header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode)
+                .request().header("User-Agent", appConfig.getUserAgent()).header("Authorization", "Bearer " + bearerToken).header("X-AccessCode", accessCode)
                 .post(Entity.entity("", "application/fhir+xml; charset=utf-8"))) {
             String taskString = response.readEntity(String.class);
             // if it is not successful
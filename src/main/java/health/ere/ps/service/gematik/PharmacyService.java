@@ -25,6 +25,7 @@ import health.ere.ps.config.UserConfig;
 import health.ere.ps.exception.common.security.SecretsManagerException;
 import health.ere.ps.service.connector.cards.ConnectorCardsService;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
+import health.ere.ps.service.fhir.FhirContextProvider;
 
 @ApplicationScoped
 public class PharmacyService extends BearerTokenManageService {
@@ -41,13 +42,14 @@ public class PharmacyService extends BearerTokenManageService {
     @Inject
     ConnectorCardsService connectorCardsService;
 
-    private static final FhirContext fhirContext = FhirContext.forR4();
+    private static final FhirContext fhirContext = FhirContextProvider.getFhirContext();
 
     Client client;
 
     @PostConstruct
     public void init() throws SecretsManagerException {
         client = ERezeptWorkflowService.initClientWithVAU(appConfig);
+        initBearerTokenCache(appConfig);
     }
 
     public Bundle getEPrescriptionsForCardHandle(String egkHandle, String smcbHandle, RuntimeConfig runtimeConfig) throws FaultMessage, de.gematik.ws.conn.eventservice.wsdl.v7.FaultMessage {
@@ -73,7 +75,7 @@ public class PharmacyService extends BearerTokenManageService {
             smcbHandle = PrefillPrescriptionService.getFirstCardOfType(eventService, CardTypeType.SMC_B, context);
             runtimeConfig.setSMCBHandle(smcbHandle);
         }
-        requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
+        String bearerToken = requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
         log.info(egkHandle+" "+smcbHandle);
         connectorServicesProvider.getVSDServicePortType(runtimeConfig).readVSD(egkHandle, smcbHandle, true, true,
                 context, persoenlicheVersichertendaten, allgemeineVersicherungsdaten, geschuetzteVersichertendaten,
@@ -84,7 +86,7 @@ public class PharmacyService extends BearerTokenManageService {
         try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task")
                 .queryParam("pnw", pnw).request()
                 .header("User-Agent", appConfig.getUserAgent())
-                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig))
+                .header("Authorization", "Bearer " + bearerToken)
                 .get()) {
 
             String bundleString = response.readEntity(String.class);
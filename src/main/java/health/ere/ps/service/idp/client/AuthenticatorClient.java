@@ -127,7 +127,7 @@ public class AuthenticatorClient {
         return AuthenticationResponse.builder()
                 .code(extractParameterValue(location, "code"))
                 .location(location)
-                /*.ssoToken(extractParameterValue(location, "ssotoken"))*/
+                .ssoToken(UriUtils.extractParameterValueOptional(location, "ssotoken").orElse(null))
                 .build();
     }
 
@@ -218,7 +218,7 @@ public class AuthenticatorClient {
                 .expiresIn(expiresIn)
                 .accessToken(decryptToken(tokenKey, jsonObject.get("access_token")))
                 .idToken(decryptToken(tokenKey, jsonObject.get("id_token")))
-                .ssoToken(new IdpJwe(tokenRequest.getSsoToken()))
+                .ssoToken(tokenRequest.getSsoToken() != null ? new IdpJwe(tokenRequest.getSsoToken()) : null)
                 .build();
     }
 
@@ -5,10 +5,15 @@ import static org.jose4j.jws.AlgorithmIdentifiers.RSA_PSS_USING_SHA256;
 import java.security.PublicKey;
 import java.security.Security;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 import javax.enterprise.context.Dependent;
@@ -66,6 +71,10 @@ public class IdpClient implements IIdpClient {
     @ConfigProperty(name = "ere.workflow-service.prescription.server.url")
     String prescriptionServiceURL;
 
+    // the IDP issues SSO tokens that are valid for 12 hours
+    @ConfigProperty(name = "idp.sso-token.validity", defaultValue = "PT11H")
+    Duration ssoTokenValidity;
+
     private final CodeChallengeMethod codeChallengeMethod = CodeChallengeMethod.S256;
 
     @Inject
@@ -81,6 +90,22 @@ public class IdpClient implements IIdpClient {
     private boolean shouldVerifyState;
     private DiscoveryDocumentResponse discoveryDocumentResponse;
 
+    private static class SsoToken {
+        private final String rawString;
+        private final Instant validUntil;
+
+        SsoToken(String rawString, Instant validUntil) {
+            this.rawString = rawString;
+            this.validUntil = validUntil;
+        }
+    }
+
+    // SSO tokens per SMC-B certificate, they allow logins without signing with the card
+    private final Map<X509Certificate, SsoToken> ssoTokens = new ConcurrentHashMap<>();
+    private final AtomicLong ssoTokenLogins = new AtomicLong();
+    private final AtomicLong ssoTokenFailures = new AtomicLong();
+    private final AtomicLong cardLogins = new AtomicLong();
+
     public IdpClient() {
     }
 
@@ -165,25 +190,24 @@ public class IdpClient implements IIdpClient {
             throws IdpClientException, IdpException, IdpJoseException {
         assertThatClientIsInitialized();
 
-        final String codeVerifier = ClientUtilities.generateCodeVerifier();
-        final String nonce = RandomStringUtils.randomAlphanumeric(20);
+        SsoToken ssoToken = ssoTokens.get(certificate);
+        if (ssoToken != null) {
+            if (Instant.now().isBefore(ssoToken.validUntil)) {
+                try {
+                    IdpTokenResult idpTokenResult = loginWithSsoToken(ssoToken.rawString);
+                    ssoTokenLogins.incrementAndGet();
+                    return idpTokenResult;
+                } catch (IdpClientException | IdpException | IdpJoseException | RuntimeException e) {
+                    ssoTokenFailures.incrementAndGet();
+                    logger.warn("Login with SSO token did not work, signing the challenge with the card", e);
+                }
+            }
+            ssoTokens.remove(certificate, ssoToken);
+        }
 
-        // Authorization
+        final String codeVerifier = ClientUtilities.generateCodeVerifier();
         final String state = RandomStringUtils.randomAlphanumeric(20);
-        logger.debug("Performing Authorization with remote-URL: " +
-                discoveryDocumentResponse.getAuthorizationEndpoint());
-        final AuthorizationResponse authorizationResponse =
-                authenticatorClient
-                        .doAuthorizationRequest(AuthorizationRequest.builder()
-                                .clientId(clientId)
-                                .link(discoveryDocumentResponse.getAuthorizationEndpoint())
-                                .codeChallenge(ClientUtilities.generateCodeChallenge(codeVerifier))
-                                .codeChallengeMethod(codeChallengeMethod)
-                                .redirectUri(redirectUrl)
-                                .state(state)
-                                .scopes(prescriptionServiceURL.equals("https://erp-dev.zentral.erp.splitdns.ti-dienste.de") ? scopes_rudev : scopes)
-                                .nonce(nonce)
-                                .build());
+        final AuthorizationResponse authorizationResponse = authorize(codeVerifier, state);
 
         IdpJwe idpJwe = new IdpJwe(signServerChallenge(
                 authorizationResponse.getAuthenticationChallenge().getChallenge().getRawString(),
@@ -199,6 +223,65 @@ public class IdpClient implements IIdpClient {
                                         discoveryDocumentResponse.getAuthorizationEndpoint())
                                 .signedChallenge(idpJwe)
                                 .build());
+        verifyState(authenticationResponse, state);
+
+        IdpTokenResult idpTokenResult = retrieveAccessToken(authenticationResponse, codeVerifier);
+        cardLogins.incrementAndGet();
+        if (StringUtils.isNotEmpty(authenticationResponse.getSsoToken())) {
+            ssoTokens.put(certificate, new SsoToken(authenticationResponse.getSsoToken(),
+                    Instant.now().plus(ssoTokenValidity)));
+        }
+        return idpTokenResult;
+    }
+
+    /**
+     * Gets a new access token with the SSO token of an earlier login. The
+     * challenge does not have to be signed by the card.
+     */
+    private IdpTokenResult loginWithSsoToken(final String ssoToken)
+            throws IdpClientException, IdpException, IdpJoseException {
+        final String codeVerifier = ClientUtilities.generateCodeVerifier();
+        final String state = RandomStringUtils.randomAlphanumeric(20);
+        final AuthorizationResponse authorizationResponse = authorize(codeVerifier, state);
+
+        logger.debug("Performing Authentication with SSO token with remote-URL: " +
+                discoveryDocumentResponse.getAuthorizationEndpoint());
+        final AuthenticationResponse authenticationResponse =
+                authenticatorClient
+                        .performAuthenticationWithSsoToken(AuthenticationRequest.builder()
+                                .authenticationEndpointUrl(
+                                        discoveryDocumentResponse.getAuthorizationEndpoint())
+                                .ssoToken(ssoToken)
+                                .challengeToken(authorizationResponse.getAuthenticationChallenge().getChallenge())
+                                .build());
+        authenticationResponse.setSsoToken(ssoToken);
+        verifyState(authenticationResponse, state);
+
+        return retrieveAccessToken(authenticationResponse, codeVerifier);
+    }
+
+    private AuthorizationResponse authorize(final String codeVerifier, final String state)
+            throws IdpClientException, IdpException {
+        final String nonce = RandomStringUtils.randomAlphanumeric(20);
+
+        // Authorization
+        logger.debug("Performing Authorization with remote-URL: " +
+                discoveryDocumentResponse.getAuthorizationEndpoint());
+        return authenticatorClient
+                .doAuthorizationRequest(AuthorizationRequest.builder()
+                        .clientId(clientId)
+                        .link(discoveryDocumentResponse.getAuthorizationEndpoint())
+                        .codeChallenge(ClientUtilities.generateCodeChallenge(codeVerifier))
+                        .codeChallengeMethod(codeChallengeMethod)
+                        .redirectUri(redirectUrl)
+                        .state(state)
+                        .scopes(prescriptionServiceURL.equals("https://erp-dev.zentral.erp.splitdns.ti-dienste.de") ? scopes_rudev : scopes)
+                        .nonce(nonce)
+                        .build());
+    }
+
+    private void verifyState(final AuthenticationResponse authenticationResponse, final String state)
+            throws IdpException, IdpClientException {
         if (shouldVerifyState) {
             final String stringInTokenUrl = UriUtils
                     .extractParameterValue(authenticationResponse.getLocation(), "state");
@@ -206,7 +289,11 @@ public class IdpClient implements IIdpClient {
                 throw new IdpClientException("state-parameter unexpected changed");
             }
         }
+    }
 
+    private IdpTokenResult retrieveAccessToken(final AuthenticationResponse authenticationResponse,
+                                               final String codeVerifier)
+            throws IdpClientException, IdpException {
         // get Token
         logger.debug("Performing getToken with remote-URL: " +
                 discoveryDocumentResponse.getTokenEndpoint());
@@ -221,6 +308,25 @@ public class IdpClient implements IIdpClient {
                 .build());
     }
 
+    /**
+     * Removes the SSO tokens, the next login signs the challenge with the card.
+     */
+    public void clearSsoTokens() {
+        ssoTokens.clear();
+    }
+
+    public long getSsoTokenLogins() {
+        return ssoTokenLogins.get();
+    }
+
+    public long getSsoTokenFailures() {
+        return ssoTokenFailures.get();
+    }
+
+    public long getCardLogins() {
+        return cardLogins.get();
+    }
+
     private void assertThatIdpIdentityIsValid(final PkiIdentity idpIdentity) {
         Objects.requireNonNull(idpIdentity);
         Objects.requireNonNull(idpIdentity.getCertificate());
@@ -53,13 +53,14 @@ import ca.uhn.fhir.parser.DataFormatException;
 import de.gematik.ws.fa.vsdm.vsd.v5.UCAllgemeineVersicherungsdatenXML;
 import de.gematik.ws.fa.vsdm.vsd.v5.UCGeschuetzteVersichertendatenXML;
 import de.gematik.ws.fa.vsdm.vsd.v5.UCPersoenlicheVersichertendatenXML;
+import health.ere.ps.service.fhir.FhirContextProvider;
 
 @ApplicationScoped
 public class GenerateKBVCertificationBundlesService {
 
     private static Logger log = Logger.getLogger(GenerateKBVCertificationBundlesService.class.getName());
 
-    private final FhirContext fhirContext = FhirContext.forR4();
+    private final FhirContext fhirContext = FhirContextProvider.getFhirContext();
 
     static JAXBContext jaxbContext; 
 
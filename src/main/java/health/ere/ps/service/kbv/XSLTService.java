@@ -1,10 +1,9 @@
 package health.ere.ps.service.kbv;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,6 +18,7 @@ import javax.xml.XMLConstants;
 import javax.xml.transform.ErrorListener;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -26,11 +26,15 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.r4.model.Bundle;
 
 import ca.uhn.fhir.context.FhirContext;
 import health.ere.ps.event.HTMLBundlesEvent;
 import health.ere.ps.event.ReadyToSignBundlesEvent;
+import health.ere.ps.service.common.util.DigestCache;
+import health.ere.ps.service.common.util.XsltErrorListener;
+import health.ere.ps.service.fhir.FhirContextProvider;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
 
 @ApplicationScoped
@@ -38,7 +42,7 @@ public class XSLTService {
 
     private static Logger log = Logger.getLogger(XSLTService.class.getName());
 
-    private final FhirContext fhirContext = FhirContext.forR4();
+    private final FhirContext fhirContext = FhirContextProvider.getFhirContext();
 
     @Inject
     Event<Exception> exceptionEvent;
@@ -46,10 +50,20 @@ public class XSLTService {
     @Inject
     Event<HTMLBundlesEvent> hTMLBundlesEvent;
 
-    Transformer transformer;
+    // bundles that are rendered again, e.g. for the preview and then for the signing view, are taken from here
+    @ConfigProperty(name = "ere.xslt-service.html-cache.max-size", defaultValue = "50")
+    int htmlCacheMaxSize = 50;
+
+    // compiled once, every render gets its own Transformer because a Transformer is not thread-safe
+    Templates templates;
+
+    private DigestCache<String> htmlRenderCache;
+
+    private static final ErrorListener XSLT_ERROR_LISTENER = new XsltErrorListener(log);
 
     @PostConstruct
     public void init() {
+        htmlRenderCache = new DigestCache<>(htmlCacheMaxSize);
 
         try {
             // Step 4: Setup JAXP using identity transformer
@@ -64,28 +78,9 @@ public class XSLTService {
             String systemId = this.getClass().getResource(xslPath).toExternalForm();
             StreamSource xslt = new StreamSource(inputStream, systemId);
             xslt.setPublicId(systemId);
-            factory.setErrorListener(new ErrorListener() {
-                private static final String MSG = "Error in XSLT:";
-
-                @Override
-                public void warning(TransformerException exception) {
-                    log.warning(MSG + exception);
+            factory.setErrorListener(XSLT_ERROR_LISTENER);
 
-                }
-
-                @Override
-                public void fatalError(TransformerException exception) {
-                    log.severe(MSG + exception);
-
-                }
-
-                @Override
-                public void error(TransformerException exception) {
-                    log.severe(MSG + exception);
-                }
-            });
-
-            transformer = factory.newTransformer(xslt);
+            templates = factory.newTemplates(xslt);
         } catch (Exception e) {
             log.log(Level.SEVERE, "Could not init XSLTService", e);
         }
@@ -94,27 +89,35 @@ public class XSLTService {
 
     public String generateHtmlForBundle(Bundle bundle) throws IOException, TransformerException {
         String xmlString = fhirContext.newXmlParser().encodeResourceToString(bundle);
-        File xml = Files.createTempFile("bundle-", ".xml").toFile();
-        Files.write(xml.toPath(), xmlString.getBytes(StandardCharsets.UTF_8));
+        return htmlRenderCache.get(xmlString, this::transform);
+    }
+
+    private String transform(String xmlString) throws TransformerException {
+        Transformer transformer = templates.newTransformer();
+        transformer.setErrorListener(XSLT_ERROR_LISTENER);
 
         // Step 2: Set up output stream.
-        // Note: Using BufferedOutputStream for performance reasons (helpful with
-        // FileOutputStreams).
         ByteArrayOutputStream out = new ByteArrayOutputStream();
 
         // Step 5: Setup input and output for XSLT transformation
         // Setup input stream
-        Source src = new StreamSource(xml);
+        Source src = new StreamSource(new StringReader(xmlString));
 
-        // Resulting SAX events (the generated FO) must be piped through to FOP
         Result res = new StreamResult(out);
 
-        // Step 6: Start XSLT transformation and FOP processing
+        // Step 6: Start XSLT transformation
         transformer.transform(src, res);
 
         return new String(out.toByteArray(), StandardCharsets.UTF_8);
     }
 
+    /**
+     * @return the HTML of the last bundles by the SHA-256 of their XML
+     */
+    public DigestCache<String> getHtmlRenderCache() {
+        return htmlRenderCache;
+    }
+
     public void onReadyToSignBundlesEvent(@ObservesAsync ReadyToSignBundlesEvent readyToSignBundlesEvent) {
 
         log.info(String.format("Received %d bundles to show for signature ", readyToSignBundlesEvent.listOfListOfBundles.size()));
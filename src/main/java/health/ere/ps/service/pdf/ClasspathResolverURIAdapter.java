@@ -1,9 +1,14 @@
 package health.ere.ps.service.pdf;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import org.apache.fop.apps.io.ResourceResolverFactory;
@@ -14,7 +19,11 @@ public class ClasspathResolverURIAdapter implements ResourceResolver {
 
   private static Logger log = Logger.getLogger(ClasspathResolverURIAdapter.class.getName());
 
+  // resources that only exist while a PDF is generated, e.g. the bundles that are embedded into it
+  static final String MEMORY_SCHEME = "memory";
+
   private final ResourceResolver wrapped;
+  private final Map<String, byte[]> memoryResources = new ConcurrentHashMap<>();
 
 
   public ClasspathResolverURIAdapter() {
@@ -22,11 +31,31 @@ public class ClasspathResolverURIAdapter implements ResourceResolver {
   }
 
 
+  /**
+   * @return the uri under which FOP finds the content until it is removed
+   */
+  public URI putMemoryResource(byte[] content) {
+    String id = UUID.randomUUID().toString();
+    memoryResources.put(id, content);
+    return URI.create(MEMORY_SCHEME + ":" + id);
+  }
+
+  public void removeMemoryResource(URI uri) {
+    memoryResources.remove(uri.getSchemeSpecificPart());
+  }
+
   @Override
   public Resource getResource(URI uri) throws IOException {
     log.info("Search resource for Apache FOP: "+uri.toString());
-    if (uri.getScheme().equals("classpath")) {
-      URL url = getClass().getClassLoader().getResource(uri.getSchemeSpecificPart());
+    if (MEMORY_SCHEME.equals(uri.getScheme())) {
+      byte[] content = memoryResources.get(uri.getSchemeSpecificPart());
+      if (content == null) {
+        throw new FileNotFoundException(uri.toString());
+      }
+      return new Resource(new ByteArrayInputStream(content));
+    } else if (uri.getScheme().equals("classpath")) {
+      // class loaders outside of Quarkus do not find names with a leading slash, e.g. classpath:/fop/img/...
+      URL url = getClass().getClassLoader().getResource(uri.getSchemeSpecificPart().replaceFirst("^/", ""));
 
       return new Resource(url.openStream());
     } else {
@@ -5,6 +5,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
@@ -16,13 +18,21 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.enterprise.event.ObservesAsync;
@@ -31,6 +41,7 @@ import javax.xml.XMLConstants;
 import javax.xml.transform.ErrorListener;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -46,20 +57,26 @@ import org.apache.fop.configuration.Configuration;
 import org.apache.fop.configuration.ConfigurationException;
 import org.apache.fop.configuration.DefaultConfigurationBuilder;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hl7.fhir.r4.model.Bundle;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
 import health.ere.ps.event.BundlesWithAccessCodeEvent;
 import health.ere.ps.event.ERezeptWithDocumentsEvent;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
 import health.ere.ps.model.pdf.ERezeptDocument;
+import health.ere.ps.service.common.util.XsltErrorListener;
+import health.ere.ps.service.fhir.FhirContextProvider;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
+import io.quarkus.runtime.Startup;
 
 @ApplicationScoped
+@Startup
 public class DocumentService {
 
     private static final Logger log = Logger.getLogger(DocumentService.class.getName());
-    private static final int MAX_NUMBER_OF_MEDICINES_PER_PRESCRIPTIONS = 9;
-    private final FhirContext ctx = FhirContext.forR4();
+    static final int MAX_NUMBER_OF_MEDICINES_PER_PRESCRIPTIONS = 9;
+    private final FhirContext ctx = FhirContextProvider.getFhirContext();
 
     @Inject
     Event<ERezeptWithDocumentsEvent> eRezeptDocumentsEvent;
@@ -69,21 +86,86 @@ public class DocumentService {
     @ConfigProperty(name = "ere.document-service.write-pdf-file", defaultValue = "false")
     boolean writePdfFile = false;
 
+    // PDFs that are rendered at the same time, they share the FopFactory and the compiled stylesheet
+    @ConfigProperty(name = "ere.document-service.pdf-parallelism", defaultValue = "2")
+    int pdfParallelism = 2;
+
+    // FOP stores the measured fonts in this file and reads them from there on the next start
+    @ConfigProperty(name = "ere.document-service.font-cache.file")
+    Optional<String> fontCacheFile = Optional.empty();
+
+    // renders a sample PDF in the background at startup, so the first prescription is not slower
+    @ConfigProperty(name = "ere.document-service.warm-up", defaultValue = "true")
+    boolean warmUp = true;
+
+    private static final AtomicInteger PDF_THREAD_COUNTER = new AtomicInteger();
+    ExecutorService pdfExecutor;
+
     private FopFactory fopFactory;
+    private ClasspathResolverURIAdapter resourceResolver;
+    private volatile Templates eRezeptTemplates;
+
+    private static final ErrorListener XSLT_ERROR_LISTENER = new XsltErrorListener(log);
 
     @PostConstruct
     public void init() {
+        pdfExecutor = Executors.newFixedThreadPool(Math.max(1, pdfParallelism), runnable -> {
+            Thread thread = new Thread(runnable, "document-service-pdf-" + PDF_THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
         try {
             URI baseURI = getClass().getResource("/fop/").toURI();
-            FopFactoryBuilder fopFactoryBuilder = new FopFactoryBuilder(baseURI, new ClasspathResolverURIAdapter());
+            resourceResolver = new ClasspathResolverURIAdapter();
+            FopFactoryBuilder fopFactoryBuilder = new FopFactoryBuilder(baseURI, resourceResolver);
             initConfiguration(fopFactoryBuilder);
             fopFactory = fopFactoryBuilder.build();
+            initFontCache();
             //fopFactory.getFontManager().setResourceResolver(new LoggingResolver(fopFactory.getFontManager().getResourceResolver()));
             //log.info(fopFactory.getFontManager().getResourceResolver().toString());
         } catch (Exception ex) {
             log.log(Level.SEVERE, "FOP Factory not initializable", ex);
             exceptionEvent.fireAsync(ex);
         }
+        if(warmUp && fopFactory != null) {
+            pdfExecutor.submit(this::warmUp);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if(pdfExecutor != null) {
+            pdfExecutor.shutdown();
+        }
+    }
+
+    private void initFontCache() {
+        if(fontCacheFile.isEmpty() || fontCacheFile.get().isBlank()) {
+            return;
+        }
+        File file = new File(fontCacheFile.get()).getAbsoluteFile();
+        if(file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        fopFactory.getFontManager().setCacheFile(file.toURI());
+        log.info("FOP font cache: " + file);
+    }
+
+    /**
+     * Compiles the stylesheet and renders a sample prescription. This loads
+     * the fonts into the font cache and all classes that are needed for a
+     * PDF, e.g. for the barcodes and the SVG images.
+     */
+    void warmUp() {
+        long start = System.currentTimeMillis();
+        try (InputStream inputStream = getClass().getResourceAsStream("/fop/warm-up-bundle.xml")) {
+            Bundle bundle = ctx.newXmlParser().parseResource(Bundle.class, inputStream);
+            // the sample PDF is not written to a file
+            generatePdfInOutputStream(createXmlFromBundles(List.of(new BundleWithAccessCodeOrThrowable(bundle, "WARM_UP"))));
+            log.info("Document service warmed up in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not warm up the document service", e);
+        }
     }
 
     private void initConfiguration(FopFactoryBuilder fopFactoryBuilder) {
@@ -171,37 +253,58 @@ public class DocumentService {
     public void onBundlesWithAccessCodes(@ObservesAsync BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
         log.info(String.format("About to create prescription receipts for %d bundles",
                 bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable().size()));
-        bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable().forEach(bundles -> {
-            try {
+        try {
+            // the PDFs are rendered in parallel and sent in the order of the bundles
+            List<CompletableFuture<ERezeptDocument>> eRezeptDocumentFutures = new ArrayList<>();
+            for (List<BundleWithAccessCodeOrThrowable> bundles : bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable()) {
                 for (int i = 0; i < bundles.size(); i += MAX_NUMBER_OF_MEDICINES_PER_PRESCRIPTIONS) {
-                    log.info(String.format("Processing bundle with %d medication(s)", i));
-                    
                     List<BundleWithAccessCodeOrThrowable> subList = bundles
                         .subList(i, Math.min(i + MAX_NUMBER_OF_MEDICINES_PER_PRESCRIPTIONS, bundles.size()));
-                    
-                    ByteArrayOutputStream boas = new ByteArrayOutputStream();
-                    if(!onlyContainsThrowables(subList)) {
-                        log.info("Now creating prescription receipts");
-                        try {
-                            boas = generateERezeptPdf(subList);
-                        } catch (IOException | FOPException | TransformerException e) {
-                            log.severe("Could not generate ERezept PDF:" + e);
-                            exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(e, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId()));
-                            boas = new ByteArrayOutputStream();
-                        }
-                    }
-                
-                    ERezeptDocument eRezeptDocument = new ERezeptDocument(subList, boas.size() > 0 ? boas.toByteArray() : null);
-                
-                    log.info("Created prescription receipts");
-                    eRezeptDocumentsEvent.fireAsync(new ERezeptWithDocumentsEvent(List.of(eRezeptDocument),
-                        bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId()));
-                    log.info("Sending prescription receipts results.");
+                    eRezeptDocumentFutures.add(CompletableFuture.supplyAsync(
+                        () -> createERezeptDocument(subList, bundlesWithAccessCodeEvent), pdfExecutor));
                 }
-            } catch (Exception ex) {
-                exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(ex, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId()));
             }
-        });
+
+            // a group that fails is reported on its own, the documents of the other groups are still sent
+            List<ERezeptDocument> eRezeptDocuments = new ArrayList<>();
+            for (CompletableFuture<ERezeptDocument> eRezeptDocumentFuture : eRezeptDocumentFutures) {
+                try {
+                    eRezeptDocuments.add(eRezeptDocumentFuture.join());
+                } catch (CompletionException ex) {
+                    Exception exception = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                    log.log(Level.SEVERE, "Could not create prescription receipt", exception);
+                    exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(exception, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId()));
+                }
+            }
+            log.info(String.format("Created %d of %d prescription receipts", eRezeptDocuments.size(),
+                eRezeptDocumentFutures.size()));
+            if (!eRezeptDocuments.isEmpty()) {
+                eRezeptDocumentsEvent.fireAsync(new ERezeptWithDocumentsEvent(eRezeptDocuments,
+                    bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId()));
+                log.info("Sending prescription receipts results.");
+            }
+        } catch (Exception ex) {
+            exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(ex, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId()));
+        }
+    }
+
+    private ERezeptDocument createERezeptDocument(List<BundleWithAccessCodeOrThrowable> subList,
+                                                  BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
+        log.info(String.format("Processing bundle with %d medication(s)", subList.size()));
+
+        ByteArrayOutputStream boas = new ByteArrayOutputStream();
+        if(!onlyContainsThrowables(subList)) {
+            log.info("Now creating prescription receipts");
+            try {
+                boas = generateERezeptPdf(subList);
+            } catch (IOException | FOPException | TransformerException e) {
+                log.severe("Could not generate ERezept PDF:" + e);
+                exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(e, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId()));
+                boas = new ByteArrayOutputStream();
+            }
+        }
+
+        return new ERezeptDocument(subList, boas.size() > 0 ? boas.toByteArray() : null);
     }
 
     private boolean onlyContainsThrowables(List<BundleWithAccessCodeOrThrowable> bundles) {
@@ -213,36 +316,71 @@ public class DocumentService {
             log.severe("Cannot generate prescriptions pdf for an empty bundle");
             return new ByteArrayOutputStream();
         }
-        File xml = createTemporaryXmlFileFromBundles(bundles);
-        return generatePdfInOutputStream(xml);
-    }
+        byte[] xml = createXmlFromBundles(bundles);
+        ByteArrayOutputStream out = generatePdfInOutputStream(xml);
 
-    private File createTemporaryXmlFileFromBundles(List<BundleWithAccessCodeOrThrowable> bundles) throws IOException {
-        String serialized = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root xmlns=\"http://hl7.org/fhir\">\n" +
-                bundles.stream().filter(bundle -> bundle.getBundle() != null).map(bundle ->
-                        "    <bundle>\n" +
-                                "        <accessCode>" + bundle.getAccessCode() + "</accessCode>\n" +
-                                "        " + ctx.newXmlParser().encodeResourceToString(bundle.getBundle()) + "\n" +
-                                "    </bundle>")
-                        .collect(Collectors.joining("\n")) +
-                "\n</root>";
-
-        File tmpFile = Files.createTempFile("bundle-", ".xml").toFile();
-        Files.write(tmpFile.toPath(), serialized.getBytes(StandardCharsets.UTF_8));
-        return tmpFile;
+        if(isWritePdfFile()) {
+            String thisMoment = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH_mm_ssX")
+                                .withZone(ZoneOffset.UTC)
+                                .format(Instant.now());
+            try {
+                // the PDFs of a batch are rendered at the same time, so the moment alone is not unique
+                Path path = Paths.get(thisMoment+"-"+UUID.randomUUID()+".pdf");
+                log.info("Generating "+path.toAbsolutePath().toString());
+                Files.write(path, out.toByteArray());
+            } catch (IOException e) {
+                log.log(Level.SEVERE, "Could not generate signature files", e);
+            }
+        }
+
+        return out;
     }
 
-    private ByteArrayOutputStream generatePdfInOutputStream(File xml) throws FOPException, TransformerException,
-            IOException {
-        // Step 2: Set up output stream.
-        // Note: Using BufferedOutputStream for performance reasons (helpful with
-        // FileOutputStreams).
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+    /**
+     * The bundles are transformed into the PDF and embedded into it as Bundles.xml.
+     */
+    byte[] createXmlFromBundles(List<BundleWithAccessCodeOrThrowable> bundles) throws IOException {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        IParser xmlParser = ctx.newXmlParser();
+        try (Writer writer = new OutputStreamWriter(xml, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root xmlns=\"http://hl7.org/fhir\">\n");
+            boolean first = true;
+            for (BundleWithAccessCodeOrThrowable bundle : bundles) {
+                if (bundle.getBundle() == null) {
+                    continue;
+                }
+                if (!first) {
+                    writer.write("\n");
+                }
+                first = false;
+                writer.write("    <bundle>\n");
+                writer.write("        <accessCode>" + bundle.getAccessCode() + "</accessCode>\n");
+                writer.write("        ");
+                xmlParser.encodeResourceToWriter(bundle.getBundle(), writer);
+                writer.write("\n    </bundle>");
+            }
+            writer.write("\n</root>");
+        }
+        return xml.toByteArray();
+    }
 
-        // Step 3: Construct fop with desired output format
-        Fop fop = fopFactory.newFop(MimeConstants.MIME_PDF, out);
+    /**
+     * @return the stylesheet, it is compiled once and then shared by all threads
+     */
+    Templates getERezeptTemplates() throws TransformerException {
+        Templates templates = eRezeptTemplates;
+        if (templates == null) {
+            synchronized (this) {
+                if (eRezeptTemplates == null) {
+                    eRezeptTemplates = compileERezeptTemplates();
+                }
+                templates = eRezeptTemplates;
+            }
+        }
+        return templates;
+    }
 
-        // Step 4: Setup JAXP using identity transformer
+    private Templates compileERezeptTemplates() throws TransformerException {
         TransformerFactory factory = TransformerFactory.newInstance("net.sf.saxon.TransformerFactoryImpl", null);
         factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
         factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
@@ -254,51 +392,40 @@ public class DocumentService {
         String systemId = this.getClass().getResource(xslPath).toExternalForm();
         StreamSource xslt = new StreamSource(inputStream, systemId);
         xslt.setPublicId(systemId);
-        factory.setErrorListener(new ErrorListener() {
-            private static final String MSG = "Error in XSLT:";
-
-            @Override
-            public void warning(TransformerException exception) {
-                log.warning(MSG + exception);
-
-            }
+        factory.setErrorListener(XSLT_ERROR_LISTENER);
 
-            @Override
-            public void fatalError(TransformerException exception) {
-                log.severe(MSG + exception);
+        return factory.newTemplates(xslt);
+    }
 
-            }
+    private ByteArrayOutputStream generatePdfInOutputStream(byte[] xml) throws FOPException, TransformerException,
+            IOException {
+        // Step 2: Set up output stream.
+        // Note: Using BufferedOutputStream for performance reasons (helpful with
+        // FileOutputStreams).
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
 
-            @Override
-            public void error(TransformerException exception) {
-                log.severe(MSG + exception);
-            }
-        });
+        // Step 3: Construct fop with desired output format
+        Fop fop = fopFactory.newFop(MimeConstants.MIME_PDF, out);
 
-        Transformer transformer = factory.newTransformer(xslt);
-        transformer.setParameter("bundleFileUrl", xml.toURI().toURL().toString());
+        // Step 4: Setup JAXP using the compiled stylesheet
+        Transformer transformer = getERezeptTemplates().newTransformer();
+        transformer.setErrorListener(XSLT_ERROR_LISTENER);
+        // FOP reads the bundles that are embedded into the PDF from memory
+        URI bundlesUri = resourceResolver.putMemoryResource(xml);
+        transformer.setParameter("bundleFileUrl", bundlesUri.toString());
 
         // Step 5: Setup input and output for XSLT transformation
         // Setup input stream
-        Source src = new StreamSource(xml);
+        Source src = new StreamSource(new ByteArrayInputStream(xml));
 
         // Resulting SAX events (the generated FO) must be piped through to FOP
         Result res = new SAXResult(fop.getDefaultHandler());
 
         // Step 6: Start XSLT transformation and FOP processing
-        transformer.transform(src, res);
-
-        if(isWritePdfFile()) {
-            String thisMoment = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH_mm_ssX")
-                                .withZone(ZoneOffset.UTC)
-                                .format(Instant.now());
-            try {
-                Path path = Paths.get(thisMoment+".pdf");
-                log.info("Generating "+path.toAbsolutePath().toString());
-                Files.write(path, out.toByteArray());
-            } catch (IOException e) {
-                log.log(Level.SEVERE, "Could not generate signature files", e);
-            }
+        try {
+            transformer.transform(src, res);
+        } finally {
+            resourceResolver.removeMemoryResource(bundlesUri);
         }
 
         return out;
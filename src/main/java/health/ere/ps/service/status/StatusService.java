@@ -29,7 +29,11 @@ import health.ere.ps.service.connector.certificate.CardCertificateReaderService;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
 import health.ere.ps.service.gematik.ERezeptWorkflowService;
 import health.ere.ps.service.idp.BearerTokenService;
+import health.ere.ps.service.idp.client.IdpClient;
+import health.ere.ps.validation.fhir.bundle.PrescriptionBundleValidator;
+import health.ere.ps.vau.VAUEngine;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
+import health.ere.ps.websocket.Websocket;
 
 @ApplicationScoped
 public class StatusService {
@@ -60,6 +64,12 @@ public class StatusService {
     @Inject
     ERezeptWorkflowService eRezeptWorkflowService;
 
+    @Inject
+    PrescriptionBundleValidator prescriptionBundleValidator;
+
+    @Inject
+    Websocket websocket;
+
     @Inject
     Event<Exception> exceptionEvent;
 
@@ -177,6 +187,30 @@ public class StatusService {
         // FachdienstReachable
         status.setFachdienstReachable(eRezeptWorkflowService.isERezeptServiceReachable(runtimeConfig, bearerToken), "");
 
+        // VauInformation
+        VAUEngine vauEngine = eRezeptWorkflowService.getVAUEngine();
+        if(vauEngine != null) {
+            status.setVauInformation((vauEngine.getVauKeyCache() != null ? "Key cache: "+vauEngine.getVauKeyCache()+"; " : "")
+                + "Connection pool: "+vauEngine.getConnectionPool());
+        }
+
+        // ValidatorReady
+        status.setValidatorReady(prescriptionBundleValidator.isReady(), prescriptionBundleValidator.getWarmUpStatus());
+
+        // WebsocketInformation
+        status.setWebsocketInformation(websocket.getOutboundMessageQueues().getInformation());
+
+        // ConnectorServicesInformation
+        status.setConnectorServicesInformation("Services providers: "+connectorServicesProvider.getRegistry()
+            + (connectorCardsService.getCardHandleCache() != null ? "; card handles: "+connectorCardsService.getCardHandleCache() : ""));
+
+        // BearerTokenInformation
+        IdpClient idpClient = bearerTokenService.getIdpClient(runtimeConfig);
+        status.setBearerTokenInformation("Token cache: "+eRezeptWorkflowService.getBearerTokenCache()
+            + "; IDP logins with SSO token: "+idpClient.getSsoTokenLogins()
+            + ", SSO token failures: "+idpClient.getSsoTokenFailures()
+            + ", card logins: "+idpClient.getCardLogins());
+
         return status;
     }
     
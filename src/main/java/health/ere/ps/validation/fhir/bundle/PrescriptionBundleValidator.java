@@ -1,9 +1,27 @@
 package health.ere.ps.validation.fhir.bundle;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.json.Json;
 import javax.json.JsonArray;
@@ -12,6 +30,7 @@ import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.common.hapi.validation.support.CachingValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.CommonCodeSystemsTerminologyService;
 import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport;
@@ -26,6 +45,9 @@ import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.SingleValidationMessage;
 import ca.uhn.fhir.validation.ValidationResult;
+import health.ere.ps.event.SignAndUploadBundlesEvent;
+import health.ere.ps.exception.bundle.ValidatorNotReadyException;
+import health.ere.ps.service.fhir.FhirContextProvider;
 import health.ere.ps.validation.fhir.context.support.ErePrePopulatedValidationSupport;
 import io.quarkus.runtime.Startup;
 
@@ -35,21 +57,123 @@ public class PrescriptionBundleValidator {
 
     private static final Logger log =
             Logger.getLogger(PrescriptionBundleValidator.class.getName());
-    private FhirValidator validator;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
 
+    // 0 uses one thread per processor
+    @ConfigProperty(name = "kbv.validator.parallelism", defaultValue = "0")
+    int parallelism;
+
+    @ConfigProperty(name = "kbv.validator.result-cache.max-size", defaultValue = "200")
+    int resultCacheMaxSize;
+
+    // the default KBV configuration, used for bundles without a known profile version
+    @ConfigProperty(name = "kbv.validator.config.dir")
+    String configDir;
+
+    // KBV configurations of other profile versions that are validated side by side
+    @ConfigProperty(name = "kbv.validator.additional-config.dirs")
+    Optional<List<String>> additionalConfigDirs;
+
+    @ConfigProperty(name = "kbv.validator.snapshot-cache.dir")
+    Optional<String> snapshotCacheDir;
+
+    // messages that arrive during the warm-up wait this long for the validator
+    @ConfigProperty(name = "kbv.validator.warm-up.timeout", defaultValue = "PT30S")
+    Duration warmUpTimeout;
+
+    private volatile VersionedValidatorRegistry validatorRegistry;
+    private final CountDownLatch warmUpDone = new CountDownLatch(1);
+    private volatile long warmUpStart;
+    private volatile long warmUpMillis = -1;
+    private volatile Exception warmUpException;
+    private ExecutorService validationExecutor;
+    private ValidationResultCache validationResultCache;
+
+    /**
+     * Starts the warm-up of the validator in the background, so it does not
+     * delay the start of the application.
+     */
     @PostConstruct
     void init() {
-        log.info("Starting validator");
-        FhirContext ctx = FhirContext.forR4();
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        validationExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bundle-validator-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        validationResultCache = new ValidationResultCache(resultCacheMaxSize);
 
-        // Create a chain that will hold our modules
-        ValidationSupportChain validationSupportChain = new ValidationSupportChain();
+        warmUpStart = System.currentTimeMillis();
+        Thread warmUpThread = new Thread(this::warmUp, "bundle-validator-warm-up");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
 
+    void warmUp() {
+        log.info("Starting validator");
+        try {
+            VersionedValidatorRegistry registry = createValidators();
+            registry.getValidators().forEach((version, fhirValidator) -> warmUp(fhirValidator, version));
+            validatorRegistry = registry;
+            warmUpMillis = System.currentTimeMillis() - warmUpStart;
+            log.infof("Validator is ready after %d ms for KBV profile versions %s", warmUpMillis,
+                    registry.getVersions());
+        } catch (Exception e) {
+            warmUpException = e;
+            log.error("Could not start validator", e);
+        } finally {
+            warmUpDone.countDown();
+        }
+    }
+
+    /**
+     * Creates one validator for every KBV configuration directory. The
+     * validators share the base FHIR definitions, so they are only loaded
+     * once.
+     */
+    VersionedValidatorRegistry createValidators() {
+        FhirContext ctx = FhirContextProvider.getFhirContext();
         // DefaultProfileValidationSupport supplies base FHIR definitions. This is generally required
         // even if you are using custom profiles, since those profiles will derive from the base
         // definitions.
-        validationSupportChain.addValidationSupport(new DefaultProfileValidationSupport(ctx));
-        validationSupportChain.addValidationSupport(new ErePrePopulatedValidationSupport(ctx));
+        DefaultProfileValidationSupport defaultProfileValidationSupport = new DefaultProfileValidationSupport(ctx);
+        Path snapshotCacheDirectory = snapshotCacheDir.filter(dir -> !dir.isBlank()).map(Path::of).orElse(null);
+
+        List<String> configDirs = new ArrayList<>();
+        configDirs.add(configDir);
+        additionalConfigDirs.ifPresent(configDirs::addAll);
+
+        Map<String, FhirValidator> validators = new LinkedHashMap<>();
+        for (String dir : configDirs) {
+            boolean additional = !validators.isEmpty();
+            Path configDirectory = Path.of(dir.trim());
+            if (additional && !Files.isDirectory(configDirectory)) {
+                log.warnf("Ignoring KBV configuration %s, the directory does not exist", dir);
+                continue;
+            }
+            // loads the KBV profiles with generated snapshots from the snapshot cache when possible
+            ErePrePopulatedValidationSupport kbvValidationSupport = new ErePrePopulatedValidationSupport(ctx,
+                    defaultProfileValidationSupport, configDirectory, snapshotCacheDirectory);
+            if (additional && !kbvValidationSupport.hasKbvBundleProfile()) {
+                log.warnf("Ignoring KBV configuration %s, it has no KBV_PR_ERP_Bundle profile", dir);
+                continue;
+            }
+            String version = kbvValidationSupport.getKbvProfileVersion();
+            if (validators.containsKey(version)) {
+                log.warnf("Ignoring KBV configuration %s, version %s is already configured", dir, version);
+                continue;
+            }
+            validators.put(version, createValidator(ctx, defaultProfileValidationSupport, kbvValidationSupport));
+        }
+        return new VersionedValidatorRegistry(validators);
+    }
+
+    FhirValidator createValidator(FhirContext ctx, DefaultProfileValidationSupport defaultProfileValidationSupport,
+                                  ErePrePopulatedValidationSupport kbvValidationSupport) {
+        // Create a chain that will hold our modules
+        ValidationSupportChain validationSupportChain = new ValidationSupportChain();
+        validationSupportChain.addValidationSupport(defaultProfileValidationSupport);
+        validationSupportChain.addValidationSupport(kbvValidationSupport);
         validationSupportChain.addValidationSupport(new CommonCodeSystemsTerminologyService(ctx));
         validationSupportChain.addValidationSupport(new InMemoryTerminologyServerValidationSupport(ctx));
         validationSupportChain.addValidationSupport(new SnapshotGeneratingValidationSupport(ctx));
@@ -63,73 +187,80 @@ public class PrescriptionBundleValidator {
         validatorModule.setNoTerminologyChecks(true); // TODO: Fix issues when set to false.
         validatorModule.setCustomExtensionDomains("http://fhir.de", "https://fhir.kbv.de");
 
-        validator = ctx.newValidator().registerValidatorModule(validatorModule);
-
-        // needed for initializing
-        validateResource("{\"resourceType\":\"Bundle\",\"id\":\"2e38f9d3-6de0-4272-b343-7b6975e8fe9e\",\"meta\":{\"lastUpdated\":\"2021-04-06T08:30:00Z\",\"profile\":"+
-        "[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.1.0\"]},\"identifier\":{\"system\":\"https://gematik.de/fhir/NamingSystem/PrescriptionID\",\"value\":\"160.10"+
-        "0.000.000.004.30\"},\"type\":\"document\",\"timestamp\":\"2021-04-06T08:30:00Z\",\"entry\":[{\"fullUrl\":\"http://pvs.praxis.local/fhir/Composition/70e4e747-a1e6-44cd-b91d-"+
-        "7cc2eef89c0c\",\"resource\":{\"resourceType\":\"Composition\",\"id\":\"70e4e747-a1e6-44cd-b91d-7cc2eef89c0c\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/"+
-        "KBV_PR_ERP_Composition|1.1.0\"]},\"extension\":[{\"url\":\"https://fhir.kbv.de/StructureDefinition/KBV_EX_FOR_Legal_basis\",\"valueCoding\":{\"system\":\"https://fhir.kbv.de/Co"+
-        "deSystem/KBV_CS_SFHIR_KBV_STATUSKENNZEICHEN\",\"code\":\"00\"}}],\"status\":\"final\",\"type\":{\"coding\":[{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_SFH"+
-        "IR_KBV_FORMULAR_ART\",\"code\":\"e16A\"}]},\"subject\":{\"reference\":\"Patient/93866fdc-3e50-4902-a7e9-891b54737b5e\"},\"date\":\"2021-04-05T08:00:00Z\",\"author\""+
-        ":[{\"reference\":\"Practitioner/cb7558e2-0fdf-4107-93f6-07f13f39e067\",\"type\":\"Practitioner\"},{\"type\":\"Device\",\"identifier\":{\"system\":\"https://fhir.kbv.de/N"+
-        "amingSystem/KBV_NS_FOR_Pruefnummer\",\"value\":\"Y/400/2107/36/999\"}}],\"title\":\"elektronische Arzneimittelverordnung\",\"attester\":[{\"mode\":\"legal\",\"p"+
-        "arty\":{\"reference\":\"Practitioner/667ffd79-42a3-4002-b7ca-6b9098f20ccb\"}}],\"custodian\":{\"reference\":\"Organization/5d3f4ac0-2b44-4d48-b363-e63efa72973b\"},\"se"+
-        "ction\":[{\"code\":{\"coding\":[{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_ERP_Section_Type\",\"code\":\"Prescription\"}]},\"entry\":[{\"reference\":\"Medicatio"+
-        "nRequest/877e9689-523e-46ca-aa78-8de34a023583\"}]},{\"code\":{\"coding\":[{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_ERP_Section_Type\",\"code\":\"Coverage\""+
-        "}]},\"entry\":[{\"reference\":\"Coverage/1b89236c-ab14-4e92-937e-5af0b59d0cd4\"}]}]}},{\"fullUrl\":\"http://pvs.praxis.local/fhir/MedicationRequest/877e9689-523e-46ca-aa"+
-        "78-8de34a023583\",\"resource\":{\"resourceType\":\"MedicationRequest\",\"id\":\"877e9689-523e-46ca-aa78-8de34a023583\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/Stru"+
-        "ctureDefinition/KBV_PR_ERP_Prescription|1.1.0\"]},\"extension\":[{\"url\":\"https://fhir.kbv.de/StructureDefinition/KBV_EX_ERP_StatusCoPayment\",\"valueCoding\":{\"syst"+
-        "em\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_ERP_StatusCoPayment\",\"code\":\"0\"}},{\"url\":\"https://fhir.kbv.de/StructureDefinition/KBV_EX_ERP_EmergencyServicesFee\""+
-        ",\"valueBoolean\":false},{\"url\":\"https://fhir.kbv.de/StructureDefinition/KBV_EX_ERP_BVG\",\"valueBoolean\":false},{\"url\":\"https://fhir.kbv.de/StructureDefinition/"+
-        "KBV_EX_ERP_Multiple_Prescription\",\"extension\":[{\"url\":\"Kennzeichen\",\"valueBoolean\":false}]}],\"status\":\"active\",\"intent\":\"order\",\"medicationReference\":"+
-        "{\"reference\":\"Medication/b7dd5ddb-b5ad-4b04-af11-6d2a354bce0c\"},\"subject\":{\"reference\":\"Patient/93866fdc-3e50-4902-a7e9-891b54737b5e\"},\"authoredOn\":\"2021-0"+
-        "4-06\",\"requester\":{\"reference\":\"Practitioner/cb7558e2-0fdf-4107-93f6-07f13f39e067\"},\"insurance\":[{\"reference\":\"Coverage/1b89236c-ab14-4e92-937e-5af0b59d0cd"+
-        "4\"}],\"note\":[{\"text\":\"Bitte auf Anwendung schulen\"}],\"dosageInstruction\":[{\"extension\":[{\"url\":\"https://fhir.kbv.de/StructureDefinition/KBV_EX_ERP_DosageF"+
-        "lag\",\"valueBoolean\":false}]}],\"dispenseRequest\":{\"quantity\":{\"value\":2,\"system\":\"http://unitsofmeasure.org\",\"code\":\"{Package}\"}},\"substitution\":{\"al"+
-        "lowedBoolean\":true}}},{\"fullUrl\":\"http://pvs.praxis.local/fhir/Medication/b7dd5ddb-b5ad-4b04-af11-6d2a354bce0c\",\"resource\":{\"resourceType\":\"Medication\",\"id\""+
-        ":\"b7dd5ddb-b5ad-4b04-af11-6d2a354bce0c\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Medication_PZN|1.1.0\"]},\"extension\":[{\"url\":\""+
-        "https://fhir.kbv.de/StructureDefinition/KBV_EX_ERP_Medication_Category\",\"valueCoding\":{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_ERP_Medication_Category\",\""+
-        "code\":\"00\"}},{\"url\":\"https://fhir.kbv.de/StructureDefinition/KBV_EX_ERP_Medication_Vaccine\",\"valueBoolean\":false},{\"url\":\"http://fhir.de/StructureDefinitio"+
-        "n/normgroesse\",\"valueCode\":\"N1\"}],\"code\":{\"coding\":[{\"system\":\"http://fhir.de/CodeSystem/ifa/pzn\",\"code\":\"00427833\"}],\"text\":\"Viani 50\u00B5g/250\u00B5"+
-        "g 1 Diskus 60 ED N1\"},\"form\":{\"coding\":[{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_SFHIR_KBV_DARREICHUNGSFORM\",\"code\":\"IHP\"}]},\"amount\":{\"numerato"+
-        "r\":{\"value\":1,\"unit\":\"Diskus\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"{tbl}\"},\"denominator\":{\"value\":1}}}},{\"fullUrl\":\"http://pvs.praxis.local/"+
-        "fhir/Patient/93866fdc-3e50-4902-a7e9-891b54737b5e\",\"resource\":{\"resourceType\":\"Patient\",\"id\":\"93866fdc-3e50-4902-a7e9-891b54737b5e\",\"meta\":{\"profile\":[\"htt"+
-        "ps://fhir.kbv.de/StructureDefinition/KBV_PR_FOR_Patient|1.0.3\"]},\"identifier\":[{\"type\":{\"coding\":[{\"system\":\"http://fhir.de/CodeSystem/identifier-type-de-basis\""+
-        ",\"code\":\"GKV\"}]},\"system\":\"http://fhir.de/NamingSystem/gkv/kvid-10\",\"value\":\"K220635158\"}],\"name\":[{\"use\":\"official\",\"family\":\"K\u00F6nigsstein\",\"_f"+
-        "amily\":{\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/humanname-own-name\",\"valueString\":\"K\u00F6nigsstein\"}]},\"given\":[\"Ludger\"]}],\"birthDat"+
-        "e\":\"1935-06-22\",\"address\":[{\"type\":\"both\",\"line\":[\"Blumenweg\"],\"_line\":[{\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/iso21090-ADXP-stre"+
-        "etName\",\"valueString\":\"Blumenweg\"}]}],\"city\":\"Esens\",\"postalCode\":\"26427\",\"country\":\"D\"}]}},{\"fullUrl\":\"http://pvs.praxis.local/fhir/Practitioner/cb7558e"+
-        "2-0fdf-4107-93f6-07f13f39e067\",\"resource\":{\"resourceType\":\"Practitioner\",\"id\":\"cb7558e2-0fdf-4107-93f6-07f13f39e067\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/S"+
-        "tructureDefinition/KBV_PR_FOR_Practitioner|1.0.3\"]},\"identifier\":[{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"LANR\"}]}"+
-        ",\"system\":\"https://fhir.kbv.de/NamingSystem/KBV_NS_Base_ANR\",\"value\":\"895268385\"}],\"name\":[{\"use\":\"official\",\"family\":\"Fischer\",\"_family\":{\"extension\":[{"+
-        "\"url\":\"http://hl7.org/fhir/StructureDefinition/humanname-own-name\",\"valueString\":\"Fischer\"}]},\"given\":[\"Alexander\"]}],\"qualification\":[{\"code\":{\"coding\":[{\""+
-        "system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_FOR_Qualification_Type\",\"code\":\"03\"}]}},{\"code\":{\"text\":\"Weiterbildungsassistent\"}}]}},{\"fullUrl\":\"http://pvs.p"+
-        "raxis.local/fhir/Practitioner/667ffd79-42a3-4002-b7ca-6b9098f20ccb\",\"resource\":{\"resourceType\":\"Practitioner\",\"id\":\"667ffd79-42a3-4002-b7ca-6b9098f20ccb\",\"meta\":{\""+
-        "profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_FOR_Practitioner|1.0.3\"]},\"identifier\":[{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSy"+
-        "stem/v2-0203\",\"code\":\"LANR\"}]},\"system\":\"https://fhir.kbv.de/NamingSystem/KBV_NS_Base_ANR\",\"value\":\"987654423\"}],\"name\":[{\"use\":\"official\",\"family\":\"Sch"+
-        "neider\",\"_family\":{\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/humanname-own-name\",\"valueString\":\"Schneider\"}]},\"given\":[\"Emma\"],\"prefix\":["+
-        "\"Dr. med.\"],\"_prefix\":[{\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/iso21090-EN-qualifier\",\"valueCode\":\"AC\"}]}]}],\"qualification\":[{\"code\":{"+
-        "\"coding\":[{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_FOR_Qualification_Type\",\"code\":\"00\"}]}},{\"code\":{\"text\":\"Fach\u00E4rztin f\u00FCr Innere Medizin\"}}]"+
-        "}},{\"fullUrl\":\"http://pvs.praxis.local/fhir/Organization/5d3f4ac0-2b44-4d48-b363-e63efa72973b\",\"resource\":{\"resourceType\":\"Organization\",\"id\":\"5d3f4ac0-2b44-4d48-"+
-        "b363-e63efa72973b\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_FOR_Organization|1.0.3\"]},\"identifier\":[{\"type\":{\"coding\":[{\"system\":\"http:"+
-        "//terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"BSNR\"}]},\"system\":\"https://fhir.kbv.de/NamingSystem/KBV_NS_Base_BSNR\",\"value\":\"721111100\"}],\"name\":\"MVZ\",\"te"+
-        "lecom\":[{\"system\":\"phone\",\"value\":\"0301234567\"},{\"system\":\"fax\",\"value\":\"030123456789\"},{\"system\":\"email\",\"value\":\"mvz@e-mail.de\"}],\"address\":[{\"typ"+
-        "e\":\"both\",\"line\":[\"Herbert-Lewin-Platz 2\"],\"_line\":[{\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/iso21090-ADXP-houseNumber\",\"valueString\":\"2\""+
-        "},{\"url\":\"http://hl7.org/fhir/StructureDefinition/iso21090-ADXP-streetName\",\"valueString\":\"Herbert-Lewin-Platz\"}]}],\"city\":\"Berlin\",\"postalCode\":\"10623\",\"countr"+
-        "y\":\"D\"}]}},{\"fullUrl\":\"http://pvs.praxis.local/fhir/Coverage/1b89236c-ab14-4e92-937e-5af0b59d0cd4\",\"resource\":{\"resourceType\":\"Coverage\",\"id\":\"1b89236c-ab14-4e92-"+
-        "937e-5af0b59d0cd4\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_FOR_Coverage|1.0.3\"]},\"extension\":[{\"url\":\"http://fhir.de/StructureDefinition/gk"+
-        "v/besondere-personengruppe\",\"valueCoding\":{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_SFHIR_KBV_PERSONENGRUPPE\",\"code\":\"00\"}},{\"url\":\"http://fhir.de/StructureDe"+
-        "finition/gkv/dmp-kennzeichen\",\"valueCoding\":{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_SFHIR_KBV_DMP\",\"code\":\"05\"}},{\"url\":\"http://fhir.de/StructureDefinition"+
-        "/gkv/wop\",\"valueCoding\":{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_SFHIR_ITA_WOP\",\"code\":\"17\"}},{\"url\":\"http://fhir.de/StructureDefinition/gkv/versichertenart"+
-        "\",\"valueCoding\":{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_SFHIR_KBV_VERSICHERTENSTATUS\",\"code\":\"5\"}}],\"status\":\"active\",\"type\":{\"coding\":[{\"system\":\"h"+
-        "ttp://fhir.de/CodeSystem/versicherungsart-de-basis\",\"code\":\"GKV\"}]},\"beneficiary\":{\"reference\":\"Patient/93866fdc-3e50-4902-a7e9-891b54737b5e\"},\"payor\":[{\"identifier\""+
-        ":{\"system\":\"http://fhir.de/NamingSystem/arge-ik/iknr\",\"value\":\"109719018\"},\"display\":\"AOK Nordost\"}]}}]}", false);
+        return ctx.newValidator().registerValidatorModule(validatorModule);
+    }
+
+    void warmUp(FhirValidator fhirValidator, String version) {
+        // needed for initializing, the bundle uses the KBV profiles of the validator
+        String warmUpBundle = "/kbv-validator/warm-up-bundle-" + version + ".json";
+        try (InputStream inputStream = getClass().getResourceAsStream(warmUpBundle)) {
+            if (inputStream == null) {
+                log.warnf("No warm-up bundle %s for KBV profile version %s", warmUpBundle, version);
+                return;
+            }
+            fhirValidator.validateWithResult(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.warnf(e, "Could not read warm-up bundle %s", warmUpBundle);
+        }
+    }
+
+    @PreDestroy
+    void destroy() {
+        if(validationExecutor != null) {
+            validationExecutor.shutdown();
+        }
+    }
+
+    public ValidationResultCache getValidationResultCache() {
+        return validationResultCache;
+    }
+
+    public boolean isReady() {
+        return validatorRegistry != null;
+    }
+
+    /**
+     * Describes the state of the warm-up for the status.
+     */
+    public String getWarmUpStatus() {
+        VersionedValidatorRegistry registry = validatorRegistry;
+        if (registry != null) {
+            return "Ready after " + warmUpMillis + " ms for KBV profile versions " + registry.getVersions()
+                    + "; result cache: " + validationResultCache;
+        } else if (warmUpException != null) {
+            return "Warm-up failed: " + warmUpException;
+        } else {
+            return "Warming up since " + (System.currentTimeMillis() - warmUpStart) + " ms";
+        }
+    }
+
+    /**
+     * Returns the validators and waits for the warm-up when it is not done yet.
+     *
+     * @throws ValidatorNotReadyException when the warm-up is not done within
+     * the warm-up timeout or failed
+     */
+    VersionedValidatorRegistry getValidatorRegistry() {
+        VersionedValidatorRegistry registry = validatorRegistry;
+        if (registry != null) {
+            return registry;
+        }
+        try {
+            if (!warmUpDone.await(warmUpTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ValidatorNotReadyException("The validator is still warming up, please try again later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValidatorNotReadyException("Interrupted while waiting for the validator warm-up", e);
+        }
+        if (validatorRegistry == null) {
+            throw new ValidatorNotReadyException("The validator could not be started: " + warmUpException, warmUpException);
+        }
+        return validatorRegistry;
     }
 
     public ValidationResult validateResource(IBaseResource resource, boolean showIssues) {
-        ValidationResult validationResult = validator.validateWithResult(resource);
+        ValidationResult validationResult = getValidatorRegistry().getValidator(resource).validateWithResult(resource);
 
         if(showIssues) {
             showIssues(validationResult);
@@ -149,7 +280,7 @@ public class PrescriptionBundleValidator {
 
     public ValidationResult validateResource(String resourceText, boolean showIssues,
                                              List<String> validationErrorsCollectorList) {
-        ValidationResult validationResult = validator.validateWithResult(resourceText);
+        ValidationResult validationResult = getValidatorRegistry().getValidator(resourceText).validateWithResult(resourceText);
 
         if(showIssues || validationErrorsCollectorList != null) {
             showIssues(validationResult, validationErrorsCollectorList);
@@ -180,15 +311,42 @@ public class PrescriptionBundleValidator {
     }
 
     public JsonObject bundlesValidationResult(JsonObject bundlePayload) {
+        return bundlesValidationResult(bundlePayload, SignAndUploadBundlesEvent.getBundleJsons(bundlePayload));
+    }
+
+    /**
+     * Validates the bundles of the payload that were already serialized with
+     * {@link SignAndUploadBundlesEvent#getBundleJsons(JsonObject)}.
+     * <p>
+     * The bundles are validated in parallel on the validation threads, the
+     * results keep the order of the bundles. The keys of the result cache are
+     * created from the parsed bundles of the payload.
+     */
+    public JsonObject bundlesValidationResult(JsonObject bundlePayload, List<List<String>> bundleJsons) {
+        long start = System.currentTimeMillis();
+        List<String> bundles = new ArrayList<>();
+        bundleJsons.forEach(bundles::addAll);
+        List<JsonValue> bundleValues = new ArrayList<>(bundles.size());
+        for (JsonValue jsonValue : bundlePayload.getJsonArray("payload")) {
+            if (jsonValue instanceof JsonArray) {
+                bundleValues.addAll((JsonArray) jsonValue);
+            }
+        }
+
         JsonObjectBuilder builder = Json.createObjectBuilder();
         builder.add("type", "BundlesValidationResult");
         JsonArrayBuilder payload = Json.createArrayBuilder();
-        for (JsonValue jsonValue : bundlePayload.getJsonArray("payload")) {
-            if (jsonValue instanceof JsonArray) {
-                for (JsonValue singleBundle : (JsonArray) jsonValue) {
-                    JsonObjectBuilder singleBundleResults = validateBundle(singleBundle);
-                    payload.add(singleBundleResults);
-                }
+        if(bundles.size() == 1) {
+            payload.add(validateBundle(bundleValues.get(0), bundles.get(0)));
+        } else {
+            List<Future<JsonObjectBuilder>> results = new ArrayList<>(bundles.size());
+            for (int i = 0; i < bundles.size(); i++) {
+                JsonValue bundleValue = bundleValues.get(i);
+                String singleBundle = bundles.get(i);
+                results.add(validationExecutor.submit(() -> validateBundle(bundleValue, singleBundle)));
+            }
+            for (Future<JsonObjectBuilder> result : results) {
+                payload.add(getResult(result));
             }
         }
         builder.add("payload", payload);
@@ -197,28 +355,74 @@ public class PrescriptionBundleValidator {
         } else {
             builder.add("replyToMessageId", "");
         }
+        log.debugf("Validated %d bundles in %d ms, result cache: %s", bundles.size(),
+                System.currentTimeMillis() - start, validationResultCache);
         return builder.build();
     }
 
+    private static JsonObjectBuilder getResult(Future<JsonObjectBuilder> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating bundles", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not validate bundle", e.getCause());
+        }
+    }
+
     public JsonObjectBuilder validateBundle(JsonValue singleBundle) {
-        log.info("Now validating incoming sign and upload bundle:\n" +
-                    singleBundle.toString());
-        JsonObjectBuilder singleBundleResults = Json.createObjectBuilder();
-        String bundleJson = singleBundle.toString();
-        List<String> errorsList = new ArrayList<>(1);
+        return validateBundle(singleBundle, singleBundle.toString());
+    }
 
-        if (!validateResource(bundleJson,
-        true, errorsList).isSuccessful()) {
+    /**
+     * Validates the bundle or returns the result of the last validation of
+     * the same bundle from the {@link ValidationResultCache}.
+     */
+    public JsonObjectBuilder validateBundle(String bundleJson) {
+        return validationResult(validationResultCache.get(bundleJson, this::validateBundleUncached));
+    }
+
+    /**
+     * Like {@link #validateBundle(String)}, the cache key is created from the
+     * parsed bundle instead of parsing the serialized bundle again.
+     */
+    JsonObjectBuilder validateBundle(JsonValue singleBundle, String bundleJson) {
+        return validationResult(validationResultCache.get(singleBundle, bundleJson, this::validateBundleUncached));
+    }
+
+    private static JsonObjectBuilder validationResult(List<String> errorsList) {
+        JsonObjectBuilder singleBundleResults = Json.createObjectBuilder();
+        if (!errorsList.isEmpty()) {
             JsonArrayBuilder errorsJson = Json.createArrayBuilder();
             errorsList.stream().forEach(s -> errorsJson.add(s));
             singleBundleResults.add("errors", errorsJson);
             singleBundleResults.add("valid", false);
         } else {
             singleBundleResults.add("valid", true);
-            log.info("Validation for the following incoming sign and " +
-            "upload bundle passed:\n" +
-            singleBundle.toString());
         }
         return singleBundleResults;
     }
+
+    private List<String> validateBundleUncached(String bundleJson) {
+        log.debug("Now validating incoming sign and upload bundle:\n" +
+                    bundleJson);
+        List<String> errorsList = new ArrayList<>(1);
+
+        if (!validateResource(bundleJson,
+        true, errorsList).isSuccessful()) {
+            if(errorsList.isEmpty()) {
+                errorsList.add("Bundle is not valid");
+            }
+        } else {
+            log.debug("Validation for the following incoming sign and " +
+            "upload bundle passed:\n" +
+            bundleJson);
+        }
+        // the cached errors are shared by all messages with the same bundle
+        return Collections.unmodifiableList(errorsList);
+    }
 }
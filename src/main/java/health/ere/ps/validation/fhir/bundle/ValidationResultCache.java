@@ -0,0 +1,95 @@
+package health.ere.ps.validation.fhir.bundle;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+import health.ere.ps.service.common.util.DigestCache;
+
+/**
+ * Keeps the validation errors of the last validated bundles.
+ * <p>
+ * The key is a SHA-256 hash of the canonical JSON of the bundle, i.e. with
+ * sorted object keys and without whitespace, so a bundle that is sent again,
+ * e.g. with ValidateBundles and then with SignAndUploadBundles, is found even
+ * when the client serialized it differently. The least recently used result
+ * is removed when the cache is full. A max size of 0 disables the cache.
+ * <p>
+ * The validator returns the errors, an empty list for a valid bundle.
+ */
+public class ValidationResultCache extends DigestCache<List<String>> {
+
+    public ValidationResultCache(int maxSize) {
+        super(maxSize, ValidationResultCache::contentHash);
+    }
+
+    /**
+     * Returns the cached errors of the bundle or validates it. The key is
+     * created from the already parsed bundle, so the JSON is not parsed again.
+     *
+     * @param bundle     the parsed bundle
+     * @param bundleJson the serialized bundle that is given to the validator
+     */
+    public <E extends Exception> List<String> get(JsonValue bundle, String bundleJson, Loader<List<String>, E> loader) throws E {
+        return get(bundleJson, () -> contentHash(bundle), loader);
+    }
+
+    /**
+     * Hashes the canonical JSON of the bundle. Text that is not JSON is
+     * hashed as it is.
+     */
+    static String contentHash(String bundleJson) {
+        try (JsonReader jsonReader = Json.createReader(new StringReader(bundleJson))) {
+            return contentHash(jsonReader.readValue());
+        } catch (JsonException e) {
+            return sha256(bundleJson);
+        }
+    }
+
+    static String contentHash(JsonValue bundle) {
+        StringBuilder sb = new StringBuilder();
+        appendCanonical(bundle, sb);
+        return sha256(sb.toString());
+    }
+
+    private static void appendCanonical(JsonValue value, StringBuilder sb) {
+        switch (value.getValueType()) {
+            case OBJECT:
+                JsonObject jsonObject = value.asJsonObject();
+                List<String> keys = new ArrayList<>(jsonObject.keySet());
+                Collections.sort(keys);
+                sb.append('{');
+                for (int i = 0; i < keys.size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    sb.append(Json.createValue(keys.get(i))).append(':');
+                    appendCanonical(jsonObject.get(keys.get(i)), sb);
+                }
+                sb.append('}');
+                break;
+            case ARRAY:
+                JsonArray jsonArray = value.asJsonArray();
+                sb.append('[');
+                for (int i = 0; i < jsonArray.size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    appendCanonical(jsonArray.get(i), sb);
+                }
+                sb.append(']');
+                break;
+            default:
+                // strings are escaped and numbers are written as they were sent
+                sb.append(value);
+        }
+    }
+}
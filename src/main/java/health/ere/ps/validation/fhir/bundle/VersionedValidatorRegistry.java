@@ -0,0 +1,97 @@
+package health.ere.ps.validation.fhir.bundle;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import ca.uhn.fhir.validation.FhirValidator;
+import health.ere.ps.validation.fhir.context.support.ErePrePopulatedValidationSupport;
+
+/**
+ * Holds one validator per KBV profile version, e.g. 1.0.2 and 1.1.0, and
+ * selects the validator for a bundle by the version of the KBV_PR_ERP_Bundle
+ * profile in its meta.profile.
+ * <p>
+ * Bundles without a bundle profile or with a version that has no validator
+ * are validated with the default validator, the validator of the first
+ * version that was added.
+ */
+public class VersionedValidatorRegistry {
+
+    private static final Pattern BUNDLE_PROFILE_VERSION = Pattern.compile(
+            Pattern.quote(ErePrePopulatedValidationSupport.KBV_BUNDLE_PROFILE + "|") + "([0-9A-Za-z.\\-]+)");
+
+    private final Map<String, FhirValidator> validators;
+    private final String defaultVersion;
+
+    /**
+     * @param validators the validators by profile version, the first one is
+     *                   the default validator
+     */
+    public VersionedValidatorRegistry(Map<String, FhirValidator> validators) {
+        if (validators.isEmpty()) {
+            throw new IllegalArgumentException("At least one validator is needed");
+        }
+        this.validators = Collections.unmodifiableMap(new LinkedHashMap<>(validators));
+        this.defaultVersion = validators.keySet().iterator().next();
+    }
+
+    /**
+     * Finds the version of the bundle profile in the JSON or XML text of a
+     * bundle. The profile is in the meta element at the start of the bundle,
+     * so the text is not parsed.
+     *
+     * @return the version or null when the text has no bundle profile
+     */
+    public static String getProfileVersion(String resourceText) {
+        if (resourceText == null) {
+            return null;
+        }
+        Matcher matcher = BUNDLE_PROFILE_VERSION.matcher(resourceText);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    public static String getProfileVersion(IBaseResource resource) {
+        if (resource == null || resource.getMeta() == null) {
+            return null;
+        }
+        for (IPrimitiveType<String> profile : resource.getMeta().getProfile()) {
+            Matcher matcher = BUNDLE_PROFILE_VERSION.matcher(String.valueOf(profile.getValue()));
+            if (matcher.matches()) {
+                return matcher.group(1);
+            }
+        }
+        return null;
+    }
+
+    public FhirValidator getValidator(String resourceText) {
+        return getValidatorForVersion(getProfileVersion(resourceText));
+    }
+
+    public FhirValidator getValidator(IBaseResource resource) {
+        return getValidatorForVersion(getProfileVersion(resource));
+    }
+
+    public FhirValidator getValidatorForVersion(String version) {
+        FhirValidator validator = version != null ? validators.get(version) : null;
+        return validator != null ? validator : validators.get(defaultVersion);
+    }
+
+    public String getDefaultVersion() {
+        return defaultVersion;
+    }
+
+    public Set<String> getVersions() {
+        return validators.keySet();
+    }
+
+    public Map<String, FhirValidator> getValidators() {
+        return validators;
+    }
+}
@@ -8,17 +8,24 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.microprofile.config.ConfigProvider;
 import org.hl7.fhir.common.hapi.validation.support.PrePopulatedValidationSupport;
+import org.hl7.fhir.common.hapi.validation.support.ValidationSupportChain;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.CodeSystem;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.hl7.fhir.r4.model.ValueSet;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
 import ca.uhn.fhir.parser.IParser;
 import health.ere.ps.service.logging.EreLogger;
 
@@ -28,16 +35,50 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
     private static final List<EreLogger.SystemContext> systemContextList = List.of(
             EreLogger.SystemContext.KbvBundleValidator,
             EreLogger.SystemContext.KbvBundleValidatorConfiguration);
-    private IParser xmlParser = FhirContext.forR4().newXmlParser();
-    private IParser jsonParser = FhirContext.forR4().newJsonParser();
+    private final IParser xmlParser;
+    private final IParser jsonParser;
+    private final IValidationSupport baseValidationSupport;
+    private final Path configDirectory;
+    private final Path snapshotCacheDirectory;
+    // the resources as they were added, written to the snapshot cache
+    private final List<IBaseResource> kbvResources = new ArrayList<>();
+    private boolean loadedFromSnapshotCache;
     private static Logger log = Logger.getLogger(ErePrePopulatedValidationSupport.class.getName());
 
+    public static final String KBV_BUNDLE_PROFILE = "https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle";
+
     protected enum ConfigType {
         PROFILE, EXTENSION, VALUE_SET, CODE_SYSTEM, NAMING_SYSTEM, UNKNOWN
     }
 
     public ErePrePopulatedValidationSupport(FhirContext theContext) {
+        this(theContext, null);
+    }
+
+    /**
+     * @param baseValidationSupport supplies the base FHIR definitions for
+     *                              generating the snapshots, a new
+     *                              DefaultProfileValidationSupport when null
+     */
+    public ErePrePopulatedValidationSupport(FhirContext theContext, IValidationSupport baseValidationSupport) {
+        this(theContext, baseValidationSupport,
+                Path.of(ConfigProvider.getConfig().getValue("kbv.validator.config.dir", String.class)),
+                ConfigProvider.getConfig().getOptionalValue("kbv.validator.snapshot-cache.dir", String.class)
+                        .map(Path::of).orElse(null));
+    }
+
+    /**
+     * @param snapshotCacheDirectory directory of the snapshot cache files,
+     *                               the cache is not used when null
+     */
+    public ErePrePopulatedValidationSupport(FhirContext theContext, IValidationSupport baseValidationSupport,
+                                            Path configDirectory, Path snapshotCacheDirectory) {
         super(theContext);
+        xmlParser = theContext.newXmlParser();
+        jsonParser = theContext.newJsonParser();
+        this.baseValidationSupport = baseValidationSupport;
+        this.configDirectory = configDirectory.toAbsolutePath();
+        this.snapshotCacheDirectory = snapshotCacheDirectory;
 
         ereLogger.setLoggingContext(systemContextList)
                 .info("Loading KBV Validator configuration");
@@ -71,6 +112,7 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
             }
 
             addStructureDefinition(structureDefinition);
+            kbvResources.add(structureDefinition);
         } catch (IOException e) {
             ereLogger.setLoggingContext(systemContextList,
                     "Cannot load KBV Profile Config files", true)
@@ -102,6 +144,7 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
             }
 
             addValueSet(valueSet);
+            kbvResources.add(valueSet);
         } catch (IOException e) {
             ereLogger.setLoggingContext(systemContextList,
                     "Cannot load KBV ValueSet Config Files",
@@ -134,6 +177,7 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
             }
 
             addCodeSystem(codeSystem);
+            kbvResources.add(codeSystem);
         } catch (IOException e) {
             ereLogger.setLoggingContext(systemContextList,
                     "Cannot load KBV Code System Config files", true)
@@ -141,13 +185,35 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
         }
     }
 
+    /**
+     * Loads the configuration from the snapshot cache file when it was written
+     * for the current content of the configuration directory. Otherwise the
+     * files of the directory are parsed, the snapshots of the profiles are
+     * generated and the cache file is written for the next start.
+     */
     public void initKbvValidatorConfiguration() {
-        String kbvValidatorConfigDirectory =
-                ConfigProvider.getConfig().getValue("kbv.validator.config.dir", String.class);
-        Path start = Path.of(kbvValidatorConfigDirectory).toAbsolutePath();
+        long start = System.currentTimeMillis();
+        Path snapshotCacheFile = getSnapshotCacheFile();
+        String checksum = null;
+
+        if (snapshotCacheFile != null) {
+            try {
+                checksum = ValidationSnapshotCache.checksum(configDirectory);
+                List<IBaseResource> resources = ValidationSnapshotCache.read(snapshotCacheFile, checksum, jsonParser);
+                if (resources != null) {
+                    resources.forEach(this::addKbvResource);
+                    loadedFromSnapshotCache = true;
+                    log.info(String.format("Loaded %d KBV validator resources from %s in %d ms", resources.size(),
+                            snapshotCacheFile, System.currentTimeMillis() - start));
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warning("Could not read KBV validator snapshot cache " + snapshotCacheFile + ": " + e);
+            }
+        }
 
         try {
-            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            Files.walkFileTree(configDirectory, new SimpleFileVisitor<Path>() {
 
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
@@ -160,7 +226,97 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
             ereLogger.setLoggingContext(systemContextList,
                     "Cannot initialise KBV Validator", true)
                     .fatal("Error occurred while configuring validator", e);
+            return;
+        }
+
+        if (snapshotCacheFile != null && checksum != null) {
+            generateSnapshots();
+            try {
+                ValidationSnapshotCache.write(snapshotCacheFile, checksum, kbvResources, jsonParser);
+            } catch (IOException | RuntimeException e) {
+                log.warning("Could not write KBV validator snapshot cache " + snapshotCacheFile + ": " + e);
+            }
+        }
+        log.info(String.format("Loaded %d KBV validator resources from %s in %d ms", kbvResources.size(),
+                configDirectory, System.currentTimeMillis() - start));
+    }
+
+    Path getSnapshotCacheFile() {
+        if (snapshotCacheDirectory == null || snapshotCacheDirectory.toString().isBlank()) {
+            return null;
+        }
+        return snapshotCacheDirectory.resolve(configDirectory.getFileName() + ".snapshot.gz");
+    }
+
+    public boolean isLoadedFromSnapshotCache() {
+        return loadedFromSnapshotCache;
+    }
+
+    /**
+     * @return the version of the KBV_PR_ERP_Bundle profile of the
+     * configuration, e.g. 1.1.0, or the name of the configuration directory
+     * when it has no bundle profile
+     */
+    public String getKbvProfileVersion() {
+        return getKbvBundleProfile()
+                .map(StructureDefinition::getVersion)
+                .orElse(configDirectory.getFileName().toString());
+    }
+
+    /**
+     * @return true when the configuration contains the KBV_PR_ERP_Bundle
+     * profile, i.e. it can validate prescription bundles
+     */
+    public boolean hasKbvBundleProfile() {
+        return getKbvBundleProfile().isPresent();
+    }
+
+    private Optional<StructureDefinition> getKbvBundleProfile() {
+        return kbvResources.stream()
+                .filter(resource -> resource instanceof StructureDefinition)
+                .map(resource -> (StructureDefinition) resource)
+                .filter(structureDefinition -> structureDefinition.getUrl().startsWith(KBV_BUNDLE_PROFILE + "|"))
+                .findFirst();
+    }
+
+    private void addKbvResource(IBaseResource resource) {
+        if (resource instanceof StructureDefinition) {
+            addStructureDefinition(resource);
+        } else if (resource instanceof ValueSet) {
+            addValueSet(resource);
+        } else if (resource instanceof CodeSystem) {
+            addCodeSystem(resource);
+        }
+        kbvResources.add(resource);
+    }
+
+    /**
+     * Generates the snapshots of the profiles that only have a differential,
+     * as the validator would do for the first bundle that uses them.
+     */
+    protected void generateSnapshots() {
+        FhirContext ctx = getFhirContext();
+        ProfileSnapshotGenerator profileSnapshotGenerator = new ProfileSnapshotGenerator(ctx);
+        ValidationSupportChain chain = new ValidationSupportChain(
+                baseValidationSupport != null ? baseValidationSupport : new DefaultProfileValidationSupport(ctx),
+                this, profileSnapshotGenerator);
+        ValidationSupportContext validationSupportContext = new ValidationSupportContext(chain);
+
+        for (IBaseResource resource : kbvResources) {
+            if (resource instanceof StructureDefinition && !((StructureDefinition) resource).hasSnapshot()) {
+                try {
+                    chain.generateSnapshot(validationSupportContext, resource, "", null, "");
+                } catch (RuntimeException e) {
+                    // the validator generates it again when it is needed
+                    log.fine("Could not generate snapshot for " + ((StructureDefinition) resource).getUrl() + ": " + e);
+                }
+            }
         }
+        kbvResources.replaceAll(profileSnapshotGenerator::getGenerated);
+        kbvResources.stream().filter(resource -> resource instanceof StructureDefinition)
+                .forEach(this::addStructureDefinition);
+        log.info("Generated " + profileSnapshotGenerator.getGeneratedCount() + " KBV profile snapshots with "
+                + profileSnapshotGenerator.getWorkerContextCount() + " worker contexts");
     }
 
     protected ConfigType getConfigType(Path kbvConfigFile) {
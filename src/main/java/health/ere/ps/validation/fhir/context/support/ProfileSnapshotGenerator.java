@@ -0,0 +1,130 @@
+package health.ere.ps.validation.fhir.context.support;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.fhir.common.hapi.validation.validator.ProfileKnowledgeWorkerR5;
+import org.hl7.fhir.common.hapi.validation.validator.VersionSpecificWorkerContextWrapper;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r5.conformance.profile.ProfileUtilities;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
+import ca.uhn.hapi.converters.canonical.VersionCanonicalizer;
+
+/**
+ * Generates the snapshots of R4 profiles like SnapshotGeneratingValidationSupport,
+ * but reuses the worker contexts.
+ * <p>
+ * SnapshotGeneratingValidationSupport creates a new worker context, which
+ * converts all structure definitions of the chain to R5, for every snapshot,
+ * and again for every profile that is fetched while a snapshot is generated.
+ * This takes about a second per profile. The generator keeps one worker
+ * context per nesting level instead: a worker context must not be used again
+ * while it loads a profile, so a profile that is fetched while a snapshot is
+ * generated is generated with the worker context of the next level.
+ * <p>
+ * The generator keeps the snapshots it generated, so it is meant for
+ * generating the snapshots of a configuration once, not to be added to the
+ * chain of the validator.
+ */
+class ProfileSnapshotGenerator implements IValidationSupport {
+
+    private final FhirContext fhirContext;
+    private final VersionCanonicalizer versionCanonicalizer;
+    private final Map<IBaseResource, IBaseResource> generated = new IdentityHashMap<>();
+    private final Set<String> generating = new HashSet<>();
+    private final List<ProfileUtilities> profileUtilitiesByDepth = new ArrayList<>();
+    private int depth;
+    private boolean circular;
+
+    ProfileSnapshotGenerator(FhirContext fhirContext) {
+        this.fhirContext = fhirContext;
+        this.versionCanonicalizer = new VersionCanonicalizer(fhirContext);
+    }
+
+    @Override
+    public FhirContext getFhirContext() {
+        return fhirContext;
+    }
+
+    /**
+     * @return the profile with the snapshot or null when the base is unknown
+     */
+    @Override
+    public synchronized IBaseResource generateSnapshot(ValidationSupportContext theValidationSupportContext,
+                                                       IBaseResource theInput, String theUrl, String theWebUrl,
+                                                       String theProfileName) {
+        if (!(theInput instanceof StructureDefinition)) {
+            return null;
+        }
+        if (generated.containsKey(theInput)) {
+            return generated.get(theInput);
+        }
+        StructureDefinition structureDefinition = (StructureDefinition) theInput;
+        // a profile that refers to itself, the worker context gets it without
+        // snapshot and is not used for other profiles afterwards
+        if (!generating.add(structureDefinition.getUrl())) {
+            circular = true;
+            return structureDefinition;
+        }
+        try {
+            IValidationSupport rootValidationSupport = theValidationSupportContext.getRootValidationSupport();
+            IBaseResource base = rootValidationSupport.fetchStructureDefinition(structureDefinition.getBaseDefinition());
+            if (base instanceof StructureDefinition && !((StructureDefinition) base).hasSnapshot()) {
+                base = rootValidationSupport.generateSnapshot(theValidationSupportContext, base, "", null, "");
+            }
+            if (!(base instanceof StructureDefinition) || !((StructureDefinition) base).hasSnapshot()) {
+                return null;
+            }
+
+            if (profileUtilitiesByDepth.size() == depth) {
+                profileUtilitiesByDepth.add(new ProfileUtilities(
+                        new VersionSpecificWorkerContextWrapper(theValidationSupportContext, versionCanonicalizer),
+                        new ArrayList<>(), new ProfileKnowledgeWorkerR5(fhirContext)));
+            }
+            org.hl7.fhir.r5.model.StructureDefinition canonical =
+                    versionCanonicalizer.structureDefinitionToCanonical(structureDefinition);
+            depth++;
+            try {
+                profileUtilitiesByDepth.get(depth - 1).generateSnapshot(
+                        versionCanonicalizer.structureDefinitionToCanonical(base), canonical,
+                        theUrl, theWebUrl, theProfileName);
+            } finally {
+                depth--;
+            }
+            IBaseResource withSnapshot = versionCanonicalizer.structureDefinitionFromCanonical(canonical);
+            generated.put(structureDefinition, withSnapshot);
+            return withSnapshot;
+        } finally {
+            generating.remove(structureDefinition.getUrl());
+            if (depth == 0 && circular) {
+                profileUtilitiesByDepth.clear();
+                circular = false;
+            }
+        }
+    }
+
+    /**
+     * @return the profile with the snapshot when it was generated, else the
+     * given resource
+     */
+    synchronized IBaseResource getGenerated(IBaseResource resource) {
+        IBaseResource withSnapshot = generated.get(resource);
+        return withSnapshot != null ? withSnapshot : resource;
+    }
+
+    synchronized int getGeneratedCount() {
+        return generated.size();
+    }
+
+    synchronized int getWorkerContextCount() {
+        return profileUtilitiesByDepth.size();
+    }
+}
@@ -0,0 +1,127 @@
+package health.ere.ps.validation.fhir.context.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.util.VersionUtil;
+
+/**
+ * Stores the conformance resources of a KBV validator configuration directory,
+ * with generated snapshots, in one gzipped file.
+ * <p>
+ * The file starts with the checksum of the configuration directory. When a
+ * file in the directory changes, or the HAPI version changes, the checksum
+ * does not match anymore and {@link #read(Path, String, IParser)} returns
+ * null, so the configuration is loaded again from the directory.
+ */
+public class ValidationSnapshotCache {
+
+    // increase when the content of the file changes
+    static final int FORMAT_VERSION = 1;
+
+    private ValidationSnapshotCache() {
+    }
+
+    /**
+     * Hashes the relative paths and the contents of all files of the directory.
+     */
+    public static String checksum(Path configDirectory) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update((FORMAT_VERSION + "|" + VersionUtil.getVersion()).getBytes(StandardCharsets.UTF_8));
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(configDirectory)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        byte[] buffer = new byte[8192];
+        for (Path file : files) {
+            String relativePath = configDirectory.relativize(file).toString().replace('\\', '/');
+            digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Reads the resources of the cache file.
+     *
+     * @return the resources or null when the file does not exist or was
+     * written for another checksum
+     */
+    public static List<IBaseResource> read(Path cacheFile, String checksum, IParser jsonParser) throws IOException {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(cacheFile))))) {
+            if (in.readInt() != FORMAT_VERSION || !checksum.equals(in.readUTF())) {
+                return null;
+            }
+            int count = in.readInt();
+            List<IBaseResource> resources = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] json = new byte[in.readInt()];
+                in.readFully(json);
+                resources.add(jsonParser.parseResource(new String(json, StandardCharsets.UTF_8)));
+            }
+            return resources;
+        }
+    }
+
+    /**
+     * Writes the resources to a temporary file that then replaces the cache
+     * file, so a concurrent reader never sees a partly written file.
+     */
+    public static void write(Path cacheFile, String checksum, List<IBaseResource> resources,
+                             IParser jsonParser) throws IOException {
+        Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+        Path tempFile = Files.createTempFile(cacheFile.toAbsolutePath().getParent(),
+                cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(checksum);
+                out.writeInt(resources.size());
+                for (IBaseResource resource : resources) {
+                    byte[] json = jsonParser.encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(json.length);
+                    out.write(json);
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
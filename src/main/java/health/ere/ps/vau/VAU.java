@@ -1,11 +1,10 @@
 package health.ere.ps.vau;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -17,8 +16,12 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.bind.DatatypeConverter;
@@ -55,6 +58,7 @@ import org.bouncycastle.jce.ECNamedCurveTable;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.util.BigIntegers;
 
 import de.gematik.ws.conn.certificateservice.v6.VerificationResultType;
 import de.gematik.ws.conn.certificateservice.v6.VerifyCertificateResponse;
@@ -67,31 +71,51 @@ public class VAU {
     private static final Logger log = Logger.getLogger(VAU.class.getName());
     static X9ECParameters x9EC = org.bouncycastle.asn1.x9.ECNamedCurveTable
             .getByOID(new ASN1ObjectIdentifier(TeleTrusTObjectIdentifiers.brainpoolP256r1.getId()));
+    private static final ECDomainParameters EC_DOMAIN = new ECDomainParameters(x9EC.getCurve(), x9EC.getG(), x9EC.getN(), x9EC.getH(), x9EC.getSeed());
+    private static final byte[] HKDF_INFO = "ecies-vau-transport".getBytes(StandardCharsets.US_ASCII);
+    static final int COORDINATE_LENGTH = 32;
+    static final int IV_LENGTH = 96 / 8;
+    static final int MAC_LENGTH = 128 / 8;
+    // version (1 byte) | X (32 bytes) | Y (32 bytes) | IV (12 bytes) | cipher text | MAC (16 bytes)
+    static final int HEADER_LENGTH = 1 + 2 * COORDINATE_LENGTH + IV_LENGTH;
 
     static {
         Security.addProvider(new BouncyCastleProvider());
     }
 
+    private static final ECNamedCurveParameterSpec EC_PARAMETER_SPEC = ECNamedCurveTable.getParameterSpec("brainpoolp256r1");
+
     private final SecureRandom secureRandom = new SecureRandom();
     String fachdienstUrl;
     CertificateServicePortType certificateService;
     ContextType contextType;
+    private final VAUKeyCache keyCache;
 
     public VAU() {
+        this(null);
     }
 
     public VAU(String fachdienstUrl) {
+        this(fachdienstUrl, VAUKeyCache.DEFAULT_TTL);
+    }
+
+    public VAU(String fachdienstUrl, Duration keyCacheTtl) {
         this.fachdienstUrl = fachdienstUrl;
+        this.keyCache = new VAUKeyCache(this::loadVauPublicKeyXY, keyCacheTtl);
     }
 
     public VAU(String fachdienstUrl, ContextType contextType, CertificateServicePortType certificateService) {
-        this.fachdienstUrl = fachdienstUrl;
+        this(fachdienstUrl);
         this.certificateService = certificateService;
         this.contextType = contextType;
     }
 
+    public VAUKeyCache getKeyCache() {
+        return this.keyCache;
+    }
+
     static ECDomainParameters getECDomain() {
-        return new ECDomainParameters(x9EC.getCurve(), x9EC.getG(), x9EC.getN(), x9EC.getH(), x9EC.getSeed());
+        return EC_DOMAIN;
     }
 
     static String byteArrayToHexString(byte[] bytes) {
@@ -99,29 +123,22 @@ public class VAU {
     }
 
     static byte[] decryptWithKey(byte[] message, byte[] key) throws Exception {
-        int MAC_BIT_SIZE = 128;
-        int NONCE_BIT_SIZE = 96;
         int KEY_LENGTH = 128;
 
         if (key == null || key.length != KEY_LENGTH / 8) {
             throw new Exception("Key needs to be " + KEY_LENGTH + " bit!");
         }
-        if (message == null || message.length == 0) {
+        if (message == null || message.length < IV_LENGTH + MAC_LENGTH) {
             throw new Exception("Message required!");
         }
 
-        var cipherStream = new ByteArrayInputStream(message);
-        byte[] nonSecretPayload = new byte[0];
-        cipherStream.read(nonSecretPayload, 0, 0);
-        byte[] nonce = new byte[NONCE_BIT_SIZE / 8];
-        cipherStream.read(nonce, 0, NONCE_BIT_SIZE / 8);
+        // IV (12 bytes) | cipher text | MAC (16 bytes), the cipher reads directly from the message
         var cipher = new GCMBlockCipher(new AESEngine());
-        var parameters = new AEADParameters(new KeyParameter(key), MAC_BIT_SIZE, nonce, nonSecretPayload);
+        var parameters = new AEADParameters(new KeyParameter(key), MAC_LENGTH * 8, Arrays.copyOf(message, IV_LENGTH));
         cipher.init(false, parameters);
-        byte[] cipherText = new byte[message.length - nonce.length];
-        cipherStream.read(cipherText, 0, message.length - nonce.length);
-        var plainText = new byte[cipher.getOutputSize(cipherText.length)];
-        var len = cipher.processBytes(cipherText, 0, cipherText.length, plainText, 0);
+        int cipherTextLength = message.length - IV_LENGTH;
+        var plainText = new byte[cipher.getOutputSize(cipherTextLength)];
+        var len = cipher.processBytes(message, IV_LENGTH, cipherTextLength, plainText, 0);
         cipher.doFinal(plainText, len);
 
         return plainText;
@@ -134,7 +151,7 @@ public class VAU {
     }
 
     private byte[] getIv() {
-        byte[] keyBytes = new byte[96 / 8];
+        byte[] keyBytes = new byte[IV_LENGTH];
         secureRandom.nextBytes(keyBytes);
         return keyBytes;
     }
@@ -144,26 +161,47 @@ public class VAU {
         KeyPairGenerator keyGenerator;
         keyGenerator = KeyPairGenerator.getInstance("ECDH", BouncyCastleProvider.PROVIDER_NAME); //ECDSA.getInstance(TeleTrusTObjectIdentifiers.brainpoolP256r1.getId());
         // TeleTrusTObjectIdentifiers.brainpoolP256r1.
-        ECNamedCurveParameterSpec parameterSpec = ECNamedCurveTable.getParameterSpec("brainpoolp256r1");
-        keyGenerator.initialize(parameterSpec, secureRandom);
+        keyGenerator.initialize(EC_PARAMETER_SPEC, secureRandom);
 
         return keyGenerator.generateKeyPair();
     }
 
+    /**
+     * Returns the public key of the VAU certificate from the key cache.
+     */
     KeyCoords getVauPublicKeyXY() throws CertificateException, IOException, NoSuchProviderException {
+        return keyCache.get();
+    }
+
+    /**
+     * Downloads the VAU certificate and verifies it if a certificate service is given.
+     * The returned entry is valid until the certificate or the OCSP response expires.
+     */
+    VAUKeyCache.Entry loadVauPublicKeyXY() throws CertificateException, IOException, NoSuchProviderException {
         CertificateFactory certFactory = CertificateFactory.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME);
-        X509Certificate z = (X509Certificate) certFactory
-                .generateCertificate(new URL(fachdienstUrl + "/VAUCertificate").openStream());
+        X509Certificate z;
+        try (InputStream certificateStream = new URL(fachdienstUrl + "/VAUCertificate").openStream()) {
+            z = (X509Certificate) certFactory.generateCertificate(certificateStream);
+        }
+        Instant validUntil = z.getNotAfter().toInstant();
         if(certificateService != null) {
-            verifyCertificate(z);
+            Instant ocspNextUpdate = verifyCertificate(z);
+            if(ocspNextUpdate != null && ocspNextUpdate.isBefore(validUntil)) {
+                validUntil = ocspNextUpdate;
+            }
         }
         BCECPublicKey x = (BCECPublicKey) z.getPublicKey();
 
-        return new KeyCoords(new BigInteger(1, x.getQ().getXCoord().getEncoded()),
-                new BigInteger(1, x.getQ().getYCoord().getEncoded()));
+        return new VAUKeyCache.Entry(new KeyCoords(new BigInteger(1, x.getQ().getXCoord().getEncoded()),
+                new BigInteger(1, x.getQ().getYCoord().getEncoded())), validUntil);
     }
 
-    void verifyCertificate(X509Certificate z) {
+    /**
+     * Verifies the certificate with the connector and checks the OCSP response.
+     *
+     * @return the next update of the OCSP response or null if it is not given
+     */
+    Instant verifyCertificate(X509Certificate z) {
         Holder<Status> status = new Holder<>();
         Holder<VerifyCertificateResponse.VerificationStatus> verificationStatus = new Holder<>();
         Holder<VerifyCertificateResponse.RoleList> arg5 = new Holder<>();
@@ -183,10 +221,8 @@ public class VAU {
         }
 
         // Code based on: https://github.com/apache/nifi/blob/master/nifi-nar-bundles/nifi-framework-bundle/nifi-framework/nifi-web/nifi-web-security/src/main/java/org/apache/nifi/web/security/x509/ocsp/OcspCertificateValidator.java#L278
-        InputStream ocspResponseStream;
         BasicOCSPResp basicOcspResponse;
-        try {
-            ocspResponseStream = new URL(fachdienstUrl + "/VAUCertificateOCSPResponse").openStream();
+        try (InputStream ocspResponseStream = new URL(fachdienstUrl + "/VAUCertificateOCSPResponse").openStream()) {
             OCSPResp oCSPResp = new OCSPResp(ocspResponseStream);
             basicOcspResponse = (BasicOCSPResp) oCSPResp.getResponseObject();
         } catch (IOException | OCSPException e2) {
@@ -194,6 +230,7 @@ public class VAU {
         }
 
         BigInteger subjectSerialNumber = z.getSerialNumber();
+        Instant nextUpdate = null;
         // validate the response
         final SingleResp[] responses = basicOcspResponse.getResponses();
         for (SingleResp singleResponse : responses) {
@@ -207,81 +244,94 @@ public class VAU {
                 if (certStatus instanceof RevokedStatus) {
                     throw new IllegalStateException("VAU certificate status is revoked");
                 }
+                if (singleResponse.getNextUpdate() != null) {
+                    nextUpdate = singleResponse.getNextUpdate().toInstant();
+                }
             }
         }
+        return nextUpdate;
     }
 
     byte[] encrypt(String message) throws NoSuchAlgorithmException, IllegalStateException,
             InvalidCipherTextException, CertificateException, IOException, NoSuchProviderException,
             InvalidAlgorithmParameterException {
+        return encrypt(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encrypts the concatenation of the given parts for the VAU without
+     * copying them into one plain text array first.
+     */
+    byte[] encrypt(byte[]... parts) throws NoSuchAlgorithmException, IllegalStateException,
+            InvalidCipherTextException, CertificateException, IOException, NoSuchProviderException,
+            InvalidAlgorithmParameterException {
         KeyPair myECDHKey = generateNewECDHKey();
         KeyCoords vauPublicKeyXY = getVauPublicKeyXY();
 
-        return encrypt(message, myECDHKey, vauPublicKeyXY, null);
+        return encrypt(myECDHKey, vauPublicKeyXY, null, parts);
     }
 
     byte[] encrypt(String message, KeyPair myECDHKey, KeyCoords vauPublicKeyXY, byte[] ivBytes)
             throws IllegalStateException, InvalidCipherTextException {
-        ECDomainParameters ecDomain = getECDomain();
+        return encrypt(myECDHKey, vauPublicKeyXY, ivBytes, message.getBytes(StandardCharsets.UTF_8));
+    }
 
+    byte[] encrypt(KeyPair myECDHKey, KeyCoords vauPublicKeyXY, byte[] ivBytes, byte[]... parts)
+            throws IllegalStateException, InvalidCipherTextException {
         BCECPrivateKey myPrivate = (BCECPrivateKey) myECDHKey.getPrivate();
         BCECPublicKey myPublic = (BCECPublicKey) myECDHKey.getPublic();
-        log.fine("MY public X=" + byteArrayToHexString(myPublic.getQ().getXCoord().getEncoded()));
-        log.fine("MY public Y=" + byteArrayToHexString(myPublic.getQ().getYCoord().getEncoded()));
-        log.fine("MY private =" + byteArrayToHexString(myPrivate.getD().toByteArray()));
 
         ECPoint point = x9EC.getCurve().createPoint(vauPublicKeyXY.X, vauPublicKeyXY.Y);
-        ECPublicKeyParameters vauPublicKey = new ECPublicKeyParameters(point, ecDomain);
-        log.fine("VAU X=" + vauPublicKeyXY.X.toString(16));
-        log.fine("VAU Y=" + vauPublicKeyXY.Y.toString(16));
+        ECPublicKeyParameters vauPublicKey = new ECPublicKeyParameters(point, EC_DOMAIN);
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("MY public X=" + byteArrayToHexString(myPublic.getQ().getXCoord().getEncoded()));
+            log.fine("MY public Y=" + byteArrayToHexString(myPublic.getQ().getYCoord().getEncoded()));
+            log.fine("VAU X=" + vauPublicKeyXY.X.toString(16));
+            log.fine("VAU Y=" + vauPublicKeyXY.Y.toString(16));
+        }
 
         // SharedSecret
         BasicAgreement aKeyAgree = new ECDHBasicAgreement();
-        aKeyAgree.init(new ECPrivateKeyParameters(myPrivate.getD(), ecDomain));
+        aKeyAgree.init(new ECPrivateKeyParameters(myPrivate.getD(), EC_DOMAIN));
         BigInteger sharedSecret = aKeyAgree.calculateAgreement(vauPublicKey);
-        byte[] sharedSecretBytes = sharedSecret.toByteArray();
-
-        sharedSecretBytes = make32ByteLong(sharedSecretBytes);
-        log.fine("SharedSecret=" + byteArrayToHexString(sharedSecretBytes) + " " + sharedSecretBytes.length);
+        byte[] sharedSecretBytes = BigIntegers.asUnsignedByteArray(COORDINATE_LENGTH, sharedSecret);
 
         // HKDF
-        byte[] info = "ecies-vau-transport".getBytes();
         HKDFBytesGenerator hkdfBytesGenerator = new HKDFBytesGenerator(new SHA256Digest());
-        hkdfBytesGenerator.init(new HKDFParameters(sharedSecretBytes, new byte[0], info));
+        hkdfBytesGenerator.init(new HKDFParameters(sharedSecretBytes, new byte[0], HKDF_INFO));
         byte[] aes128Key_CEK = new byte[16];
         hkdfBytesGenerator.generateBytes(aes128Key_CEK, 0, aes128Key_CEK.length);
-        log.fine("Schlüsselableitung AES128Key=" + byteArrayToHexString(aes128Key_CEK));
-
-        // AES CGM
-        byte[] input = message.getBytes();
-        byte[] outputAESCGM = new byte[input.length + 16];
 
         // random IV
         byte[] iv = ivBytes == null ? getIv() : ivBytes;
-        log.fine("IV =" + byteArrayToHexString(iv));
 
+        int inputLength = 0;
+        for (byte[] part : parts) {
+            inputLength += part.length;
+        }
+
+        // the whole message is written into one buffer of the exact size
+        byte[] output = new byte[HEADER_LENGTH + inputLength + MAC_LENGTH];
+        output[0] = 0x01; // Version
+        writeCoordinate(myPublic.getQ().getAffineXCoord().toBigInteger(), output, 1);
+        writeCoordinate(myPublic.getQ().getAffineYCoord().toBigInteger(), output, 1 + COORDINATE_LENGTH);
+        System.arraycopy(iv, 0, output, 1 + 2 * COORDINATE_LENGTH, IV_LENGTH);
+
+        // AES CGM
         GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
-        AEADParameters parameters = new AEADParameters(new KeyParameter(aes128Key_CEK), 128, iv);
+        AEADParameters parameters = new AEADParameters(new KeyParameter(aes128Key_CEK), MAC_LENGTH * 8, iv);
         cipher.init(true, parameters);
-        int len = cipher.processBytes(input, 0, input.length, outputAESCGM, 0);
-        int finalData = cipher.doFinal(outputAESCGM, len);
-
-        log.fine(len + " " + finalData);
-
-        ByteArrayOutputStream mem = new ByteArrayOutputStream();
-        mem.write(0x01); // Version
-        byte[] xCoord = make32ByteLong(myPublic.getQ().getXCoord().getEncoded());
-        mem.write(xCoord, 0, xCoord.length); // XKoordinate
-        // VAU
-        // Zert
-        byte[] yCoord = make32ByteLong(myPublic.getQ().getYCoord().getEncoded());
-        mem.write(yCoord, 0, yCoord.length); // XKoordinate
-        // VAU
-        // Zert
-        mem.write(iv, 0, iv.length);
-        mem.write(outputAESCGM, 0, outputAESCGM.length);
-
-        return mem.toByteArray();
+        int offset = HEADER_LENGTH;
+        for (byte[] part : parts) {
+            offset += cipher.processBytes(part, 0, part.length, output, offset);
+        }
+        cipher.doFinal(output, offset);
+
+        return output;
+    }
+
+    private static void writeCoordinate(BigInteger coordinate, byte[] output, int offset) {
+        BigIntegers.asUnsignedByteArray(coordinate, output, offset, COORDINATE_LENGTH);
     }
 
     public static byte[] make32ByteLong(byte[] sharedSecretBytes) {
@@ -0,0 +1,125 @@
+package health.ere.ps.vau;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.ssl.SSLContexts;
+
+/**
+ * Pool of keep-alive connections to the VAU of the prescription server.
+ * <p>
+ * All connections share one SSLContext of their own, so new connections can
+ * resume the TLS session of earlier ones instead of doing a full handshake.
+ * The default SSLContext of the JVM is not changed. Idle and
+ * expired connections are evicted in the background.
+ */
+public class VAUConnectionPool {
+
+    private static final Logger log = Logger.getLogger(VAUConnectionPool.class.getName());
+
+    public static final int DEFAULT_MAX_TOTAL = 20;
+    public static final int DEFAULT_MAX_PER_ROUTE = 10;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_SOCKET_TIMEOUT = Duration.ofSeconds(60);
+    public static final Duration DEFAULT_TLS_SESSION_TIMEOUT = Duration.ofHours(1);
+    // connections that were idle for longer are checked before they are reused
+    static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final Duration idleTimeout;
+    private final RequestConfig requestConfig;
+
+    public VAUConnectionPool() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_IDLE_TIMEOUT, DEFAULT_TIME_TO_LIVE,
+            DEFAULT_CONNECT_TIMEOUT, DEFAULT_SOCKET_TIMEOUT, DEFAULT_TLS_SESSION_TIMEOUT);
+    }
+
+    /**
+     * Values that are null or not positive are replaced by the defaults.
+     */
+    public VAUConnectionPool(int maxTotal, int maxPerRoute, Duration idleTimeout, Duration timeToLive,
+            Duration connectTimeout, Duration socketTimeout, Duration tlsSessionTimeout) {
+        this.idleTimeout = orDefault(idleTimeout, DEFAULT_IDLE_TIMEOUT);
+        SSLContext sslContext = createSslContext(orDefault(tlsSessionTimeout, DEFAULT_TLS_SESSION_TIMEOUT));
+
+        connectionManager = new PoolingHttpClientConnectionManager(
+            RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext))
+                .build(),
+            null, null, null, orDefault(timeToLive, DEFAULT_TIME_TO_LIVE).toMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxTotal > 0 ? maxTotal : DEFAULT_MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute > 0 ? maxPerRoute : DEFAULT_MAX_PER_ROUTE);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+
+        requestConfig = RequestConfig.custom()
+            .setConnectTimeout((int) orDefault(connectTimeout, DEFAULT_CONNECT_TIMEOUT).toMillis())
+            .setConnectionRequestTimeout((int) orDefault(connectTimeout, DEFAULT_CONNECT_TIMEOUT).toMillis())
+            .setSocketTimeout((int) orDefault(socketTimeout, DEFAULT_SOCKET_TIMEOUT).toMillis())
+            .build();
+    }
+
+    private static Duration orDefault(Duration value, Duration defaultValue) {
+        return value == null || value.isNegative() || value.isZero() ? defaultValue : value;
+    }
+
+    private static SSLContext createSslContext(Duration tlsSessionTimeout) {
+        // a context of its own, the session timeout must not change the default context of the JVM
+        SSLContext sslContext = SSLContexts.createDefault();
+        // sessions are cached per host and port and are resumed by the next handshake
+        SSLSessionContext clientSessionContext = sslContext.getClientSessionContext();
+        if (clientSessionContext != null) {
+            clientSessionContext.setSessionTimeout((int) tlsSessionTimeout.getSeconds());
+        }
+        return sslContext;
+    }
+
+    /**
+     * Creates a http client that uses the connections of this pool.
+     */
+    public CloseableHttpClient createHttpClient() {
+        log.fine("Creating VAU http client with connection pool " + this);
+        return HttpClientBuilder.create()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            // connections authenticated by TLS client certificates would otherwise not be shared
+            .disableConnectionState()
+            .evictExpiredConnections()
+            .evictIdleConnections(idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    PoolingHttpClientConnectionManager getConnectionManager() {
+        return this.connectionManager;
+    }
+
+    public RequestConfig getRequestConfig() {
+        return this.requestConfig;
+    }
+
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public String toString() {
+        PoolStats stats = getStats();
+        return "leased: " + stats.getLeased() + ", available: " + stats.getAvailable() + ", pending: " + stats.getPending()
+            + ", max: " + stats.getMax() + ", max per route: " + connectionManager.getDefaultMaxPerRoute();
+    }
+}
@@ -7,9 +7,9 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.cert.CertificateException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.core.MultivaluedMap;
@@ -23,8 +23,8 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.config.MessageConstraints;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.io.DefaultHttpResponseParserFactory;
 import org.apache.http.impl.io.HttpTransportMetricsImpl;
 import org.apache.http.impl.io.SessionInputBufferImpl;
@@ -45,16 +45,31 @@ import org.jboss.resteasy.client.jaxrs.internal.FinalizedClientResponse;
  */
 public class VAUEngine extends ApacheHttpClient43Engine {
     private static final Logger log = Logger.getLogger(VAUEngine.class.getName());
-    private static final String responsePattern = "1 ([A-Fa-f0-9]{32}) (.*?)\r?\n\r?\n(.*)";
-    private static final Pattern RESPONSE_PATTERN = Pattern.compile(responsePattern, Pattern.DOTALL);
+    private static final byte[] EMPTY = new byte[0];
+    private static final int REQUEST_ID_LENGTH = 32;
+    // 1 {requestid} {http response}
+    private static final int RESPONSE_HEADER_START = 2 + REQUEST_ID_LENGTH + 1;
+    static final String VAU_REQUEST_CONTEXT_PROPERTY = VAURequestContext.class.getName();
     private final String fachdienstUrl;
-    String requestid;
-    String userpseudonym = "0";
-    private VAU vau;
-    private byte[] aeskey;
+    private final Duration keyCacheTtl;
+    // the user pseudonym is shared by all requests of this engine
+    volatile String userpseudonym = "0";
+    private volatile VAU vau;
+    private final VAUConnectionPool connectionPool;
 
     public VAUEngine(String fachdienstUrl) {
+        this(fachdienstUrl, VAUKeyCache.DEFAULT_TTL);
+    }
+
+    public VAUEngine(String fachdienstUrl, Duration keyCacheTtl) {
+        this(fachdienstUrl, keyCacheTtl, new VAUConnectionPool());
+    }
+
+    public VAUEngine(String fachdienstUrl, Duration keyCacheTtl, VAUConnectionPool connectionPool) {
+        super(connectionPool.createHttpClient(), true);
         this.fachdienstUrl = fachdienstUrl;
+        this.keyCacheTtl = keyCacheTtl;
+        this.connectionPool = connectionPool;
     }
 
     /**
@@ -62,14 +77,28 @@ public class VAUEngine extends ApacheHttpClient43Engine {
      * https://fachportal.gematik.de/fachportal-import/files/gemSpec_Krypt_V2.19.0.pdf
      * Chapter 6 Page 78
      */
-    public void initVauSession() {
+    public synchronized void initVauSession() {
+        if (vau != null) {
+            return;
+        }
         try {
-            vau = new VAU(fachdienstUrl);
+            vau = new VAU(fachdienstUrl, keyCacheTtl);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Returns the cache for the VAU certificate or null if no VAU session was started yet.
+     */
+    public VAUKeyCache getVauKeyCache() {
+        return vau != null ? vau.getKeyCache() : null;
+    }
+
+    public VAUConnectionPool getConnectionPool() {
+        return this.connectionPool;
+    }
+
     @Override
     protected HttpEntity buildEntity(final ClientInvocation request) throws IOException {
         HttpEntity httpEntity = null;
@@ -83,6 +112,7 @@ public class VAUEngine extends ApacheHttpClient43Engine {
             // init vauSession
             initVauSession();
         }
+        VAU vau = this.vau;
 
         String authorization = (String) newHeaders.getFirst("Authorization");
 
@@ -103,33 +133,32 @@ public class VAUEngine extends ApacheHttpClient43Engine {
 
         byte[] finalMessageData;
         try {
-            String content = request.getMethod() + " " + request.getUri().getPath() + (request.getUri().getQuery() != null ? "?"+request.getUri().getRawQuery() : "") +" HTTP/1.1\r\n" +
+            String bearer = authorization.substring(7);
+            // every request has its own request id and AES key
+            VAURequestContext vauRequestContext = new VAURequestContext(
+                VAU.byteArrayToHexString(vau.getRandom(16)).toLowerCase(), vau.getRandom(16));
+            request.getMutableProperties().put(VAU_REQUEST_CONTEXT_PROPERTY, vauRequestContext);
+            String aeskeyString = VAU.byteArrayToHexString(vauRequestContext.getAesKey()).toLowerCase();
+
+            String content = "1 " + bearer + " " + vauRequestContext.getRequestId() + " " + aeskeyString + " " +
+                request.getMethod() + " " + request.getUri().getPath() + (request.getUri().getQuery() != null ? "?"+request.getUri().getRawQuery() : "") +" HTTP/1.1\r\n" +
                 "Host: " + request.getUri().getHost() + "\r\n" +
                 "Authorization: " + authorization + "\r\n" +
                 (accessCode != null ? "X-AccessCode: " + accessCode + "\r\n" : "") +
                 "User-Agent: " + userAgent + "\r\n" +
                 "Accept: application/fhir+xml; charset=utf-8\r\n";
-            log.info(contentType);
+            log.fine(contentType);
+            // the body is passed to the cipher as it is, without decoding it into a String
+            byte[] postBytes = EMPTY;
             if(httpEntity != null) {
-                    log.info(httpEntity.toString());
-                    byte[] postBytes = httpEntity.getContent().readAllBytes();
-                    String postBody = new String(postBytes);
+                postBytes = httpEntity.getContent().readAllBytes();
                 content += "Content-Type: " + contentType + "\r\n" +
-                     "Content-Length: " + postBytes.length + "\r\n\r\n"
-                        + postBody;
+                     "Content-Length: " + postBytes.length + "\r\n\r\n";
             } else {
                 content += "\r\n";
             }
 
-            String bearer = authorization.substring(7);
-            requestid = VAU.byteArrayToHexString(vau.getRandom(16)).toLowerCase();
-            aeskey = vau.getRandom(16);
-            String aeskeyString = VAU.byteArrayToHexString(aeskey).toLowerCase();
-            String p = "1 " + bearer + " " + requestid + " " + aeskeyString + " " + content;
-
-            log.fine(p);
-
-            finalMessageData = vau.encrypt(p);
+            finalMessageData = vau.encrypt(content.getBytes(StandardCharsets.UTF_8), postBytes);
         } catch (NoSuchAlgorithmException | IllegalStateException | InvalidCipherTextException | CertificateException
                 | UnsupportedOperationException | NoSuchProviderException | InvalidAlgorithmParameterException e) {
             throw new RuntimeException(e);
@@ -164,11 +193,25 @@ public class VAUEngine extends ApacheHttpClient43Engine {
             // enforce that build entity is called
             request.setEntityObject("");
         }
-        response = super.invoke(inv);
+        try {
+            response = super.invoke(inv);
+            // the context was created by buildEntity for this invocation
+            VAURequestContext vauRequestContext = (VAURequestContext) request.getMutableProperties().get(VAU_REQUEST_CONTEXT_PROPERTY);
+            return decryptResponse(response, request, vauRequestContext);
+        } finally {
+            request.getMutableProperties().remove(VAU_REQUEST_CONTEXT_PROPERTY);
+        }
+    }
 
+    /**
+     * Decrypts the response of the VAU with the AES key of the given request context.
+     */
+    Response decryptResponse(Response response, ClientInvocation request, VAURequestContext vauRequestContext) {
+        if(vauRequestContext == null) {
+            throw new IllegalStateException("No VAU request context found for invocation");
+        }
         byte[] transportedData;
         byte[] responseBytes = null;
-        String responseContent;
         try {
             String contentType = response.getHeaderString("Content-Type");
             if (!("application/octet-stream".equals(contentType))) {
@@ -176,16 +219,24 @@ public class VAUEngine extends ApacheHttpClient43Engine {
                 throw new RuntimeException("VAU response content type has to be application/octet-stream but was: " + contentType + " Content: " + (response.getEntity() != null ? new String(((InputStream) response.getEntity()).readAllBytes()) : "null"));
             }
             responseBytes = ((InputStream) response.getEntity()).readAllBytes();
-            log.fine(VAU.byteArrayToHexString(responseBytes));
+            final byte[] encryptedBytes = responseBytes;
+            log.fine(() -> VAU.byteArrayToHexString(encryptedBytes));
             if(Response.Status.Family.SUCCESSFUL == response.getStatusInfo().getFamily()) {
                 // if it is successful 
-                transportedData = VAU.decryptWithKey(responseBytes, aeskey);
-                if(!userpseudonym.equals(response.getHeaderString("userpseudonym")) && response.getHeaderString("userpseudonym") != null) {
-                    userpseudonym = response.getHeaderString("userpseudonym");
+                try {
+                    transportedData = VAU.decryptWithKey(responseBytes, vauRequestContext.getAesKey());
+                } catch(Exception e) {
+                    // the VAU certificate might have been changed on the server
+                    if(vau != null) {
+                        vau.getKeyCache().invalidate();
+                    }
+                    throw e;
+                }
+                String newUserpseudonym = response.getHeaderString("userpseudonym");
+                if(newUserpseudonym != null && !userpseudonym.equals(newUserpseudonym)) {
+                    userpseudonym = newUserpseudonym;
                 }
-                responseContent = new String(transportedData);
-                log.fine(responseContent);
-                return parseResponseFromVAU(responseContent, (ClientInvocation) inv);
+                return parseResponseFromVAU(transportedData, vauRequestContext, request);
             } else {
                 return response;
             }
@@ -193,35 +244,61 @@ public class VAUEngine extends ApacheHttpClient43Engine {
             if(responseBytes != null) {
                 log.info("VAU Response Bytes: "+VAU.byteArrayToHexString(responseBytes));
             }
-            if(aeskey != null) {
-                log.info("VAU AES Key: "+VAU.byteArrayToHexString(aeskey));
-            }
+            log.info("VAU AES Key: "+VAU.byteArrayToHexString(vauRequestContext.getAesKey()));
             throw new RuntimeException(e);
         }
     }
 
-    HttpResponse extractHttpResponse(String responseContent) throws IOException, HttpException {
-        Matcher m = RESPONSE_PATTERN.matcher(responseContent);
-        if (!m.matches()) {
-            throw new RuntimeException("Response content does not match " + responsePattern + " was: " + responseContent);
-        }
+    HttpResponse extractHttpResponse(String responseContent, VAURequestContext vauRequestContext) throws IOException, HttpException {
+        return extractHttpResponse(responseContent.getBytes(StandardCharsets.UTF_8), vauRequestContext);
+    }
 
-        String requestIdFromResponse = m.group(1);
-        if (!requestIdFromResponse.equals(requestid)) {
-            throw new RuntimeException("requestIdFromResponse (" + requestIdFromResponse + ") does not match requestid (" + requestid + ")");
+    /**
+     * Splits the decrypted response into the HTTP header and the body. The body
+     * is not copied, the entity reads directly from the given array.
+     */
+    HttpResponse extractHttpResponse(byte[] responseContent, VAURequestContext vauRequestContext) throws IOException, HttpException {
+        if (responseContent.length < RESPONSE_HEADER_START || responseContent[0] != '1' || responseContent[1] != ' '
+                || responseContent[RESPONSE_HEADER_START - 1] != ' ') {
+            throw new RuntimeException("Response content does not start with '1 {requestid} ' was: " + abbreviate(responseContent));
+        }
+        String requestIdFromResponse = new String(responseContent, 2, REQUEST_ID_LENGTH, StandardCharsets.US_ASCII);
+        if (!requestIdFromResponse.equals(vauRequestContext.getRequestId())) {
+            throw new RuntimeException("requestIdFromResponse (" + requestIdFromResponse + ") does not match requestid (" + vauRequestContext.getRequestId() + ")");
+        }
+        int headerEnd = -1;
+        int bodyStart = -1;
+        // the header ends with an empty line, \r\n\r\n or \n\n
+        for (int i = RESPONSE_HEADER_START; i < responseContent.length && headerEnd < 0; i++) {
+            if (responseContent[i] != '\n') {
+                continue;
+            }
+            int next = i + 1;
+            if (next < responseContent.length && responseContent[next] == '\r') {
+                next++;
+            }
+            if (next < responseContent.length && responseContent[next] == '\n') {
+                headerEnd = i;
+                bodyStart = next + 1;
+            }
+        }
+        if (headerEnd < 0) {
+            throw new RuntimeException("Response content has no header end, was: " + abbreviate(responseContent));
         }
-        String rawResponseHeader = m.group(2);
-        String rawResponseBody = m.group(3);
 
         SessionInputBufferImpl buffer = new SessionInputBufferImpl(new HttpTransportMetricsImpl(), 8092);
-        buffer.bind(new ByteArrayInputStream(rawResponseHeader.getBytes()));
+        buffer.bind(new ByteArrayInputStream(responseContent, RESPONSE_HEADER_START, headerEnd + 1 - RESPONSE_HEADER_START));
         HttpResponse res = DefaultHttpResponseParserFactory.INSTANCE.create(buffer, MessageConstraints.DEFAULT).parse();
-        res.setEntity(new StringEntity(rawResponseBody, ContentType.create("application/fhir+xml"/*res.getFirstHeader("Content-Type").getValue()*/)));
+        res.setEntity(new ByteArrayEntity(responseContent, bodyStart, responseContent.length - bodyStart, ContentType.create("application/fhir+xml"/*res.getFirstHeader("Content-Type").getValue()*/)));
         return res;
     }
 
-    private Response parseResponseFromVAU(String responseContent, ClientInvocation request) throws IOException, HttpException {
-        HttpResponse res = extractHttpResponse(responseContent);
+    private static String abbreviate(byte[] responseContent) {
+        return new String(responseContent, 0, Math.min(responseContent.length, 200), StandardCharsets.UTF_8);
+    }
+
+    private Response parseResponseFromVAU(byte[] responseContent, VAURequestContext vauRequestContext, ClientInvocation request) throws IOException, HttpException {
+        HttpResponse res = extractHttpResponse(responseContent, vauRequestContext);
 
         ClientResponse response = new FinalizedClientResponse(request.getClientConfiguration(),
                 request.getTracingLogger()) {
@@ -0,0 +1,198 @@
+package health.ere.ps.vau;
+
+import java.io.IOException;
+import java.security.NoSuchProviderException;
+import java.security.cert.CertificateException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import health.ere.ps.vau.VAU.KeyCoords;
+
+/**
+ * Caches the public key of the VAU certificate of the prescription server.
+ * <p>
+ * An entry is valid until the TTL, the end of the certificate validity or the
+ * next update of the OCSP response is reached, whatever comes first. Shortly
+ * before an entry expires it is refreshed in the background. When a response
+ * can not be decrypted the cache should be invalidated.
+ */
+public class VAUKeyCache {
+
+    private static final Logger log = Logger.getLogger(VAUKeyCache.class.getName());
+
+    public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+    static final Duration MIN_REFRESH_DELAY = Duration.ofSeconds(10);
+    static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vau-key-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Downloads and verifies the VAU certificate.
+     */
+    @FunctionalInterface
+    public interface KeyLoader {
+        Entry load() throws CertificateException, IOException, NoSuchProviderException;
+    }
+
+    public static class Entry {
+        private final KeyCoords keyCoords;
+        private final Instant validUntil;
+
+        public Entry(KeyCoords keyCoords, Instant validUntil) {
+            this.keyCoords = keyCoords;
+            this.validUntil = validUntil;
+        }
+
+        public KeyCoords getKeyCoords() {
+            return this.keyCoords;
+        }
+
+        public Instant getValidUntil() {
+            return this.validUntil;
+        }
+    }
+
+    private final KeyLoader keyLoader;
+    private final Duration ttl;
+    private final Clock clock;
+    private final boolean backgroundRefresh;
+
+    private volatile Entry entry;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public VAUKeyCache(KeyLoader keyLoader, Duration ttl) {
+        this(keyLoader, ttl, Clock.systemUTC(), true);
+    }
+
+    VAUKeyCache(KeyLoader keyLoader, Duration ttl, Clock clock, boolean backgroundRefresh) {
+        this.keyLoader = keyLoader;
+        this.ttl = ttl == null || ttl.isNegative() ? DEFAULT_TTL : ttl;
+        this.clock = clock;
+        this.backgroundRefresh = backgroundRefresh;
+    }
+
+    /**
+     * Returns the cached VAU public key or loads it if there is no valid entry.
+     */
+    public KeyCoords get() throws CertificateException, IOException, NoSuchProviderException {
+        Entry current = entry;
+        if (isValid(current)) {
+            hits.incrementAndGet();
+            return current.getKeyCoords();
+        }
+        synchronized (this) {
+            current = entry;
+            if (isValid(current)) {
+                hits.incrementAndGet();
+                return current.getKeyCoords();
+            }
+            misses.incrementAndGet();
+            return load().getKeyCoords();
+        }
+    }
+
+    /**
+     * Removes the cached key. The next call to get will download the
+     * certificate again.
+     */
+    public synchronized void invalidate() {
+        if (entry != null) {
+            log.info("Invalidating cached VAU certificate");
+            invalidations.incrementAndGet();
+        }
+        entry = null;
+        cancelScheduledRefresh();
+    }
+
+    void refresh() {
+        try {
+            synchronized (this) {
+                load();
+            }
+            refreshes.incrementAndGet();
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not refresh VAU certificate in the background", e);
+            schedule(RETRY_DELAY);
+        }
+    }
+
+    private Entry load() throws CertificateException, IOException, NoSuchProviderException {
+        Entry loaded = keyLoader.load();
+        Instant ttlEnd = clock.instant().plus(ttl);
+        Instant validUntil = loaded.getValidUntil() == null || loaded.getValidUntil().isAfter(ttlEnd) ? ttlEnd : loaded.getValidUntil();
+        entry = new Entry(loaded.getKeyCoords(), validUntil);
+        log.fine("VAU certificate cached until " + validUntil);
+        scheduleRefresh(entry);
+        return entry;
+    }
+
+    private boolean isValid(Entry current) {
+        return current != null && clock.instant().isBefore(current.getValidUntil());
+    }
+
+    private void scheduleRefresh(Entry current) {
+        // refresh when 90% of the lifetime is over
+        long lifetime = Duration.between(clock.instant(), current.getValidUntil()).toMillis();
+        Duration delay = Duration.ofMillis(lifetime - lifetime / 10);
+        schedule(delay.compareTo(MIN_REFRESH_DELAY) < 0 ? MIN_REFRESH_DELAY : delay);
+    }
+
+    private synchronized void schedule(Duration delay) {
+        if (!backgroundRefresh) {
+            return;
+        }
+        cancelScheduledRefresh();
+        scheduledRefresh = REFRESHER.schedule(this::refresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduledRefresh() {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getRefreshes() {
+        return this.refreshes.get();
+    }
+
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    public Instant getValidUntil() {
+        Entry current = entry;
+        return current != null ? current.getValidUntil() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + getHits() + ", misses: " + getMisses() + ", refreshes: " + getRefreshes()
+            + ", invalidations: " + getInvalidations() + ", valid until: " + getValidUntil();
+    }
+}
@@ -0,0 +1,25 @@
+package health.ere.ps.vau;
+
+/**
+ * The request id and the AES key of a single request to the VAU.
+ * <p>
+ * The context is created when the request is encrypted and is needed to
+ * decrypt the response of the same request.
+ */
+public class VAURequestContext {
+    private final String requestId;
+    private final byte[] aesKey;
+
+    public VAURequestContext(String requestId, byte[] aesKey) {
+        this.requestId = requestId;
+        this.aesKey = aesKey;
+    }
+
+    public String getRequestId() {
+        return this.requestId;
+    }
+
+    public byte[] getAesKey() {
+        return this.aesKey;
+    }
+}
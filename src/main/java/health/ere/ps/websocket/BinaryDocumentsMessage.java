@@ -0,0 +1,134 @@
+package health.ere.ps.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import javax.websocket.Session;
+
+import health.ere.ps.event.ERezeptWithDocumentsEvent;
+import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
+import health.ere.ps.model.pdf.ERezeptDocument;
+
+/**
+ * ERezeptWithDocuments message for sessions that receive the PDFs as binary
+ * frames instead of base64 inside the JSON.
+ * <p>
+ * A session opts in with the request parameter documents=binary, e.g.
+ * ws://localhost:8080/websocket?documents=binary. The JSON message contains
+ * instead of the content of every PDF:
+ * <pre>"pdfDocument":{"binaryFrameId":"...","contentType":"application/pdf","size":...}</pre>
+ * After the JSON message one binary frame per PDF is sent. A frame starts
+ * with the 36 ASCII characters of the binaryFrameId, followed by the bytes
+ * of the PDF.
+ */
+public class BinaryDocumentsMessage {
+
+    public static final String DOCUMENTS_PARAMETER = "documents";
+    public static final String BINARY = "binary";
+    static final int FRAME_ID_LENGTH = 36;
+
+    private final String message;
+    private final List<ByteBuffer> frames;
+
+    BinaryDocumentsMessage(String message, List<ByteBuffer> frames) {
+        this.message = message;
+        this.frames = Collections.unmodifiableList(frames);
+    }
+
+    public static boolean isBinaryDocumentsSession(Session session) {
+        List<String> documents = session.getRequestParameterMap() != null
+                ? session.getRequestParameterMap().get(DOCUMENTS_PARAMETER) : null;
+        return documents != null && documents.contains(BINARY);
+    }
+
+    public static BinaryDocumentsMessage create(WebsocketMessageWriter messageWriter,
+                                                ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
+        List<ByteBuffer> frames = new ArrayList<>();
+        List<BinaryDocument> documents = new ArrayList<>();
+        for (ERezeptDocument document : eRezeptDocumentsEvent.getERezeptWithDocuments()) {
+            byte[] pdf = document.getPdfDocument();
+            PdfReference pdfReference = null;
+            if (pdf != null) {
+                String frameId = UUID.randomUUID().toString();
+                pdfReference = new PdfReference(frameId, "application/pdf", pdf.length);
+                frames.add(createFrame(frameId, pdf));
+            }
+            documents.add(new BinaryDocument(document.getBundleWithAccessCodeOrThrowables(), pdfReference));
+        }
+        String message = messageWriter.toMessage("ERezeptWithDocuments", documents,
+                eRezeptDocumentsEvent.getReplyToMessageId());
+        return new BinaryDocumentsMessage(message, frames);
+    }
+
+    static ByteBuffer createFrame(String frameId, byte[] pdf) {
+        byte[] id = frameId.getBytes(StandardCharsets.US_ASCII);
+        if (id.length != FRAME_ID_LENGTH) {
+            throw new IllegalArgumentException("Frame id must have " + FRAME_ID_LENGTH + " characters: " + frameId);
+        }
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_ID_LENGTH + pdf.length);
+        frame.put(id).put(pdf).flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the frames, every session has to send a {@link ByteBuffer#duplicate()}
+     */
+    public List<ByteBuffer> getFrames() {
+        return frames;
+    }
+
+    /**
+     * An {@link ERezeptDocument} with a reference to the binary frame of the
+     * PDF, written with the same JSON-B configuration.
+     */
+    public static class BinaryDocument {
+        private final List<BundleWithAccessCodeOrThrowable> bundleWithAccessCodeOrThrowables;
+        private final PdfReference pdfDocument;
+
+        BinaryDocument(List<BundleWithAccessCodeOrThrowable> bundleWithAccessCodeOrThrowables,
+                       PdfReference pdfDocument) {
+            this.bundleWithAccessCodeOrThrowables = bundleWithAccessCodeOrThrowables;
+            this.pdfDocument = pdfDocument;
+        }
+
+        public List<BundleWithAccessCodeOrThrowable> getBundleWithAccessCodeOrThrowables() {
+            return bundleWithAccessCodeOrThrowables;
+        }
+
+        public PdfReference getPdfDocument() {
+            return pdfDocument;
+        }
+    }
+
+    public static class PdfReference {
+        private final String binaryFrameId;
+        private final String contentType;
+        private final int size;
+
+        PdfReference(String binaryFrameId, String contentType, int size) {
+            this.binaryFrameId = binaryFrameId;
+            this.contentType = contentType;
+            this.size = size;
+        }
+
+        public String getBinaryFrameId() {
+            return binaryFrameId;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+}
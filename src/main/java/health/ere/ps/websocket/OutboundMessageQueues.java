@@ -0,0 +1,301 @@
+package health.ere.ps.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import health.ere.ps.service.logging.EreLogger;
+
+/**
+ * Sends the messages to the websocket sessions. Every session has its own
+ * queue and only one message of a session is sent at a time, the next one is
+ * sent when the previous one was written.
+ * <p>
+ * A client that does not read its messages, e.g. a stuck browser tab, can
+ * not make the queue grow without limit:
+ * <ul>
+ * <li>a waiting message with the same coalesce key, e.g. a Notification, is
+ * replaced by the newer one</li>
+ * <li>when the queue is full, the oldest waiting message that has a coalesce
+ * key is dropped, when there is none the new message is dropped</li>
+ * </ul>
+ */
+public class OutboundMessageQueues {
+
+    private static final EreLogger ereLog = EreLogger.getLogger(OutboundMessageQueues.class);
+
+    private final int capacity;
+    private final Map<Session, SessionQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong coalescedMessages = new AtomicLong();
+
+    /**
+     * @param capacity messages of a session that wait while another message
+     *                 of the session is sent
+     */
+    public OutboundMessageQueues(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @param coalesceKey waiting messages with the same key are replaced by
+     *                    this one, null if every message has to be sent
+     * @return false when the message was dropped
+     */
+    public boolean send(Session session, String message, String coalesceKey, String errorMessage) {
+        return send(session, new OutboundMessage(message, Collections.emptyList(), coalesceKey, errorMessage));
+    }
+
+    /**
+     * Sends the binary frames directly after the text message. They are
+     * queued, coalesced and dropped together with it.
+     *
+     * @param frames the frames are not changed, every session sends a {@link ByteBuffer#duplicate()}
+     * @return false when the message was dropped
+     */
+    public boolean send(Session session, String message, List<ByteBuffer> frames, String errorMessage) {
+        return send(session, new OutboundMessage(message, frames, null, errorMessage));
+    }
+
+    private boolean send(Session session, OutboundMessage outboundMessage) {
+        // a reply that arrives after the session was closed must not create a queue again
+        if (!session.isOpen()) {
+            return false;
+        }
+        SessionQueue queue = queues.computeIfAbsent(session, SessionQueue::new);
+        if (!session.isOpen()) {
+            // closed while the queue was created, close() may not have seen it
+            queues.remove(session, queue);
+            queue.clear();
+            return false;
+        }
+        return queue.offer(outboundMessage);
+    }
+
+    /**
+     * Forgets the waiting messages of a closed session. Messages that are
+     * sent to it later are dropped.
+     */
+    public void close(Session session) {
+        SessionQueue queue = queues.remove(session);
+        if (queue != null) {
+            queue.clear();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of waiting messages by session id
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> queueDepths = new TreeMap<>();
+        queues.forEach((session, queue) -> queueDepths.put(String.valueOf(session.getId()), queue.size()));
+        return queueDepths;
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public long getCoalescedMessages() {
+        return coalescedMessages.get();
+    }
+
+    /**
+     * @return a summary for the status, e.g.
+     * Queue capacity: 100; Queue depths: {1=0, 2=37}; Dropped: 3; Coalesced: 12
+     */
+    public String getInformation() {
+        return "Queue capacity: " + capacity + "; Queue depths: " + getQueueDepths()
+                + "; Dropped: " + getDroppedMessages() + "; Coalesced: " + getCoalescedMessages();
+    }
+
+    static class OutboundMessage {
+        final String message;
+        final List<ByteBuffer> frames;
+        final String coalesceKey;
+        final String errorMessage;
+
+        OutboundMessage(String message, List<ByteBuffer> frames, String coalesceKey, String errorMessage) {
+            this.message = message;
+            this.frames = frames;
+            this.coalesceKey = coalesceKey;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    private class SessionQueue {
+        private final Session session;
+        private final LinkedList<OutboundMessage> waiting = new LinkedList<>();
+        private boolean sending;
+        private boolean closed;
+
+        SessionQueue(Session session) {
+            this.session = session;
+        }
+
+        boolean offer(OutboundMessage outboundMessage) {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                if (sending) {
+                    return enqueue(outboundMessage);
+                }
+                sending = true;
+            }
+            sendParts(outboundMessage, 0);
+            return true;
+        }
+
+        // called while holding the lock
+        private boolean enqueue(OutboundMessage outboundMessage) {
+            if (outboundMessage.coalesceKey != null) {
+                ListIterator<OutboundMessage> iterator = waiting.listIterator();
+                while (iterator.hasNext()) {
+                    if (outboundMessage.coalesceKey.equals(iterator.next().coalesceKey)) {
+                        iterator.set(outboundMessage);
+                        coalescedMessages.incrementAndGet();
+                        return true;
+                    }
+                }
+            }
+            if (waiting.size() >= capacity && !dropOldestCoalescable()) {
+                droppedMessages.incrementAndGet();
+                ereLog.warn("Dropped message for websocket session " + session.getId() + ", "
+                        + waiting.size() + " messages are waiting: " + outboundMessage.errorMessage);
+                return false;
+            }
+            waiting.add(outboundMessage);
+            return true;
+        }
+
+        private boolean dropOldestCoalescable() {
+            Iterator<OutboundMessage> iterator = waiting.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().coalesceKey != null) {
+                    iterator.remove();
+                    droppedMessages.incrementAndGet();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return waiting.size();
+        }
+
+        synchronized void clear() {
+            closed = true;
+            waiting.clear();
+        }
+
+        /**
+         * Sends the parts of the messages one after another, part 0 is the
+         * text message and part i the frame i - 1. A part that is written
+         * before sendObject or sendBinary returns is followed by this loop,
+         * a part that is written later by its callback. So the stack does not
+         * grow with the number of messages that are waiting.
+         */
+        private void sendParts(OutboundMessage outboundMessage, int part) {
+            OutboundMessage message = outboundMessage;
+            int index = part;
+            while (message != null) {
+                if (index > message.frames.size()) {
+                    message = next();
+                    index = 0;
+                    continue;
+                }
+                SendResult result = new Part(message, index).send();
+                if (result == null) {
+                    // the callback of the part continues
+                    return;
+                }
+                if (result.isOK()) {
+                    index++;
+                } else {
+                    failed(message, result);
+                    message = next();
+                    index = 0;
+                }
+            }
+        }
+
+        private void failed(OutboundMessage outboundMessage, SendResult result) {
+            ereLog.fatal(outboundMessage.errorMessage + ": " + result.getException());
+        }
+
+        private OutboundMessage next() {
+            synchronized (this) {
+                OutboundMessage next = waiting.poll();
+                if (next == null) {
+                    sending = false;
+                }
+                return next;
+            }
+        }
+
+        private class Part implements SendHandler {
+            private final OutboundMessage message;
+            private final int index;
+            private SendResult result;
+            private boolean returned;
+
+            Part(OutboundMessage message, int index) {
+                this.message = message;
+                this.index = index;
+            }
+
+            /**
+             * @return the result when the part was written before the send
+             * method returned, null when the callback follows later
+             */
+            SendResult send() {
+                try {
+                    if (index == 0) {
+                        session.getAsyncRemote().sendObject(message.message, this);
+                    } else {
+                        session.getAsyncRemote().sendBinary(message.frames.get(index - 1).duplicate(), this);
+                    }
+                } catch (RuntimeException e) {
+                    onResult(new SendResult(e));
+                }
+                synchronized (this) {
+                    returned = true;
+                    return result;
+                }
+            }
+
+            @Override
+            public void onResult(SendResult sendResult) {
+                synchronized (this) {
+                    if (!returned) {
+                        result = sendResult;
+                        return;
+                    }
+                }
+                if (sendResult.isOK()) {
+                    sendParts(message, index + 1);
+                } else {
+                    failed(message, sendResult);
+                    sendParts(next(), 0);
+                }
+            }
+        }
+    }
+}
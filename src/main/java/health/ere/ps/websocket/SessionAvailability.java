@@ -0,0 +1,111 @@
+package health.ere.ps.websocket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.websocket.Session;
+
+/**
+ * Keeps the messages for all sessions that are sent while no session is
+ * connected, e.g. bundles that were created before the browser was opened,
+ * and replays them to the next session that opens.
+ * <p>
+ * The replay queue is bounded, when it is full the oldest message is
+ * dropped. For bundles and replies the browser is started once in the
+ * background, the threads that send the messages do not wait for it.
+ */
+public class SessionAvailability {
+
+    private final Set<Session> sessions;
+    private final int capacity;
+    private final Runnable startBrowser;
+    private final Deque<String> replayQueue = new ArrayDeque<>();
+    private final AtomicBoolean browserStarted = new AtomicBoolean();
+
+    /**
+     * @param sessions     the open sessions
+     * @param capacity     messages that are kept for the next session
+     * @param startBrowser opens the web app, runs on a thread of its own
+     */
+    public SessionAvailability(Set<Session> sessions, int capacity, Runnable startBrowser) {
+        this.sessions = sessions;
+        this.capacity = capacity;
+        this.startBrowser = startBrowser;
+    }
+
+    /**
+     * Sends the messages that were kept while no session was connected to
+     * the session and then adds it to the open sessions. So the replayed
+     * messages are queued before any message that is sent to all sessions.
+     *
+     * @param replay queues a message for the session, must not block
+     * @return the number of replayed messages
+     */
+    public int open(Session session, Consumer<String> replay) {
+        synchronized (this) {
+            List<String> messages = new ArrayList<>(replayQueue);
+            replayQueue.clear();
+            messages.forEach(replay);
+            sessions.add(session);
+            browserStarted.set(false);
+            return messages.size();
+        }
+    }
+
+    /**
+     * Keeps the message for the next session when no session is connected.
+     *
+     * @param startBrowser true when the browser is started for the message
+     * @return true when the message was kept and must not be sent now
+     */
+    public boolean keepIfNoSession(String message, boolean startBrowser) {
+        synchronized (this) {
+            if (!sessions.isEmpty()) {
+                return false;
+            }
+            if (capacity > 0) {
+                if (replayQueue.size() >= capacity) {
+                    replayQueue.poll();
+                }
+                replayQueue.add(message);
+            }
+        }
+        if (startBrowser) {
+            startBrowser();
+        }
+        return true;
+    }
+
+    /**
+     * Starts the browser when no session is connected.
+     */
+    public void startBrowserIfNoSession() {
+        if (sessions.isEmpty()) {
+            startBrowser();
+        }
+    }
+
+    /**
+     * Starts the browser in the background, only once until a session opens.
+     */
+    public void startBrowser() {
+        if (browserStarted.compareAndSet(false, true)) {
+            Thread thread = new Thread(startBrowser, "websocket-browser-start");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public boolean isBrowserStarted() {
+        return browserStarted.get();
+    }
+
+    public synchronized int getReplayQueueSize() {
+        return replayQueue.size();
+    }
+}
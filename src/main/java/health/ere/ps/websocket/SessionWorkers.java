@@ -0,0 +1,80 @@
+package health.ere.ps.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.websocket.Session;
+
+/**
+ * Runs the messages of a websocket session that take long, e.g. validating
+ * and signing bundles, one after the other on a worker thread of the
+ * session, so the thread that reads the websocket is not blocked.
+ * <p>
+ * Every session has a bounded queue. When it is full the message is
+ * rejected, so a client that sends faster than its messages are processed
+ * can be told to wait. The worker thread ends when the session is idle.
+ */
+public class SessionWorkers {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final long IDLE_SECONDS = 60;
+
+    private final int queueCapacity;
+    private final Map<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+
+    /**
+     * @param queueCapacity messages of a session that wait while another
+     *                      message of the session is processed
+     */
+    public SessionWorkers(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @return false when the queue of the session is full and the task was
+     * not accepted
+     */
+    public boolean submit(Session session, Runnable task) {
+        ThreadPoolExecutor executor = executors.computeIfAbsent(session.getId(), this::createExecutor);
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stops the worker of a closed session after the queued messages.
+     */
+    public void close(Session session) {
+        ThreadPoolExecutor executor = executors.remove(session.getId());
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    int getSessionCount() {
+        return executors.size();
+    }
+
+    private ThreadPoolExecutor createExecutor(String sessionId) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "websocket-session-" + THREAD_COUNTER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -13,7 +13,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -42,6 +45,7 @@ import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.r4.model.Bundle;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
 import de.gematik.ws.conn.cardservice.wsdl.v8.FaultMessage;
 import de.gematik.ws.tel.error.v2.Error;
 import de.gematik.ws.tel.error.v2.Error.Trace;
@@ -64,6 +68,7 @@ import health.ere.ps.event.GetSignatureModeResponseEvent;
 import health.ere.ps.event.HTMLBundlesEvent;
 import health.ere.ps.event.PrefillBundleEvent;
 import health.ere.ps.event.ReadyToSignBundlesEvent;
+import health.ere.ps.event.ReplyableEvent;
 import health.ere.ps.event.RequestStatusEvent;
 import health.ere.ps.event.SaveSettingsEvent;
 import health.ere.ps.event.SignAndUploadBundlesEvent;
@@ -80,8 +85,8 @@ import health.ere.ps.jsonb.ByteAdapter;
 import health.ere.ps.jsonb.DurationAdapter;
 import health.ere.ps.jsonb.ThrowableAdapter;
 import health.ere.ps.model.config.UserConfigurations;
-import health.ere.ps.model.websocket.OutgoingPayload;
 import health.ere.ps.service.config.UserConfigurationService;
+import health.ere.ps.service.fhir.FhirContextProvider;
 import health.ere.ps.service.fhir.XmlPrescriptionProcessor;
 import health.ere.ps.service.fhir.bundle.EreBundle;
 import health.ere.ps.service.logging.EreLogger;
@@ -157,24 +162,51 @@ public class Websocket {
     @ConfigProperty(name = "ere.websocket.erezeptdocuments.reply-to-all", defaultValue = "false")
     boolean erezeptdocumentsReplyToAll = false;
 
-    static JsonbConfig customConfig = new JsonbConfig()
-            .setProperty(JsonbConfig.FORMATTING, true)
-            .withAdapters(new BundleAdapter())
-            .withAdapters(new ByteAdapter())
-            .withAdapters(new ThrowableAdapter())
-            .withAdapters(new DurationAdapter());
+    // messages of a session that may wait for the worker of the session before a Busy reply is sent
+    @ConfigProperty(name = "ere.websocket.session-queue.capacity", defaultValue = "10")
+    int sessionQueueCapacity = 10;
+
+    // messages of a session that wait while the client reads the previous ones
+    @ConfigProperty(name = "ere.websocket.outbound-queue.capacity", defaultValue = "100")
+    int outboundQueueCapacity = 100;
+
+    // messages for all sessions that are kept while no session is connected
+    @ConfigProperty(name = "ere.websocket.replay-queue.capacity", defaultValue = "10")
+    int replayQueueCapacity = 10;
+
+    // messages are compact, true formats the payloads for debugging
+    @ConfigProperty(name = "ere.websocket.pretty-print", defaultValue = "false")
+    boolean prettyPrint = false;
+
+    static JsonbConfig customConfig = jsonbConfig(false);
     public static Jsonb jsonbFactory = JsonbBuilder.create(customConfig);
+    public static WebsocketMessageWriter messageWriter = new WebsocketMessageWriter(jsonbFactory);
     private static final String CHROME_X86_PATH = "C:\\Program Files (x86)\\Google\\Chrome\\Application\\chrome.exe";
     private static final String CHROME_X64_PATH = "C:\\Program Files\\Google\\Chrome\\Application\\chrome.exe";
     private static final EreLogger ereLog = EreLogger.getLogger(Websocket.class);
 
-    private final FhirContext ctx = FhirContext.forR4();
+    private final FhirContext ctx = FhirContextProvider.getFhirContext();
     private final static Set<Session> sessions = new CopyOnWriteArraySet<>();
 
+    private final Map<String, MessageHandler> messageHandlers = new HashMap<>();
+    // these messages take long, they are processed on the worker of the session
+    private final Set<String> sessionWorkerMessageTypes = Set.of("SignAndUploadBundles", "ValidateBundles",
+            "XMLBundle", "AllKBVExamples");
+    private volatile SessionWorkers sessionWorkers;
+    private volatile OutboundMessageQueues outboundMessageQueues;
+    private volatile WebsocketMessageWriter configuredMessageWriter;
+    // messages for all sessions that were sent while no session was connected
+    private volatile SessionAvailability sessionAvailability;
+
+    public Websocket() {
+        registerMessageHandlers();
+    }
+
     @OnOpen
     public void onOpen(Session session) {
-        sessions.add(session);
-        ereLog.info("Websocket opened");
+        int replayed = getSessionAvailability().open(session,
+            message -> send(session, message, "Unable to replay message"));
+        ereLog.info("Websocket opened" + (replayed == 0 ? "" : ", replaying " + replayed + " messages"));
     }
 
     void sendAllKBVExamples(String folder, Session senderSession) {
@@ -243,12 +275,18 @@ public class Websocket {
     @OnClose
     public void onClose(Session session) {
         sessions.remove(session);
+        getOutboundMessageQueues().close(session);
+        getSessionWorkers().close(session);
         ereLog.info("Websocket closed");
     }
 
     @OnError
     public void onError(Session session, Throwable throwable) {
         sessions.remove(session);
+        if(session != null) {
+            getOutboundMessageQueues().close(session);
+            getSessionWorkers().close(session);
+        }
 
         throwable.printStackTrace();
 
@@ -257,92 +295,27 @@ public class Websocket {
 
     @OnMessage
     public void onMessage(String message, Session senderSession) {
-        ereLog.info("Message: " + message);
         if(message == null) {
             ereLog.warn("null given as message");
             return;
         }
+        if(ereLog.isDebugEnabled()) {
+            ereLog.debug("Message: " + message);
+        }
         String messageId = null;
         try (JsonReader jsonReader = Json.createReader(new StringReader(message))) {
             JsonObject object = jsonReader.readObject();
             messageId = object.getString("id", null);
-            if ("SignAndUploadBundles".equals(object.getString("type"))) {
-                processSignAndUploadBundles(senderSession, messageId, object);
-            } else if ("ValidateBundles".equals(object.getString("type"))) {
-                JsonObject bundlesValidationResultMessage = prescriptionBundleValidator.bundlesValidationResult(object);
-                senderSession.getAsyncRemote().sendObject(
-                    bundlesValidationResultMessage.toString(),
-                    result -> {
-                        if (!result.isOK()) {
-                            ereLog.fatal("Unable to sent bundlesValidationResult event: " + result.getException());
-                        }
-                    });
-            } else if ("XMLBundle".equals(object.getString("type"))) {
-                Bundle[] bundles = XmlPrescriptionProcessor.parseFromString(object.getString("payload"));
-                if(appConfig.getXmlBundleDirectProcess()) {
-                    SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(bundles, senderSession, messageId);
-                    signAndUploadBundlesEvent.fireAsync(event);   
-                }
-                onFhirBundle(new BundlesEvent(Arrays.asList(bundles), null, messageId));
-            } else if ("AbortTasks".equals(object.getString("type"))) {
-                abortTasksEvent.fireAsync(new AbortTasksEvent(object, senderSession, messageId));
-            } else if ("ErixaEvent".equals(object.getString("type"))) {
-                ErixaEvent event = new ErixaEvent(object, senderSession, messageId);
-                erixaEvent.fireAsync(event);
-            } else if ("DeactivateComfortSignature".equals(object.getString("type"))) {
-                DeactivateComfortSignatureEvent event = new DeactivateComfortSignatureEvent(object, senderSession, messageId);
-                deactivateComfortSignatureEvent.fireAsync(event);
-            } else if ("ActivateComfortSignature".equals(object.getString("type"))) {
-                ActivateComfortSignatureEvent event = new ActivateComfortSignatureEvent(object, senderSession, messageId);
-                activateComfortSignatureEvent.fireAsync(event);
-            } else if ("GetSignatureMode".equals(object.getString("type"))) {
-                GetSignatureModeEvent event = new GetSignatureModeEvent(object, senderSession, messageId);
-                getSignatureModeEvent.fireAsync(event);
-            } else if ("GetCards".equals(object.getString("type"))) {
-                GetCardsEvent event = new GetCardsEvent(object, senderSession, messageId);
-                getCardsEvent.fireAsync(event);
-            } else if ("ChangePin".equals(object.getString("type"))) {
-                ChangePinEvent event = new ChangePinEvent(object, senderSession, messageId);
-                changePinEvent.fireAsync(event);
-            } else if ("VerifyPin".equals(object.getString("type"))) {
-                VerifyPinEvent event = new VerifyPinEvent(object, senderSession, messageId);
-                verifyPinEvent.fireAsync(event);
-            } else if ("UnblockPin".equals(object.getString("type"))) {
-                UnblockPinEvent event = new UnblockPinEvent(object, senderSession, messageId);
-                unblockPinEvent.fireAsync(event);
-            } else if ("GetPinStatus".equals(object.getString("type"))) {
-                GetPinStatusEvent event = new GetPinStatusEvent(object, senderSession, messageId);
-                getPinStatusEvent.fireAsync(event);
-            } else if ("PrefillBundle".equals(object.getString("type"))) {
-                PrefillBundleEvent event = new PrefillBundleEvent(object, senderSession, messageId);
-                prefillBundleEvent.fireAsync(event);
-            } else if("VZDSearch".equals(object.getString("type"))) {
-                VZDSearchEvent event = new VZDSearchEvent(object, senderSession, messageId);
-                vZDSearchEvent.fireAsync(event);
-            }  else if ("RequestSettings".equals(object.getString("type"))) {
-                UserConfigurations userConfigurations = userConfigurationService.getConfig();
-                String payload = jsonbFactory.toJson(userConfigurations);
-                senderSession.getAsyncRemote().sendObject(
-                    "{\"type\": \"Settings\", \"payload\": " + payload + ", \"replyToMessageId\": \""+messageId+"\"}",
-                    result -> {
-                        if (!result.isOK()) {
-                            ereLog.fatal("Unable to send settings event: " + result.getException());
-                        }
-                    });
-            } else if("SaveSettings".equals(object.getString("type"))) {
-                String userConfiguration = object.getJsonObject("payload").toString();
-                UserConfigurations userConfigurations = jsonbFactory.fromJson(userConfiguration, UserConfigurations.class);
-                saveSettingsEvent.fireAsync(new SaveSettingsEvent(userConfigurations));
-            } else if("RequestStatus".equals(object.getString("type"))) {
-                requestStatusEvent.fireAsync(new RequestStatusEvent(object, senderSession, messageId));
-            } else if ("Publish".equals(object.getString("type"))) {
-                sendMessage(object.getString("payload"), "Unable to publish event");
-            } else if ("AllKBVExamples".equals(object.getString("type"))) {
-                sendAllKBVExamples(object.getString("folder", "../src/test/resources/examples-kbv-fhir-erp-v1-0-2"), senderSession);
-            } else if ("SimulateException".equals(object.getString("type"))) {
-                onException(simulateException(object));
+            String type = object.getString("type");
+            ereLog.info("Message " + type + " with id " + messageId);
+            MessageHandler messageHandler = messageHandlers.get(type);
+            if(messageHandler == null) {
+                // message processors may validate and sign bundles
+                handleOnSessionWorker(type, (o, session, id) -> processIncomingMessage(o, session), object, senderSession, messageId);
+            } else if(sessionWorkerMessageTypes.contains(type)) {
+                handleOnSessionWorker(type, messageHandler, object, senderSession, messageId);
             } else {
-                processIncomingMessage(object, senderSession);
+                messageHandler.handle(object, senderSession, messageId);
             }
         } catch(Exception ex) {
             ereLog.warn("Could not process message", ex);
@@ -350,11 +323,182 @@ public class Websocket {
         }
     }
 
+    /**
+     * Handles an incoming message of one type.
+     */
+    @FunctionalInterface
+    interface MessageHandler {
+        void handle(JsonObject object, Session senderSession, String messageId) throws Exception;
+    }
+
+    private void registerMessageHandlers() {
+        messageHandlers.put("SignAndUploadBundles", (object, senderSession, messageId) ->
+            processSignAndUploadBundles(senderSession, messageId, object));
+        messageHandlers.put("ValidateBundles", (object, senderSession, messageId) -> {
+            JsonObject bundlesValidationResultMessage = prescriptionBundleValidator.bundlesValidationResult(object);
+            send(senderSession, bundlesValidationResultMessage.toString(), "Unable to sent bundlesValidationResult event");
+        });
+        messageHandlers.put("XMLBundle", (object, senderSession, messageId) -> {
+            Bundle[] bundles = XmlPrescriptionProcessor.parseFromString(object.getString("payload"));
+            if(appConfig.getXmlBundleDirectProcess()) {
+                SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(bundles, senderSession, messageId);
+                signAndUploadBundlesEvent.fireAsync(event);   
+            }
+            onFhirBundle(new BundlesEvent(Arrays.asList(bundles), null, messageId));
+        });
+        messageHandlers.put("AbortTasks", (object, senderSession, messageId) ->
+            abortTasksEvent.fireAsync(new AbortTasksEvent(object, senderSession, messageId)));
+        messageHandlers.put("ErixaEvent", (object, senderSession, messageId) ->
+            erixaEvent.fireAsync(new ErixaEvent(object, senderSession, messageId)));
+        messageHandlers.put("DeactivateComfortSignature", (object, senderSession, messageId) ->
+            deactivateComfortSignatureEvent.fireAsync(new DeactivateComfortSignatureEvent(object, senderSession, messageId)));
+        messageHandlers.put("ActivateComfortSignature", (object, senderSession, messageId) ->
+            activateComfortSignatureEvent.fireAsync(new ActivateComfortSignatureEvent(object, senderSession, messageId)));
+        messageHandlers.put("GetSignatureMode", (object, senderSession, messageId) ->
+            getSignatureModeEvent.fireAsync(new GetSignatureModeEvent(object, senderSession, messageId)));
+        messageHandlers.put("GetCards", (object, senderSession, messageId) ->
+            getCardsEvent.fireAsync(new GetCardsEvent(object, senderSession, messageId)));
+        messageHandlers.put("ChangePin", (object, senderSession, messageId) ->
+            changePinEvent.fireAsync(new ChangePinEvent(object, senderSession, messageId)));
+        messageHandlers.put("VerifyPin", (object, senderSession, messageId) ->
+            verifyPinEvent.fireAsync(new VerifyPinEvent(object, senderSession, messageId)));
+        messageHandlers.put("UnblockPin", (object, senderSession, messageId) ->
+            unblockPinEvent.fireAsync(new UnblockPinEvent(object, senderSession, messageId)));
+        messageHandlers.put("GetPinStatus", (object, senderSession, messageId) ->
+            getPinStatusEvent.fireAsync(new GetPinStatusEvent(object, senderSession, messageId)));
+        messageHandlers.put("PrefillBundle", (object, senderSession, messageId) ->
+            prefillBundleEvent.fireAsync(new PrefillBundleEvent(object, senderSession, messageId)));
+        messageHandlers.put("VZDSearch", (object, senderSession, messageId) ->
+            vZDSearchEvent.fireAsync(new VZDSearchEvent(object, senderSession, messageId)));
+        messageHandlers.put("RequestSettings", (object, senderSession, messageId) -> {
+            UserConfigurations userConfigurations = userConfigurationService.getConfig();
+            send(senderSession, getMessageWriter().toMessage("Settings", userConfigurations, messageId),
+                "Unable to send settings event");
+        });
+        messageHandlers.put("SaveSettings", (object, senderSession, messageId) -> {
+            String userConfiguration = object.getJsonObject("payload").toString();
+            UserConfigurations userConfigurations = jsonbFactory.fromJson(userConfiguration, UserConfigurations.class);
+            saveSettingsEvent.fireAsync(new SaveSettingsEvent(userConfigurations));
+        });
+        messageHandlers.put("RequestStatus", (object, senderSession, messageId) ->
+            requestStatusEvent.fireAsync(new RequestStatusEvent(object, senderSession, messageId)));
+        messageHandlers.put("Publish", (object, senderSession, messageId) ->
+            sendMessage(object.getString("payload"), "Unable to publish event"));
+        messageHandlers.put("AllKBVExamples", (object, senderSession, messageId) ->
+            sendAllKBVExamples(object.getString("folder", "../src/test/resources/examples-kbv-fhir-erp-v1-0-2"), senderSession));
+        messageHandlers.put("SimulateException", (object, senderSession, messageId) ->
+            onException(simulateException(object)));
+    }
+
+    /**
+     * Queues the message on the worker of the session. When the queue is
+     * full, the client gets a Busy reply and has to send the message again
+     * later.
+     */
+    private void handleOnSessionWorker(String type, MessageHandler messageHandler, JsonObject object,
+                                       Session senderSession, String messageId) throws Exception {
+        if(senderSession == null) {
+            messageHandler.handle(object, senderSession, messageId);
+            return;
+        }
+        SessionWorkers workers = getSessionWorkers();
+        boolean accepted = workers.submit(senderSession, () -> {
+            try {
+                messageHandler.handle(object, senderSession, messageId);
+            } catch(Exception ex) {
+                ereLog.warn("Could not process message", ex);
+                onException(new ExceptionWithReplyToExcetion(ex, senderSession, messageId));
+            }
+        });
+        if(!accepted) {
+            ereLog.warn("Rejected message " + type + " with id " + messageId + ", " +
+                workers.getQueueCapacity() + " messages of the session are already waiting");
+            JsonObject busy = Json.createObjectBuilder()
+                .add("messageType", type)
+                .add("queueCapacity", workers.getQueueCapacity())
+                .build();
+            send(senderSession, getMessageWriter().toMessage("Busy", writer -> writer.write(busy.toString()), messageId),
+                "Unable to send busy message");
+        }
+    }
+
+    SessionWorkers getSessionWorkers() {
+        SessionWorkers workers = sessionWorkers;
+        if(workers == null) {
+            synchronized (this) {
+                if(sessionWorkers == null) {
+                    sessionWorkers = new SessionWorkers(sessionQueueCapacity);
+                }
+                workers = sessionWorkers;
+            }
+        }
+        return workers;
+    }
+
+    /**
+     * @return the queue depths of the sessions and the dropped messages for the status
+     */
+    public OutboundMessageQueues getOutboundMessageQueues() {
+        OutboundMessageQueues queues = outboundMessageQueues;
+        if(queues == null) {
+            synchronized (this) {
+                if(outboundMessageQueues == null) {
+                    outboundMessageQueues = new OutboundMessageQueues(outboundQueueCapacity);
+                }
+                queues = outboundMessageQueues;
+            }
+        }
+        return queues;
+    }
+
+    /**
+     * @return the compact {@link #messageWriter} or, with
+     *         ere.websocket.pretty-print=true, a writer that formats the payloads
+     */
+    WebsocketMessageWriter getMessageWriter() {
+        WebsocketMessageWriter writer = configuredMessageWriter;
+        if(writer == null) {
+            synchronized (this) {
+                if(configuredMessageWriter == null) {
+                    configuredMessageWriter = prettyPrint
+                        ? new WebsocketMessageWriter(JsonbBuilder.create(jsonbConfig(true))) : messageWriter;
+                }
+                writer = configuredMessageWriter;
+            }
+        }
+        return writer;
+    }
+
+    static JsonbConfig jsonbConfig(boolean prettyPrint) {
+        return new JsonbConfig()
+            .setProperty(JsonbConfig.FORMATTING, prettyPrint)
+            .withAdapters(new BundleAdapter())
+            .withAdapters(new ByteAdapter())
+            .withAdapters(new ThrowableAdapter())
+            .withAdapters(new DurationAdapter());
+    }
+
+    SessionAvailability getSessionAvailability() {
+        SessionAvailability availability = sessionAvailability;
+        if(availability == null) {
+            synchronized (this) {
+                if(sessionAvailability == null) {
+                    sessionAvailability = new SessionAvailability(sessions, replayQueueCapacity,
+                        Websocket::startWebappInChrome);
+                }
+                availability = sessionAvailability;
+            }
+        }
+        return availability;
+    }
+
     private void processSignAndUploadBundles(Session senderSession, String messageId, JsonObject object) {
         boolean bundlesValid = true;
         JsonObject bundlesValidationResultMessage = null;
+        // every bundle is serialized once and the same string is validated and parsed
+        List<List<String>> bundleJsons = SignAndUploadBundlesEvent.getBundleJsons(object);
         if(!object.getBoolean("ignoreValidation", false)) {
-            bundlesValidationResultMessage = prescriptionBundleValidator.bundlesValidationResult(object);
+            bundlesValidationResultMessage = prescriptionBundleValidator.bundlesValidationResult(object, bundleJsons);
             
             bundlesValid = bundlesValidationResultMessage.getJsonArray("payload")
             .stream().filter(jo -> jo instanceof JsonObject)
@@ -363,16 +507,12 @@ public class Websocket {
                 .count() == 0;
         }
         if(bundlesValid) {
-            SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(object, senderSession, messageId);
+            SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(object,
+                SignAndUploadBundlesEvent.parseBundles(bundleJsons), senderSession, messageId);
             signAndUploadBundlesEvent.fireAsync(event);
         } else {
-            senderSession.getAsyncRemote().sendObject(
-                bundlesValidationResultMessage == null ? "{}" : bundlesValidationResultMessage.toString(),
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send bundlesValidationResult event: " + result.getException());
-                    }
-                });
+            send(senderSession, bundlesValidationResultMessage == null ? "{}" : bundlesValidationResultMessage.toString(),
+                "Unable to send bundlesValidationResult event");
         }
     }
 
@@ -387,219 +527,182 @@ public class Websocket {
     }
 
     public void onFhirBundle(@ObservesAsync BundlesEvent bundlesEvent) {
-        assureChromeIsOpen();
-        String bundlesString = generateJson(bundlesEvent);
-        Set<Session> localSessions = new HashSet<>();
+        String bundlesMessage = generateJson(bundlesEvent);
         if(bundlesEvent.getReplyTo() != null) {
-            localSessions.add(bundlesEvent.getReplyTo());
+            assureChromeIsOpen();
+            send(bundlesEvent.getReplyTo(), bundlesMessage, "Unable to send bundlesEvent");
         } else {
-            localSessions = sessions;
+            broadcast(bundlesMessage, "Unable to send bundlesEvent", true);
         }
-        localSessions.forEach(session -> session.getAsyncRemote().sendObject(
-                "{\"type\": \"Bundles\", \"payload\": " + bundlesString + ", \"replyToMessageId\": \""+bundlesEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send bundlesEvent: " + result.getException());
-                    }
-                }));
     }
 
     public void onAbortTasksStatusEvent(@ObservesAsync AbortTasksStatusEvent abortTasksStatusEvent) {
         assureChromeIsOpen();
-        String abortTasksStatusString = generateJson(abortTasksStatusEvent);
+        String abortTasksStatusMessage = generateJson(abortTasksStatusEvent);
         
-        abortTasksStatusEvent.getReplyTo().getAsyncRemote().sendObject(
-                "{\"type\": \"AbortTasksStatus\", \"payload\": " + abortTasksStatusString + ", \"replyToMessageId\": \""+abortTasksStatusEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send bundlesEvent: " + result.getException());
-                    }
-                });
+        send(abortTasksStatusEvent.getReplyTo(), abortTasksStatusMessage, "Unable to send abortTasksStatusEvent");
     }
 
     public void onGetCardsResponseEvent(@ObservesAsync GetCardsResponseEvent getCardsResponseEvent) {
         assureChromeIsOpen();
-        String abortTasksStatusString = generateJson(getCardsResponseEvent);
+        String getCardsResponseMessage = generateJson(getCardsResponseEvent);
         
-        getCardsResponseEvent.getReplyTo().getAsyncRemote().sendObject(
-                "{\"type\": \"GetCardsResponse\", \"payload\": " + abortTasksStatusString + ", \"replyToMessageId\": \""+getCardsResponseEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to get cards response: " + result.getException());
-                    }
-                });
+        send(getCardsResponseEvent.getReplyTo(), getCardsResponseMessage, "Unable to get cards response");
     }
 
     public void onGetSignatureModeResponseEvent(@ObservesAsync GetSignatureModeResponseEvent getSignatureModeResponseEvent) {
         assureChromeIsOpen();
-        String abortTasksStatusString = generateJson(getSignatureModeResponseEvent);
-        getSignatureModeResponseEvent.getReplyTo().getAsyncRemote().sendObject(
-                "{\"type\": \"GetSignatureModeResponse\", \"payload\": " + abortTasksStatusString + ", \"replyToMessageId\": \""+getSignatureModeResponseEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send getSignatureModeResponseEvent: " + result.getException());
-                    }
-                });
+        String getSignatureModeResponseMessage = generateJson(getSignatureModeResponseEvent);
+        send(getSignatureModeResponseEvent.getReplyTo(), getSignatureModeResponseMessage,
+                "Unable to send getSignatureModeResponseEvent");
     }
 
     public void onChangePinResponseEvent(@ObservesAsync ChangePinResponseEvent changePinResponseEvent) {
         assureChromeIsOpen();
-        String changePinResponseString = generateJson(changePinResponseEvent);
-        changePinResponseEvent.getReplyTo().getAsyncRemote().sendObject(
-                "{\"type\": \"ChangePinResponse\", \"payload\": " + changePinResponseString + ", \"replyToMessageId\": \""+changePinResponseEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send changePinResponseEvent: " + result.getException());
-                    }
-                });
+        String changePinResponseMessage = generateJson(changePinResponseEvent);
+        send(changePinResponseEvent.getReplyTo(), changePinResponseMessage, "Unable to send changePinResponseEvent");
     }
 
     public void onStatusResponseEvent(@ObservesAsync StatusResponseEvent statusResponseEvent) {
         assureChromeIsOpen();
-        statusResponseEvent.getReplyTo().getAsyncRemote().sendObject(statusResponseEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send StatusResponseEvent: " + result.getException());
-                    }
-                });
+        // a client that is behind only gets the latest status
+        getOutboundMessageQueues().send(statusResponseEvent.getReplyTo(), toMessage(statusResponseEvent),
+            "StatusResponse", "Unable to send StatusResponseEvent");
     }
 
     public void onVZDSearchResultEvent(@ObservesAsync VZDSearchResultEvent vZDSearchResultEvent) {
         assureChromeIsOpen();
-        vZDSearchResultEvent.getReplyTo().getAsyncRemote().sendObject(vZDSearchResultEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send VZDSearchResultEvent: " + result.getException());
-                    }
-                });
+        send(vZDSearchResultEvent.getReplyTo(), toMessage(vZDSearchResultEvent),
+                "Unable to send VZDSearchResultEvent");
     }
 
     public void onVerifyPinResponseEvent(@ObservesAsync VerifyPinResponseEvent verifyPinResponseEvent) {
         assureChromeIsOpen();
-        verifyPinResponseEvent.getReplyTo().getAsyncRemote().sendObject(verifyPinResponseEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send VerifyPinResponseEvent: " + result.getException());
-                    }
-                });
+        send(verifyPinResponseEvent.getReplyTo(), toMessage(verifyPinResponseEvent),
+                "Unable to send VerifyPinResponseEvent");
     }
 
     public void onUnblockPinResponseEvent(@ObservesAsync UnblockPinResponseEvent unblockPinResponseEvent) {
         assureChromeIsOpen();
-        unblockPinResponseEvent.getReplyTo().getAsyncRemote().sendObject(unblockPinResponseEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send UnblockPinResponseEvent: " + result.getException());
-                    }
-                });
+        send(unblockPinResponseEvent.getReplyTo(), toMessage(unblockPinResponseEvent),
+                "Unable to send UnblockPinResponseEvent");
     }
 
     public void onGetPinStatusResponseEvent(@ObservesAsync GetPinStatusResponseEvent getPinStatusResponseEvent) {
         assureChromeIsOpen();
-        getPinStatusResponseEvent.getReplyTo().getAsyncRemote().sendObject(getPinStatusResponseEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send GetPinStatusResponseEvent: " + result.getException());
-                    }
-                });
+        send(getPinStatusResponseEvent.getReplyTo(), toMessage(getPinStatusResponseEvent),
+                "Unable to send GetPinStatusResponseEvent");
     }
 
     String generateJson(GetSignatureModeResponseEvent getSignatureModeResponseEvent) {
-        return jsonbFactory.toJson(getSignatureModeResponseEvent);
+        return getMessageWriter().toMessage("GetSignatureModeResponse", getSignatureModeResponseEvent,
+                getSignatureModeResponseEvent.getReplyToMessageId());
     }
 
     String generateJson(GetCardsResponseEvent getCardsResponseEvent) {
-        return jsonbFactory.toJson(getCardsResponseEvent);
+        return getMessageWriter().toMessage("GetCardsResponse", getCardsResponseEvent,
+                getCardsResponseEvent.getReplyToMessageId());
     }
 
     String generateJson(AbortTasksStatusEvent abortTasksStatusEvent) {
-        return jsonbFactory.toJson(abortTasksStatusEvent.getTasks());
+        return getMessageWriter().toMessage("AbortTasksStatus", abortTasksStatusEvent.getTasks(),
+                abortTasksStatusEvent.getReplyToMessageId());
     }
 
     String generateJson(ChangePinResponseEvent changePinResponseEvent) {
-        return jsonbFactory.toJson(changePinResponseEvent.getChangePinResponse());
-    }
-
-    String generateJson(VerifyPinResponseEvent verifyPinResponseEvent) {
-        return jsonbFactory.toJson(verifyPinResponseEvent.getVerifyPinResponse());
-    }
-
-    String generateJson(UnblockPinResponseEvent unblockPinResponseEvent) {
-        return jsonbFactory.toJson(unblockPinResponseEvent.getUnblockPinResponse());
-    }
-
-    String generateJson(GetPinStatusResponseEvent getPinStatusResponseEvent) {
-        return jsonbFactory.toJson(getPinStatusResponseEvent.getGetPinStatusResponse());
-    }
-
-    void assureChromeIsOpen() {
-        // if nobody is connected to the websocket
-        if (sessions.size() == 0) {
-            try {
-                startWebappInChrome();
-                Thread.sleep(5000);
-            } catch (InterruptedException e) {
-                ereLog.warn("Could not open browser", e);
-            }
-        }
+        return getMessageWriter().toMessage("ChangePinResponse", changePinResponseEvent.getChangePinResponse(),
+                changePinResponseEvent.getReplyToMessageId());
     }
 
     public void onERezeptDocuments(@ObservesAsync ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
-        String jsonPayload = generateJson(eRezeptDocumentsEvent);
-        ereLog.info("Sending prescription receipt payload to front-end: " +
-                jsonPayload);
-
-                Set<Session> localSessions = new HashSet<>();
+        Set<Session> localSessions = new HashSet<>();
         if(eRezeptDocumentsEvent.getReplyTo() != null && !erezeptdocumentsReplyToAll) {
             localSessions.add(eRezeptDocumentsEvent.getReplyTo());
         } else {
             localSessions = sessions;
+            if(sessions.isEmpty() && getSessionAvailability().keepIfNoSession(generateJson(eRezeptDocumentsEvent), false)) {
+                ereLog.info("Keeping prescription receipt payload until a front-end connects");
+                return;
+            }
+        }
+        // sessions that opted in get the PDFs as binary frames, the others as base64 in the JSON
+        Map<Boolean, List<Session>> sessionsByBinaryDocuments = localSessions.stream()
+            .collect(Collectors.partitioningBy(BinaryDocumentsMessage::isBinaryDocumentsSession));
+
+        if(!sessionsByBinaryDocuments.get(false).isEmpty()) {
+            String jsonPayload = generateJson(eRezeptDocumentsEvent);
+            ereLog.info("Sending prescription receipt payload to front-end");
+            if(ereLog.isDebugEnabled()) {
+                ereLog.debug("Prescription receipt payload: " + jsonPayload);
+            }
+            sessionsByBinaryDocuments.get(false).forEach(session ->
+                send(session, jsonPayload, "Unable to send eRezeptWithDocumentsEvent"));
+        }
+        if(!sessionsByBinaryDocuments.get(true).isEmpty()) {
+            BinaryDocumentsMessage binaryDocumentsMessage = generateBinaryDocumentsMessage(eRezeptDocumentsEvent);
+            ereLog.info("Sending prescription receipt payload with " + binaryDocumentsMessage.getFrames().size() +
+                    " binary documents to front-end");
+            if(ereLog.isDebugEnabled()) {
+                ereLog.debug("Prescription receipt payload: " + binaryDocumentsMessage.getMessage());
+            }
+            // the binary frames are sent directly after the JSON message they belong to
+            sessionsByBinaryDocuments.get(true).forEach(session -> getOutboundMessageQueues().send(session,
+                binaryDocumentsMessage.getMessage(), binaryDocumentsMessage.getFrames(),
+                "Unable to send eRezeptWithDocumentsEvent"));
         }
-        localSessions.forEach(session -> {
-
-            session.getAsyncRemote().sendObject(
-                jsonPayload,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send eRezeptWithDocumentsEvent: " +
-                                result.getException());
-                    }
-                });
-        });
     }
 
-    public String generateJson(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
+    BinaryDocumentsMessage generateBinaryDocumentsMessage(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
+        removeSignatures(eRezeptDocumentsEvent);
+        return BinaryDocumentsMessage.create(getMessageWriter(), eRezeptDocumentsEvent);
+    }
+
+    private void removeSignatures(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
         if(removeSignatureFromMessage) {
             eRezeptDocumentsEvent.getERezeptWithDocuments().stream()
                 .flatMap(ezd -> ezd.getBundleWithAccessCodeOrThrowables().stream())
                 .forEach(bundleWithAccessCodeOrThrowables -> bundleWithAccessCodeOrThrowables.setSignedBundle(null));
         }
+    }
+
+    public String generateJson(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
+        removeSignatures(eRezeptDocumentsEvent);
 
-        return "{\"type\": \"ERezeptWithDocuments\", \"payload\": " +
-                jsonbFactory.toJson(eRezeptDocumentsEvent.getERezeptWithDocuments()) + ", \"replyToMessageId\": \""+eRezeptDocumentsEvent.getReplyToMessageId()+"\"}";
+        return getMessageWriter().toMessage("ERezeptWithDocuments", eRezeptDocumentsEvent.getERezeptWithDocuments(),
+                eRezeptDocumentsEvent.getReplyToMessageId());
     }
 
     String generateJson(BundlesEvent bundlesEvent) {
 
-        bundlesEvent.getBundles().forEach(bundle -> {
-            if (bundle instanceof EreBundle) {
-                ereLog.info("Filled bundle json template result shown below. Null value place" +
-                        " holders present.");
-                ereLog.info("==============================================");
-
-                ereLog.info(((EreBundle) bundle).encodeToJson());
-            }
-        });
+        if (ereLog.isDebugEnabled()) {
+            bundlesEvent.getBundles().forEach(bundle -> {
+                if (bundle instanceof EreBundle) {
+                    ereLog.debug("Filled bundle json template result shown below. Null value place" +
+                            " holders present.");
+                    ereLog.debug("==============================================");
 
-        if (bundlesEvent.getBundles().stream().anyMatch(b -> b instanceof EreBundle)) {
-            return bundlesEvent.getBundles().stream().map(bundle ->
-                            ((EreBundle) bundle).encodeToJson())
-                    .collect(Collectors.joining(",\n", "[", "]"));
-        } else {
-            return bundlesEvent.getBundles().stream().map(bundle ->
-                            ctx.newJsonParser().encodeResourceToString(bundle))
-                    .collect(Collectors.joining(",\n", "[", "]"));
+                    ereLog.debug(((EreBundle) bundle).encodeToJson());
+                }
+            });
         }
+
+        // the bundles are encoded by the FHIR parser directly into the message
+        IParser jsonParser = ctx.newJsonParser();
+        return getMessageWriter().toMessage("Bundles", writer -> {
+            writer.write('[');
+            for (int i = 0; i < bundlesEvent.getBundles().size(); i++) {
+                Bundle bundle = bundlesEvent.getBundles().get(i);
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (bundle instanceof EreBundle) {
+                    writer.write(((EreBundle) bundle).encodeToJson());
+                } else {
+                    jsonParser.encodeResourceToWriter(bundle, writer);
+                }
+            }
+            writer.write(']');
+        }, bundlesEvent.getReplyToMessageId());
     }
 
     public void onException(@ObservesAsync Exception exceptionParam) {
@@ -623,39 +726,24 @@ public class Websocket {
         final Exception exception = exceptionFromReplyTo != null ? exceptionFromReplyTo : exceptionParam;
         final String replyToMessageId = replyToMessageIdFromException != null ? replyToMessageIdFromException : "";
 
-        localSessions.forEach(session -> {
-            session.getAsyncRemote()
-                .sendObject("{\"type\": \"Exception\", \"payload\": "+jsonbFactory.toJson(exception)+", \"replyToMessageId\": \""+replyToMessageId+"\"}", result -> {
-                    if (result.getException() != null) {
-                        ereLog.fatal("Unable to send message: " + result.getException());
-                    }
-                });
-        });
+        if(localSessions == sessions) {
+            broadcast(getMessageWriter().toMessage("Exception", exception, replyToMessageId), "Unable to send message", false);
+        } else if(!localSessions.isEmpty()) {
+            String exceptionMessage = getMessageWriter().toMessage("Exception", exception, replyToMessageId);
+            localSessions.forEach(session -> send(session, exceptionMessage, "Unable to send message"));
+        }
     }
 
     public void onEreLogNotificationEvent(@ObservesAsync EreLogNotificationEvent event) {
-        sessions.forEach(session -> {
-            OutgoingPayload<EreLogNotificationEvent> outgoingPayload = new OutgoingPayload<>(event);
-
-            outgoingPayload.setType("Notification");
-
-            session.getAsyncRemote()
-                    .sendObject(outgoingPayload.toString(), result -> {
-                        if (result.getException() != null) {
-                            ereLog.fatal("Unable to send message: " + result.getException());
-                        }
-                    });
-        });
+        String notificationMessage = getMessageWriter().toMessage("Notification", event, null);
+        // a client that is behind only gets the latest notification
+        sessions.forEach(session -> getOutboundMessageQueues().send(session, notificationMessage, "Notification",
+            "Unable to send message"));
     }
 
     public void onHTMLBundlesEvent(@ObservesAsync HTMLBundlesEvent event) {
-        event.getReplyTo().getAsyncRemote()
-        .sendObject("{\"type\": \"HTMLBundles\", \"payload\": " +
-        jsonbFactory.toJson(event.getBundles()) + ", \"replyToMessageId\": \""+event.getReplyToMessageId()+"\"}", result -> {
-            if (result.getException() != null) {
-                ereLog.fatal("Unable to send message: " + result.getException());
-            }
-        });
+        send(event.getReplyTo(), getMessageWriter().toMessage("HTMLBundles", event.getBundles(), event.getReplyToMessageId()),
+            "Unable to send message");
     }
 
     private void processIncomingMessage(JsonObject object, Session senderSession) {
@@ -675,10 +763,38 @@ public class Websocket {
 
     private void sendMessage(String message, String errorMessage) {
         final String processedMessage = processOutgoing(message);
-        sessions.forEach(session -> session.getAsyncRemote().sendObject(processedMessage, result -> {
-            if (result.getException() != null)
-                ereLog.fatal(errorMessage);
-        }));
+        broadcast(processedMessage, errorMessage, false);
+    }
+
+    /**
+     * Sends the message to all sessions. When no session is connected, the
+     * message is sent to the next session that opens.
+     *
+     * @param startBrowser true when the browser is started if no session is connected
+     */
+    private void broadcast(String message, String errorMessage, boolean startBrowser) {
+        if(!getSessionAvailability().keepIfNoSession(message, startBrowser)) {
+            sessions.forEach(session -> send(session, message, errorMessage));
+        }
+    }
+
+    /**
+     * Starts the browser in the background when nobody is connected to the websocket.
+     */
+    void assureChromeIsOpen() {
+        getSessionAvailability().startBrowserIfNoSession();
+    }
+
+    private void send(Session session, String message, String errorMessage) {
+        getOutboundMessageQueues().send(session, message, (String) null, errorMessage);
+    }
+
+    /**
+     * @return the message that the {@link ResponseEventEncoder} would write
+     */
+    private String toMessage(ReplyableEvent replyableEvent) {
+        return getMessageWriter().toMessage(replyableEvent.getType(), replyableEvent.getPayload(),
+            replyableEvent.getReplyToMessageId());
     }
 
     private String processOutgoing(String message) {
@@ -688,7 +804,7 @@ public class Websocket {
         return message;
     }
 
-    private void startWebappInChrome() {
+    private static void startWebappInChrome() {
         try {
             if (Files.exists(Path.of(CHROME_X86_PATH))) {
                 Runtime.getRuntime().exec(CHROME_X86_PATH + " http://localhost:8080/frontend/app/src/index.html");
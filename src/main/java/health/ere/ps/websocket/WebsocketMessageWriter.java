@@ -0,0 +1,114 @@
+package health.ere.ps.websocket;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import javax.json.bind.Jsonb;
+
+import org.apache.commons.io.output.StringBuilderWriter;
+
+/**
+ * Writes the messages that are sent over the websocket:
+ * <pre>{"type":"...","payload":...,"replyToMessageId":"..."}</pre>
+ * The envelope and the payload are written one after the other into a
+ * buffer that is reused by the thread, so the payload is not converted to a
+ * string of its own that is then copied into the message.
+ */
+public class WebsocketMessageWriter {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    // buffers of larger messages, e.g. with PDFs, are not kept for the next message
+    static final int MAX_REUSED_CAPACITY = 1024 * 1024;
+
+    private final Jsonb jsonb;
+    private final ThreadLocal<StringBuilder> buffers =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+
+    /**
+     * Writes the JSON of a payload to the writer.
+     */
+    @FunctionalInterface
+    public interface PayloadWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    public WebsocketMessageWriter(Jsonb jsonb) {
+        this.jsonb = jsonb;
+    }
+
+    /**
+     * @param payload serialized with JSON-B
+     * @param replyToMessageId left out of the message when null
+     */
+    public String toMessage(String type, Object payload, String replyToMessageId) {
+        // the StringBuilderWriter ignores that JSON-B closes the writer
+        return toMessage(type, writer -> jsonb.toJson(payload, writer), replyToMessageId);
+    }
+
+    /**
+     * @param payloadWriter writes the JSON of the payload, e.g. FHIR bundles
+     *                      that are encoded by their own parser
+     * @param replyToMessageId left out of the message when null
+     */
+    public String toMessage(String type, PayloadWriter payloadWriter, String replyToMessageId) {
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        try {
+            Writer writer = new StringBuilderWriter(buffer);
+            writer.write("{\"type\":");
+            writeString(writer, type);
+            writer.write(",\"payload\":");
+            payloadWriter.write(writer);
+            if (replyToMessageId != null) {
+                writer.write(",\"replyToMessageId\":");
+                writeString(writer, replyToMessageId);
+            }
+            writer.write('}');
+            return buffer.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + type + " message", e);
+        } finally {
+            if (buffer.capacity() > MAX_REUSED_CAPACITY) {
+                buffers.remove();
+            } else {
+                buffer.setLength(0);
+            }
+        }
+    }
+
+    static void writeString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,29 @@
+package health.ere.ps;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock for the tests of the caches, the tests move it forward by
+ * setting {@link #now}.
+ */
+public class MutableClock extends Clock {
+    public Instant now = Instant.parse("2022-01-01T00:00:00Z");
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+
+    @Override
+    public Instant instant() {
+        return now;
+    }
+}
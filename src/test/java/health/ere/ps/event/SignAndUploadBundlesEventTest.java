@@ -0,0 +1,54 @@
+package health.ere.ps.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.InputStream;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.Test;
+
+class SignAndUploadBundlesEventTest {
+
+    private static JsonObject readMessage() throws Exception {
+        try (InputStream in = SignAndUploadBundlesEventTest.class.getResourceAsStream("/websocket-messages/SignAndUploadBundles-With-RuntimeConfig.json");
+             JsonReader jsonReader = Json.createReader(in)) {
+            return jsonReader.readObject();
+        }
+    }
+
+    @Test
+    void testParsedBundlesAreUsed() throws Exception {
+        JsonObject message = readMessage();
+
+        List<List<String>> bundleJsons = SignAndUploadBundlesEvent.getBundleJsons(message);
+        List<List<Bundle>> bundles = SignAndUploadBundlesEvent.parseBundles(bundleJsons);
+        SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(message, bundles, null, "id");
+
+        assertEquals(1, bundleJsons.size());
+        assertEquals(1, bundleJsons.get(0).size());
+        assertSame(bundles, event.getListOfListOfBundles());
+        assertEquals("0428d416-149e-48a4-977c-394887b3d85c", bundles.get(0).get(0).getIdElement().getIdPart());
+        assertNotNull(event.getRuntimeConfig());
+        assertEquals("id", event.getId());
+    }
+
+    @Test
+    void testJsonConstructorParsesSameBundles() throws Exception {
+        JsonObject message = readMessage();
+
+        SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(message);
+        List<List<Bundle>> bundles = SignAndUploadBundlesEvent.parseBundles(SignAndUploadBundlesEvent.getBundleJsons(message));
+
+        assertEquals(bundles.size(), event.getListOfListOfBundles().size());
+        assertEquals(bundles.get(0).get(0).getIdentifier().getValue(),
+            event.getListOfListOfBundles().get(0).get(0).getIdentifier().getValue());
+        assertEquals("160", event.getFlowtype());
+    }
+}
@@ -0,0 +1,45 @@
+package health.ere.ps.service.common.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.TransformerException;
+
+import org.junit.jupiter.api.Test;
+
+class DigestCacheTest {
+
+    @Test
+    void testSameContentIsLoadedOnce() throws TransformerException {
+        DigestCache<String> cache = new DigestCache<>(1);
+        AtomicInteger renders = new AtomicInteger();
+        DigestCache.Loader<String, TransformerException> renderer = bundleXml -> {
+            renders.incrementAndGet();
+            return "<html>" + bundleXml + "</html>";
+        };
+
+        assertEquals("<html><Bundle/></html>", cache.get("<Bundle/>", renderer));
+        assertEquals("<html><Bundle/></html>", cache.get("<Bundle/>", renderer));
+        assertEquals(1, renders.get());
+
+        // the first content is removed for the second one
+        cache.get("<Bundle><id value=\"2\"/></Bundle>", renderer);
+        cache.get("<Bundle/>", renderer);
+        assertEquals(3, renders.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testMaxSizeZeroDisablesCache() throws TransformerException {
+        DigestCache<String> cache = new DigestCache<>(0);
+        AtomicInteger renders = new AtomicInteger();
+
+        cache.get("<Bundle/>", bundleXml -> "html " + renders.incrementAndGet());
+        cache.get("<Bundle/>", bundleXml -> "html " + renders.incrementAndGet());
+
+        assertEquals(2, renders.get());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,99 @@
+package health.ere.ps.service.connector.cards;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import de.gematik.ws.conn.eventservice.v7.Event;
+import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
+
+class CardEventListenerTest {
+
+    private static final String CARD_INSERTED = "<EVT:Event xmlns:EVT=\"http://ws.gematik.de/conn/EventService/v7.2\">"
+        + "<EVT:Topic>CARD/INSERTED</EVT:Topic><EVT:Type>Operation</EVT:Type><EVT:Severity>Info</EVT:Severity>"
+        + "<EVT:SubscriptionID>1</EVT:SubscriptionID>"
+        + "<EVT:Message><EVT:Parameter><EVT:Key>CardHandle</EVT:Key><EVT:Value>SMC-B-1</EVT:Value></EVT:Parameter></EVT:Message>"
+        + "</EVT:Event>";
+
+    private static DataInputStream cetp(String header, String xml) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] message = xml.getBytes(StandardCharsets.UTF_8);
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(message.length);
+        out.write(message);
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    void testReadEvent() throws Exception {
+        Event event = CardEventListener.readEvent(cetp("CETP", CARD_INSERTED));
+        assertEquals("CARD/INSERTED", event.getTopic());
+    }
+
+    @Test
+    void testReadEventWithInvalidHeader() {
+        assertThrows(IOException.class, () -> CardEventListener.readEvent(cetp("HTTP", CARD_INSERTED)));
+    }
+
+    @Test
+    void testCardEventInvalidatesCardHandles() {
+        CardEventListener cardEventListener = new CardEventListener();
+        cardEventListener.connectorCardsService = mock(ConnectorCardsService.class);
+
+        Event terminalEvent = new Event();
+        terminalEvent.setTopic("CT/CONNECTED");
+        cardEventListener.onEvent(terminalEvent);
+        verify(cardEventListener.connectorCardsService, never()).invalidateAllCardHandles();
+
+        Event cardEvent = new Event();
+        cardEvent.setTopic("CARD/REMOVED");
+        cardEventListener.onEvent(cardEvent);
+        verify(cardEventListener.connectorCardsService).invalidateAllCardHandles();
+    }
+
+    @Test
+    void testOnlyConnectorMayConnect() throws Exception {
+        CardEventListener cardEventListener = new CardEventListener();
+        cardEventListener.connectorCardsService = mock(ConnectorCardsService.class);
+        cardEventListener.connectorServicesProvider = mock(MultiConnectorServicesProvider.class);
+        cardEventListener.cetpPort = Optional.of(0);
+        cardEventListener.host = Optional.of("127.0.0.1");
+        cardEventListener.bindAddress = Optional.empty();
+        cardEventListener.allowedAddresses = Optional.of(List.of("192.0.2.1"));
+        cardEventListener.init();
+        try (Socket socket = new Socket("127.0.0.1", cardEventListener.getLocalPort())) {
+            // the connection is closed without reading the event
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            cardEventListener.destroy();
+        }
+
+        cardEventListener.allowedAddresses = Optional.of(List.of("127.0.0.1"));
+        cardEventListener.init();
+        try (Socket socket = new Socket("127.0.0.1", cardEventListener.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            cetp("CETP", CARD_INSERTED).transferTo(out);
+            out.flush();
+            verify(cardEventListener.connectorCardsService, timeout(5000)).invalidateAllCardHandles();
+        } finally {
+            cardEventListener.destroy();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package health.ere.ps.service.connector.cards;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import de.gematik.ws.conn.cardservice.v8.CardInfoType;
+import de.gematik.ws.tel.error.v2.Error;
+import health.ere.ps.MutableClock;
+import health.ere.ps.config.RuntimeConfig;
+
+class CardHandleCacheTest {
+
+    private static List<CardInfoType> cards(AtomicInteger loads) {
+        loads.incrementAndGet();
+        List<CardInfoType> cards = new ArrayList<>();
+        CardInfoType cardInfoType = new CardInfoType();
+        cardInfoType.setCardHandle("SMC-B-" + loads.get());
+        cards.add(cardInfoType);
+        return cards;
+    }
+
+    private static Error fault(long code) {
+        Error error = new Error();
+        Error.Trace trace = new Error.Trace();
+        trace.setCode(BigInteger.valueOf(code));
+        error.getTrace().add(trace);
+        return error;
+    }
+
+    @Test
+    void testCardsAreCachedPerConfigUntilTtl() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        MutableClock clock = new MutableClock();
+        CardHandleCache cardHandleCache = new CardHandleCache(Duration.ofMinutes(5), 10, clock);
+        RuntimeConfig runtimeConfig = new RuntimeConfig("https://connector.local");
+
+        cardHandleCache.get(null, () -> cards(loads));
+        cardHandleCache.get(null, () -> cards(loads));
+        cardHandleCache.get(runtimeConfig, () -> cards(loads));
+        assertEquals(2, loads.get());
+        assertEquals(1, cardHandleCache.getHits());
+
+        clock.now = clock.now.plus(Duration.ofMinutes(6));
+        assertEquals("SMC-B-3", cardHandleCache.get(null, () -> cards(loads)).get(0).getCardHandle());
+    }
+
+    @Test
+    void testExpiredAndSurplusConfigsAreRemoved() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        MutableClock clock = new MutableClock();
+        CardHandleCache cardHandleCache = new CardHandleCache(Duration.ofMinutes(5), 2, clock);
+
+        cardHandleCache.get("connector1", () -> cards(loads));
+        clock.now = clock.now.plus(Duration.ofMinutes(1));
+        cardHandleCache.get("connector2", () -> cards(loads));
+        clock.now = clock.now.plus(Duration.ofMinutes(1));
+        cardHandleCache.get("connector3", () -> cards(loads));
+        assertEquals(2, cardHandleCache.size());
+        assertEquals(1, cardHandleCache.getEvictions());
+
+        // the entry that expires first is removed, later the expired ones are swept
+        cardHandleCache.get(null, () -> cards(loads));
+        assertEquals(2, cardHandleCache.size());
+        clock.now = clock.now.plus(Duration.ofMinutes(10));
+        cardHandleCache.get(null, () -> cards(loads));
+        assertEquals(1, cardHandleCache.size());
+        assertEquals(0, cardHandleCache.getHits());
+    }
+
+    @Test
+    void testInvalidateOnFault() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CardHandleCache cardHandleCache = new CardHandleCache(Duration.ofMinutes(5), 10, new MutableClock());
+
+        cardHandleCache.get(null, () -> cards(loads));
+        // 5xxx is not a connector fault
+        assertFalse(cardHandleCache.invalidateOnFault(null, fault(5000)));
+        cardHandleCache.get(null, () -> cards(loads));
+        assertEquals(1, loads.get());
+
+        // 4008 card not found
+        assertTrue(cardHandleCache.invalidateOnFault(null, fault(4008)));
+        cardHandleCache.get(null, () -> cards(loads));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testZeroTtlDisablesCache() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CardHandleCache cardHandleCache = new CardHandleCache(Duration.ZERO, 10, new MutableClock());
+
+        cardHandleCache.get(null, () -> cards(loads));
+        cardHandleCache.get(null, () -> cards(loads));
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,75 @@
+package health.ere.ps.service.connector.provider;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.gematik.ws.conn.authsignatureservice.wsdl.v7.AuthSignatureService;
+import de.gematik.ws.conn.cardservice.wsdl.v8.CardService;
+import de.gematik.ws.conn.certificateservice.wsdl.v6.CertificateService;
+import de.gematik.ws.conn.eventservice.wsdl.v7.EventService;
+import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServiceV740;
+import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServiceV755;
+import de.gematik.ws.conn.vsds.vsdservice.v5.VSDService;
+
+/**
+ * Compares the cost of creating the seven connector ports for a new
+ * connector configuration with and without the WSDL cache.
+ * <p>
+ * Run the main method with the test classpath, e.g. from the IDE after
+ * mvn test-compile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ConnectorServiceDefinitionsBenchmark {
+
+    @Setup
+    public void setup() {
+        ConnectorServiceDefinitions.warmUp();
+    }
+
+    @Benchmark
+    public void parseWsdls(Blackhole blackhole) {
+        Class<?> c = getClass();
+        blackhole.consume(new VSDService(c.getResource(ConnectorServiceDefinitions.VSD_SERVICE_WSDL)).getVSDServicePort());
+        blackhole.consume(new CardService(c.getResource(ConnectorServiceDefinitions.CARD_SERVICE_WSDL)).getCardServicePort());
+        blackhole.consume(new CertificateService(c.getResource(ConnectorServiceDefinitions.CERTIFICATE_SERVICE_WSDL)).getCertificateServicePort());
+        blackhole.consume(new EventService(c.getResource(ConnectorServiceDefinitions.EVENT_SERVICE_WSDL)).getEventServicePort());
+        blackhole.consume(new AuthSignatureService(c.getResource(ConnectorServiceDefinitions.AUTH_SIGNATURE_SERVICE_WSDL)).getAuthSignatureServicePort());
+        blackhole.consume(new SignatureServiceV740(c.getResource(ConnectorServiceDefinitions.SIGNATURE_SERVICE_WSDL)).getSignatureServicePortV740());
+        blackhole.consume(new SignatureServiceV755(c.getResource(ConnectorServiceDefinitions.SIGNATURE_SERVICE_V755_WSDL)).getSignatureServicePortTypeV755());
+    }
+
+    @Benchmark
+    public void cachedServiceDefinitions(Blackhole blackhole) {
+        blackhole.consume(ConnectorServiceDefinitions.getVSDService().getVSDServicePort());
+        blackhole.consume(ConnectorServiceDefinitions.getCardService().getCardServicePort());
+        blackhole.consume(ConnectorServiceDefinitions.getCertificateService().getCertificateServicePort());
+        blackhole.consume(ConnectorServiceDefinitions.getEventService().getEventServicePort());
+        blackhole.consume(ConnectorServiceDefinitions.getAuthSignatureService().getAuthSignatureServicePort());
+        blackhole.consume(ConnectorServiceDefinitions.getSignatureServiceV740().getSignatureServicePortV740());
+        blackhole.consume(ConnectorServiceDefinitions.getSignatureServiceV755().getSignatureServicePortTypeV755());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().include(ConnectorServiceDefinitionsBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
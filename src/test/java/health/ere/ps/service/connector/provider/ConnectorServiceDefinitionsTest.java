@@ -0,0 +1,52 @@
+package health.ere.ps.service.connector.provider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import de.gematik.ws.conn.eventservice.wsdl.v7.EventService;
+import de.gematik.ws.conn.eventservice.wsdl.v7.EventServicePortType;
+
+class ConnectorServiceDefinitionsTest {
+
+    @Test
+    void testServiceIsParsedOnce() throws Exception {
+        ConnectorServiceDefinitions.clear();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<EventService>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(ConnectorServiceDefinitions::getEventService));
+            }
+            EventService eventService = futures.get(0).get();
+            for (Future<EventService> future : futures) {
+                assertSame(eventService, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(1, ConnectorServiceDefinitions.size());
+    }
+
+    @Test
+    void testPortsAreCreatedPerCall() {
+        EventServicePortType port1 = ConnectorServiceDefinitions.getEventService().getEventServicePort();
+        EventServicePortType port2 = ConnectorServiceDefinitions.getEventService().getEventServicePort();
+        assertNotSame(port1, port2);
+    }
+
+    @Test
+    void testWarmUp() {
+        ConnectorServiceDefinitions.clear();
+        ConnectorServiceDefinitions.warmUp();
+        assertEquals(7, ConnectorServiceDefinitions.size());
+    }
+}
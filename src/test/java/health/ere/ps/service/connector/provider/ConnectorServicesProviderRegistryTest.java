@@ -0,0 +1,116 @@
+package health.ere.ps.service.connector.provider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.MutableClock;
+import health.ere.ps.config.RuntimeConfig;
+
+class ConnectorServicesProviderRegistryTest {
+
+    @Test
+    void testProviderIsCreatedOnceForConcurrentRequests() throws Exception {
+        AtomicInteger creations = new AtomicInteger();
+        CountDownLatch creating = new CountDownLatch(1);
+        ConnectorServicesProviderRegistry registry = new ConnectorServicesProviderRegistry(userConfig -> {
+            creations.incrementAndGet();
+            creating.countDown();
+            try {
+                // simulates the connector.sds discovery
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return mock(SingleConnectorServicesProvider.class);
+        }, 10, Duration.ofMinutes(10));
+
+        RuntimeConfig runtimeConfig = new RuntimeConfig("https://connector.local");
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SingleConnectorServicesProvider>> futures = new ArrayList<>();
+            futures.add(executorService.submit(() -> registry.get(runtimeConfig)));
+            creating.await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 3; i++) {
+                futures.add(executorService.submit(() -> registry.get(new RuntimeConfig("https://connector.local"))));
+            }
+            for (Future<SingleConnectorServicesProvider> future : futures) {
+                assertSame(futures.get(0).get(), future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(1, creations.get());
+        assertEquals(1, registry.getMisses());
+        assertEquals(3, registry.getHits());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        MutableClock clock = new MutableClock();
+        ConnectorServicesProviderRegistry registry = new ConnectorServicesProviderRegistry(
+            userConfig -> mock(SingleConnectorServicesProvider.class), 2, Duration.ofHours(1), clock);
+
+        SingleConnectorServicesProvider provider1 = registry.get(new RuntimeConfig("https://connector1.local"));
+        clock.now = clock.now.plusSeconds(1);
+        registry.get(new RuntimeConfig("https://connector2.local"));
+        clock.now = clock.now.plusSeconds(1);
+        // connector1 is used again, so connector2 is the least recently used one
+        assertSame(provider1, registry.get(new RuntimeConfig("https://connector1.local")));
+        clock.now = clock.now.plusSeconds(1);
+        registry.get(new RuntimeConfig("https://connector3.local"));
+
+        assertEquals(2, registry.size());
+        assertEquals(1, registry.getEvictions());
+        assertSame(provider1, registry.get(new RuntimeConfig("https://connector1.local")));
+        assertEquals(3, registry.getMisses());
+    }
+
+    @Test
+    void testIdleProviderIsEvicted() {
+        MutableClock clock = new MutableClock();
+        ConnectorServicesProviderRegistry registry = new ConnectorServicesProviderRegistry(
+            userConfig -> mock(SingleConnectorServicesProvider.class), 10, Duration.ofMinutes(10), clock);
+
+        SingleConnectorServicesProvider provider1 = registry.get(new RuntimeConfig("https://connector1.local"));
+        clock.now = clock.now.plus(Duration.ofMinutes(11));
+        registry.get(new RuntimeConfig("https://connector2.local"));
+
+        assertEquals(1, registry.size());
+        assertEquals(1, registry.getEvictions());
+        assertNotSame(provider1, registry.get(new RuntimeConfig("https://connector1.local")));
+    }
+
+    @Test
+    void testIdleProviderIsEvictedWhenOtherProvidersAreUsed() {
+        MutableClock clock = new MutableClock();
+        ConnectorServicesProviderRegistry registry = new ConnectorServicesProviderRegistry(
+            userConfig -> mock(SingleConnectorServicesProvider.class), 10, Duration.ofMinutes(10), clock);
+
+        registry.get(new RuntimeConfig("https://connector1.local"));
+        registry.get(new RuntimeConfig("https://connector2.local"));
+        clock.now = clock.now.plus(Duration.ofMinutes(6));
+        registry.get(new RuntimeConfig("https://connector2.local"));
+        assertEquals(2, registry.size());
+
+        // only hits, the sweep is due after the idle timeout
+        clock.now = clock.now.plus(Duration.ofMinutes(6));
+        registry.get(new RuntimeConfig("https://connector2.local"));
+        assertEquals(1, registry.size());
+        assertEquals(1, registry.getEvictions());
+        assertEquals(2, registry.getMisses());
+    }
+}
@@ -0,0 +1,103 @@
+package health.ere.ps.service.fhir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Compares parsing a prescription bundle with a new FhirContext, as the
+ * events and resources did before, with the shared context of
+ * {@link FhirContextProvider}.
+ * <p>
+ * The main method first prints the heap that a context keeps after it parsed
+ * a bundle, then runs the benchmarks. Run it with the test classpath, e.g.
+ * from the IDE after mvn test-compile. Add "-prof gc" to the JMH options to
+ * see the allocations per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class FhirContextBenchmark {
+
+    private static final String BUNDLE = "/simplifier_erezept/0428d416-149e-48a4-977c-394887b3d85c.xml";
+
+    String bundleXml;
+
+    @Setup
+    public void setup() throws IOException {
+        bundleXml = readBundle();
+        FhirContextProvider.newXmlParser().parseResource(Bundle.class, bundleXml);
+    }
+
+    @Benchmark
+    public Bundle newContext() {
+        return FhirContext.forR4().newXmlParser().parseResource(Bundle.class, bundleXml);
+    }
+
+    @Benchmark
+    public Bundle sharedContext() {
+        return FhirContextProvider.newXmlParser().parseResource(Bundle.class, bundleXml);
+    }
+
+    static String readBundle() throws IOException {
+        try (InputStream in = FhirContextBenchmark.class.getResourceAsStream(BUNDLE)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Measures the heap that stays allocated for every context.
+     */
+    static void printRetainedHeapPerContext(int count) throws IOException {
+        String bundleXml = readBundle();
+        long before = usedHeapAfterGc();
+        long start = System.nanoTime();
+        List<FhirContext> contexts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            FhirContext context = FhirContext.forR4();
+            context.newXmlParser().parseResource(Bundle.class, bundleXml);
+            contexts.add(context);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long after = usedHeapAfterGc();
+        System.out.println(count + " contexts: " + millis / count + " ms and "
+            + (after - before) / count / 1024 / 1024 + " MB heap per context (" + contexts.size() + " kept)");
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws Exception {
+        printRetainedHeapPerContext(5);
+        Options options = new OptionsBuilder().include(FhirContextBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,174 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.MutableClock;
+import health.ere.ps.config.RuntimeConfig;
+
+class BearerTokenCacheTest {
+
+    static String token(Instant expiresAt) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8)) + "."
+            + encoder.encodeToString(("{\"sub\":\"test\",\"exp\":" + expiresAt.getEpochSecond() + "}").getBytes(StandardCharsets.UTF_8))
+            + ".c2lnbmF0dXJl";
+    }
+
+    @Test
+    void testParseExpiry() {
+        Instant expiresAt = Instant.parse("2022-01-01T00:05:00Z");
+        assertEquals(expiresAt, BearerTokenCache.parseExpiry(token(expiresAt)));
+        assertEquals(Instant.EPOCH, BearerTokenCache.parseExpiry("MockedJwt_NotValid"));
+        assertEquals(Instant.EPOCH, BearerTokenCache.parseExpiry(null));
+    }
+
+    @Test
+    void testValidTokenIsReturnedWithoutLogin() {
+        MutableClock clock = new MutableClock();
+        BearerTokenCache cache = new BearerTokenCache(10, Duration.ofHours(1), Duration.ofMinutes(1), clock, Runnable::run);
+        AtomicInteger logins = new AtomicInteger();
+        BearerTokenCache.TokenLoader loader = () -> {
+            logins.incrementAndGet();
+            return token(clock.now.plus(Duration.ofMinutes(5)));
+        };
+
+        String token = cache.get(null, loader, loader);
+        clock.now = clock.now.plus(Duration.ofMinutes(2));
+
+        assertEquals(token, cache.get(null, loader, loader));
+        assertEquals(1, logins.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getRefreshes());
+    }
+
+    @Test
+    void testExpiredTokenIsReplaced() {
+        MutableClock clock = new MutableClock();
+        BearerTokenCache cache = new BearerTokenCache(10, Duration.ofHours(1), Duration.ofMinutes(1), clock, Runnable::run);
+        RuntimeConfig runtimeConfig = new RuntimeConfig("https://connector.local");
+        cache.put(runtimeConfig, token(clock.now.minus(Duration.ofSeconds(1))));
+        String newToken = token(clock.now.plus(Duration.ofMinutes(5)));
+
+        assertEquals(newToken, cache.get(runtimeConfig, () -> newToken, () -> newToken));
+        assertEquals(newToken, cache.get(new RuntimeConfig("https://connector.local")));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testTokenIsRefreshedBeforeItExpires() {
+        MutableClock clock = new MutableClock();
+        List<Runnable> refreshTasks = new ArrayList<>();
+        BearerTokenCache cache = new BearerTokenCache(10, Duration.ofHours(1), Duration.ofMinutes(1), clock, refreshTasks::add);
+        String oldToken = token(clock.now.plus(Duration.ofMinutes(5)));
+        String newToken = token(clock.now.plus(Duration.ofMinutes(10)));
+        cache.put(null, oldToken);
+        clock.now = clock.now.plus(Duration.ofSeconds(250));
+
+        BearerTokenCache.TokenLoader failingLoader = () -> {
+            throw new IllegalStateException("The foreground loader must not be called");
+        };
+        // the old token is still valid, the refresh is only scheduled once
+        assertEquals(oldToken, cache.get(null, failingLoader, () -> newToken));
+        assertEquals(oldToken, cache.get(null, failingLoader, () -> newToken));
+        assertEquals(1, refreshTasks.size());
+
+        refreshTasks.get(0).run();
+
+        assertEquals(newToken, cache.get(null, failingLoader, () -> newToken));
+        assertEquals(1, cache.getRefreshes());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    void testFailedRefreshKeepsToken() {
+        MutableClock clock = new MutableClock();
+        BearerTokenCache cache = new BearerTokenCache(10, Duration.ofHours(1), Duration.ofMinutes(1), clock, Runnable::run);
+        String token = token(clock.now.plus(Duration.ofSeconds(30)));
+        cache.put(null, token);
+
+        assertEquals(token, cache.get(null, () -> token, () -> {
+            throw new IllegalStateException("IDP not reachable");
+        }));
+        assertEquals(token, cache.get(null));
+        assertEquals(1, cache.getRefreshFailures());
+    }
+
+    @Test
+    void testOnlyOneLoginForConcurrentRequests() throws Exception {
+        MutableClock clock = new MutableClock();
+        BearerTokenCache cache = new BearerTokenCache(10, Duration.ofHours(1), Duration.ofMinutes(1), clock, Runnable::run);
+        AtomicInteger logins = new AtomicInteger();
+        CountDownLatch loggingIn = new CountDownLatch(1);
+        BearerTokenCache.TokenLoader loader = () -> {
+            logins.incrementAndGet();
+            loggingIn.countDown();
+            try {
+                // simulates the IDP login
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // not a JWT, a waiting thread must use it anyway
+            return "MockedJwt_NotValid";
+        };
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            futures.add(executorService.submit(() -> cache.get(null, loader, loader)));
+            loggingIn.await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 3; i++) {
+                futures.add(executorService.submit(() -> cache.get(null, loader, loader)));
+            }
+            for (Future<String> future : futures) {
+                assertEquals("MockedJwt_NotValid", future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(1, logins.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(3, cache.getHits());
+    }
+
+    @Test
+    void testLeastRecentlyUsedAndIdleTokensAreRemoved() {
+        MutableClock clock = new MutableClock();
+        BearerTokenCache cache = new BearerTokenCache(2, Duration.ofMinutes(30), Duration.ofMinutes(1), clock, Runnable::run);
+        RuntimeConfig first = new RuntimeConfig("https://first.local");
+        RuntimeConfig second = new RuntimeConfig("https://second.local");
+        RuntimeConfig third = new RuntimeConfig("https://third.local");
+
+        cache.put(first, token(clock.now.plus(Duration.ofHours(2))));
+        clock.now = clock.now.plusSeconds(1);
+        cache.put(second, token(clock.now.plus(Duration.ofHours(2))));
+        clock.now = clock.now.plusSeconds(1);
+        cache.put(third, token(clock.now.plus(Duration.ofHours(2))));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(first));
+
+        clock.now = clock.now.plus(Duration.ofMinutes(31));
+        cache.put(first, token(clock.now.plus(Duration.ofHours(2))));
+
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getEvictions());
+    }
+}
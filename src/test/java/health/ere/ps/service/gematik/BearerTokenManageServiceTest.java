@@ -6,10 +6,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import javax.websocket.Session;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -37,29 +36,29 @@ public class BearerTokenManageServiceTest {
 
     @Test
     public void testRequestNewAccessTokenWithExistingButExpiredToken() {
-        Map<RuntimeConfig, String> configMap = new HashMap<>();
-        configMap.put(mockRuntimeConfig, EXPIRED_JWT);
-        bearerTokenManageService.bearerToken = configMap;
+        BearerTokenCache bearerTokenCache = bearerTokenManageService.bearerTokenCache;
+        bearerTokenCache.put(mockRuntimeConfig, EXPIRED_JWT);
 
-        assertEquals(configMap.size(), 1);
-        assertEquals(configMap.get(mockRuntimeConfig), EXPIRED_JWT);
+        assertEquals(bearerTokenCache.size(), 1);
+        assertEquals(bearerTokenCache.get(mockRuntimeConfig), EXPIRED_JWT);
 
         bearerTokenManageService.requestNewAccessTokenIfNecessary(mockRuntimeConfig, mockSession, "someId");
 
-        assertEquals(configMap.size(), 1);
-        assertEquals(configMap.get(mockRuntimeConfig), MOCK_JWT);
+        assertEquals(bearerTokenCache.size(), 1);
+        assertEquals(bearerTokenCache.get(mockRuntimeConfig), MOCK_JWT);
+        verify(mockBearerTokenService).requestBearerToken(mockRuntimeConfig, mockSession, "someId");
     }
 
     @Test
     public void testRequestNewAccessTokenWithoutExistingToken() {
-        Map<RuntimeConfig, String> bearerTokenMap = bearerTokenManageService.bearerToken;
+        BearerTokenCache bearerTokenCache = bearerTokenManageService.bearerTokenCache;
 
-        assertEquals(bearerTokenMap.size(), 0);
+        assertEquals(bearerTokenCache.size(), 0);
 
         bearerTokenManageService.requestNewAccessTokenIfNecessary(mockRuntimeConfig, mockSession, "someId");
 
-        assertEquals(bearerTokenMap.size(), 1);
-        assertEquals(bearerTokenMap.get(mockRuntimeConfig), MOCK_JWT);
+        assertEquals(bearerTokenCache.size(), 1);
+        assertEquals(bearerTokenCache.get(mockRuntimeConfig), MOCK_JWT);
     }
 
     @Test
@@ -70,15 +69,28 @@ public class BearerTokenManageServiceTest {
         parts[1] = Base64.getEncoder().encodeToString(decodedValidTokenPart.getBytes());
         String encodedValidToken = String.join(".", parts);
 
-        Map<RuntimeConfig, String> bearerTokenMap = bearerTokenManageService.bearerToken;
-        bearerTokenMap.put(mockRuntimeConfig, encodedValidToken);
+        BearerTokenCache bearerTokenCache = bearerTokenManageService.bearerTokenCache;
+        bearerTokenCache.put(mockRuntimeConfig, encodedValidToken);
 
-        assertEquals(bearerTokenMap.size(), 1);
-        assertEquals(bearerTokenMap.get(mockRuntimeConfig), encodedValidToken);
+        assertEquals(bearerTokenCache.size(), 1);
+        assertEquals(bearerTokenCache.get(mockRuntimeConfig), encodedValidToken);
 
         bearerTokenManageService.requestNewAccessTokenIfNecessary(mockRuntimeConfig, mockSession, "someId");
 
-        assertEquals(bearerTokenMap.size(), 1);
-        assertEquals(bearerTokenMap.get(mockRuntimeConfig), encodedValidToken);
+        assertEquals(bearerTokenCache.size(), 1);
+        assertEquals(bearerTokenCache.get(mockRuntimeConfig), encodedValidToken);
+        verify(mockBearerTokenService, never()).requestBearerToken(any(), any(), anyString());
+    }
+
+    @Test
+    public void testRequestNewAccessTokenReturnsTokenThatWasEvicted() {
+        // only one token is kept, the second config evicts one of them
+        bearerTokenManageService.bearerTokenCache = new BearerTokenCache(1, Duration.ofHours(1), Duration.ofMinutes(1));
+        RuntimeConfig otherRuntimeConfig = mock(RuntimeConfig.class);
+
+        assertEquals(MOCK_JWT, bearerTokenManageService.requestNewAccessTokenIfNecessary(mockRuntimeConfig, mockSession, "someId"));
+        assertEquals(MOCK_JWT, bearerTokenManageService.requestNewAccessTokenIfNecessary(otherRuntimeConfig, mockSession, "someId"));
+
+        assertEquals(1, bearerTokenManageService.getBearerTokenCache().size());
     }
 }
@@ -3,25 +3,43 @@ package health.ere.ps.service.gematik;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.enterprise.event.Event;
+import javax.websocket.Session;
 
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Coverage;
 import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.Identifier.IdentifierUse;
 import org.hl7.fhir.r4.model.Task;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import de.gematik.ws.conn.signatureservice.v7.SignResponse;
+import oasis.names.tc.dss._1_0.core.schema.Base64Signature;
+import oasis.names.tc.dss._1_0.core.schema.SignatureObject;
+
 import de.gematik.ws.conn.connectorcontext.v2.ContextType;
 import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV755;
+import health.ere.ps.config.AppConfig;
+import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.event.ActivateComfortSignatureEvent;
 import health.ere.ps.event.GetSignatureModeResponseEvent;
 import health.ere.ps.exception.gematik.ERezeptWorkflowException;
+import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
 import health.ere.ps.service.connector.cards.ConnectorCardsService;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
 
@@ -142,4 +160,133 @@ public class ERezeptWorkflowServiceUnitTest {
         assertNull(bundle.getIdentifier().getUse());
         assertEquals(bundle.getIdentifier().getSystem(), ERezeptWorkflowService.EREZEPT_IDENTIFIER_SYSTEM);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCreateMultipleERezeptsOnPrescriptionServerInParallel() {
+        int numberOfBundles = 5;
+        CountDownLatch allCreatesStarted = new CountDownLatch(numberOfBundles);
+        AtomicInteger createCalls = new AtomicInteger();
+        AtomicInteger activateCalls = new AtomicInteger();
+        RuntimeException createError = new RuntimeException("Create failed");
+        RuntimeException activateError = new RuntimeException("Activate failed");
+
+        ERezeptWorkflowService eRezeptWorkflowServiceUnit = new ERezeptWorkflowService() {
+            @Override
+            public String requestNewAccessTokenIfNecessary(RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
+                return "token";
+            }
+
+            @Override
+            public Task createERezeptTask(boolean firstTry, RuntimeConfig runtimeConfig, String flowtype) {
+                int number = createCalls.getAndIncrement();
+                allCreatesStarted.countDown();
+                try {
+                    // all $create calls have to run at the same time
+                    assertTrue(allCreatesStarted.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                if(number == 1) {
+                    throw createError;
+                }
+                Task task = new Task();
+                task.addIdentifier().setSystem(EREZEPT_IDENTIFIER_SYSTEM_GEM).setValue("PrescriptionId-" + number);
+                task.addIdentifier().setSystem(EREZEPT_ACCESS_CODE_SYSTEM_GEM).setValue("AccessCode-" + number);
+                return task;
+            }
+
+            @Override
+            public List<SignResponse> signBundleWithIdentifiers(List<Bundle> bundles, boolean wait10secondsAfterJobNumber, RuntimeConfig runtimeConfig, Session replyTo, String replyToMessageId) {
+                assertEquals(numberOfBundles - 1, bundles.size());
+                List<SignResponse> signResponses = new ArrayList<>();
+                for(Bundle bundle : bundles) {
+                    SignResponse signResponse = new SignResponse();
+                    SignatureObject signatureObject = new SignatureObject();
+                    Base64Signature base64Signature = new Base64Signature();
+                    base64Signature.setValue(("Signature-" + bundle.getIdentifier().getValue()).getBytes());
+                    signatureObject.setBase64Signature(base64Signature);
+                    signResponse.setSignatureObject(signatureObject);
+                    signResponses.add(signResponse);
+                }
+                return signResponses;
+            }
+
+            @Override
+            public void updateERezeptTask(Task task, String accessCode, byte[] signedBytes, RuntimeConfig runtimeConfig) {
+                activateCalls.incrementAndGet();
+                assertEquals("Signature-" + getPrescriptionId(task), new String(signedBytes));
+                if("AccessCode-3".equals(accessCode)) {
+                    throw activateError;
+                }
+            }
+        };
+        AppConfig appConfig = mock(AppConfig.class);
+        when(appConfig.getTaskParallelism()).thenReturn(numberOfBundles);
+        eRezeptWorkflowServiceUnit.appConfig = appConfig;
+        eRezeptWorkflowServiceUnit.taskExecutor = Executors.newCachedThreadPool();
+
+        List<Bundle> bundles = new ArrayList<>();
+        for(int i = 0; i < numberOfBundles; i++) {
+            bundles.add(new Bundle());
+        }
+
+        List<BundleWithAccessCodeOrThrowable> result = eRezeptWorkflowServiceUnit.createMultipleERezeptsOnPrescriptionServer(bundles, "160", null, null, null);
+        eRezeptWorkflowServiceUnit.taskExecutor.shutdown();
+
+        assertEquals(numberOfBundles, result.size());
+        assertEquals(numberOfBundles - 1, activateCalls.get());
+        int createErrors = 0;
+        int activateErrors = 0;
+        for(int i = 0; i < numberOfBundles; i++) {
+            BundleWithAccessCodeOrThrowable bundleWithAccessCode = result.get(i);
+            if(bundleWithAccessCode.getThrowable() == createError) {
+                createErrors++;
+                assertNull(bundleWithAccessCode.getAccessCode());
+                continue;
+            }
+            // the bundle in every slot has to match its task
+            assertSame(bundles.get(i), bundleWithAccessCode.getBundle());
+            String number = bundleWithAccessCode.getAccessCode().substring("AccessCode-".length());
+            assertEquals("PrescriptionId-" + number, bundleWithAccessCode.getBundle().getIdentifier().getValue());
+            assertEquals("Signature-PrescriptionId-" + number, new String(bundleWithAccessCode.getSignedBundle()));
+            if(bundleWithAccessCode.getThrowable() == activateError) {
+                activateErrors++;
+                assertEquals("3", number);
+            } else {
+                assertNull(bundleWithAccessCode.getThrowable());
+            }
+        }
+        assertEquals(1, createErrors);
+        assertEquals(1, activateErrors);
+    }
+
+    @Test
+    void testGetTaskParallelismIsClampedToThePoolSize() {
+        ERezeptWorkflowService eRezeptWorkflowServiceUnit = new ERezeptWorkflowService();
+        AppConfig appConfig = mock(AppConfig.class);
+        when(appConfig.getTaskParallelism()).thenReturn(4);
+        when(appConfig.getMaxTaskParallelism()).thenReturn(16);
+        eRezeptWorkflowServiceUnit.appConfig = appConfig;
+
+        RuntimeConfig runtimeConfig = mock(RuntimeConfig.class);
+        when(runtimeConfig.getTaskParallelism()).thenReturn(null);
+        assertEquals(4, eRezeptWorkflowServiceUnit.getTaskParallelism(runtimeConfig));
+        when(runtimeConfig.getTaskParallelism()).thenReturn(8);
+        assertEquals(8, eRezeptWorkflowServiceUnit.getTaskParallelism(runtimeConfig));
+        when(runtimeConfig.getTaskParallelism()).thenReturn(10000);
+        assertEquals(16, eRezeptWorkflowServiceUnit.getTaskParallelism(runtimeConfig));
+        when(runtimeConfig.getTaskParallelism()).thenReturn(-1);
+        assertEquals(1, eRezeptWorkflowServiceUnit.getTaskParallelism(runtimeConfig));
+    }
+
+    @Test
+    void testGetFlowtype() {
+        Bundle bundle = new Bundle();
+        assertEquals("160", ERezeptWorkflowService.getFlowtype(bundle, "160"));
+        Coverage coverage = new Coverage();
+        coverage.getType().addCoding().setCode("PKV");
+        bundle.addEntry().setResource(coverage);
+        assertEquals("200", ERezeptWorkflowService.getFlowtype(bundle, "160"));
+        assertEquals("169", ERezeptWorkflowService.getFlowtype(bundle, "169"));
+    }
+}
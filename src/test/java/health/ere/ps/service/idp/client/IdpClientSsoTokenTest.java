@@ -0,0 +1,138 @@
+package health.ere.ps.service.idp.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Base64;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.exception.idp.IdpClientException;
+import health.ere.ps.model.idp.client.AuthenticationResponse;
+import health.ere.ps.model.idp.client.AuthorizationResponse;
+import health.ere.ps.model.idp.client.DiscoveryDocumentResponse;
+import health.ere.ps.model.idp.client.IdpTokenResult;
+import health.ere.ps.model.idp.client.authentication.AuthenticationChallenge;
+import health.ere.ps.model.idp.client.token.JsonWebToken;
+import health.ere.ps.service.connector.auth.SmcbAuthenticatorService;
+
+class IdpClientSsoTokenTest {
+
+    static {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    private static final String SSO_TOKEN = "eyJlbmMiOiJBMjU2R0NNIn0.sso.token";
+
+    IdpClient idpClient;
+    AuthenticatorClient authenticatorClient;
+    SmcbAuthenticatorService smcbAuthenticatorService;
+    X509Certificate certificate;
+    IdpTokenResult idpTokenResult = new IdpTokenResult();
+
+    @BeforeEach
+    void init() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC", BouncyCastleProvider.PROVIDER_NAME);
+        keyPairGenerator.initialize(ECNamedCurveTable.getParameterSpec("brainpoolP256r1"));
+        KeyPair idpEncKeyPair = keyPairGenerator.generateKeyPair();
+        KeyPair smcbKeyPair = keyPairGenerator.generateKeyPair();
+
+        authenticatorClient = mock(AuthenticatorClient.class);
+        smcbAuthenticatorService = mock(SmcbAuthenticatorService.class);
+        certificate = mock(X509Certificate.class);
+        when(certificate.getPublicKey()).thenReturn(smcbKeyPair.getPublic());
+
+        when(authenticatorClient.retrieveDiscoveryDocument("https://idp.local/.well-known/openid-configuration"))
+            .thenReturn(DiscoveryDocumentResponse.builder()
+                .authorizationEndpoint("https://idp.local/sign_response")
+                .tokenEndpoint("https://idp.local/token")
+                .idpEnc(idpEncKeyPair.getPublic())
+                .build());
+        String challenge = base64("{\"alg\":\"BP256R1\"}") + "." + base64("{\"nonce\":\"test\"}") + ".c2ln";
+        when(authenticatorClient.doAuthorizationRequest(any())).thenReturn(AuthorizationResponse.builder()
+            .authenticationChallenge(new AuthenticationChallenge(new JsonWebToken(challenge), null))
+            .build());
+        when(authenticatorClient.performAuthentication(any())).thenReturn(AuthenticationResponse.builder()
+            .code("code")
+            .location("https://ere.health/redirect_uri?code=code&ssotoken=" + SSO_TOKEN)
+            .ssoToken(SSO_TOKEN)
+            .build());
+        when(authenticatorClient.performAuthenticationWithSsoToken(any())).thenReturn(AuthenticationResponse.builder()
+            .code("code")
+            .location("https://ere.health/redirect_uri?code=code")
+            .build());
+        when(authenticatorClient.retrieveAccessToken(any())).thenReturn(idpTokenResult);
+        // the card signature is not checked, the IDP is mocked
+        when(smcbAuthenticatorService.signIdpChallenge(any(), any())).thenAnswer(invocation -> {
+            Pair<String, String> jwtPair = invocation.getArgument(0);
+            return jwtPair.getLeft() + "." + jwtPair.getRight() + ".c2ln";
+        });
+
+        idpClient = new IdpClient();
+        idpClient.authenticatorClient = authenticatorClient;
+        idpClient.smcbAuthenticatorService = smcbAuthenticatorService;
+        idpClient.logger = Logger.getLogger(IdpClient.class);
+        idpClient.prescriptionServiceURL = "https://erp.local";
+        idpClient.ssoTokenValidity = Duration.ofHours(11);
+        idpClient.init("clientId", "https://ere.health/redirect_uri", "https://idp.local/.well-known/openid-configuration", false);
+        idpClient.initializeClient();
+    }
+
+    @Test
+    void testSecondLoginUsesSsoToken() throws Exception {
+        assertSame(idpTokenResult, idpClient.login(certificate, null));
+        assertSame(idpTokenResult, idpClient.login(certificate, null));
+
+        verify(smcbAuthenticatorService, times(1)).signIdpChallenge(any(), any());
+        verify(authenticatorClient).performAuthenticationWithSsoToken(argThat(request -> SSO_TOKEN.equals(request.getSsoToken())));
+        verify(authenticatorClient, times(2)).retrieveAccessToken(argThat(request -> SSO_TOKEN.equals(request.getSsoToken())));
+        assertEquals(1, idpClient.getCardLogins());
+        assertEquals(1, idpClient.getSsoTokenLogins());
+    }
+
+    @Test
+    void testFailedSsoTokenLoginFallsBackToCard() throws Exception {
+        when(authenticatorClient.performAuthenticationWithSsoToken(any()))
+            .thenThrow(new IdpClientException("SSO token expired"));
+
+        idpClient.login(certificate, null);
+        assertSame(idpTokenResult, idpClient.login(certificate, null));
+
+        verify(smcbAuthenticatorService, times(2)).signIdpChallenge(any(), any());
+        assertEquals(2, idpClient.getCardLogins());
+        assertEquals(1, idpClient.getSsoTokenFailures());
+    }
+
+    @Test
+    void testExpiredSsoTokenIsNotUsed() throws Exception {
+        idpClient.ssoTokenValidity = Duration.ZERO;
+
+        idpClient.login(certificate, null);
+        idpClient.login(certificate, null);
+
+        verify(authenticatorClient, never()).performAuthenticationWithSsoToken(any());
+        verify(smcbAuthenticatorService, times(2)).signIdpChallenge(any(), any());
+    }
+
+    private static String base64(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,10 +1,15 @@
 package health.ere.ps.service.kbv;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import javax.xml.transform.TransformerException;
@@ -66,6 +71,49 @@ public class XSLTServiceTest {
         }
     }
 
+    @Test
+    public void testGenerateHTMLConcurrently() throws Exception {
+        List<Bundle> bundles = new ArrayList<>();
+        for (Integer number : List.of(1, 2, 3, 4)) {
+            bundles.add(parser.parseResource(Bundle.class, getXmlString(String.format("src/test/resources/kbv-zip/PF%02d.xml", number))));
+        }
+        XSLTService xsltService = new XSLTService();
+        xsltService.htmlCacheMaxSize = 0;
+        xsltService.init();
+        List<String> expected = new ArrayList<>();
+        for (Bundle bundle : bundles) {
+            expected.add(xsltService.generateHtmlForBundle(bundle));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                Bundle bundle = bundles.get(i % bundles.size());
+                results.add(executor.submit(() -> xsltService.generateHtmlForBundle(bundle)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(expected.get(i % bundles.size()), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSameBundleIsTransformedOnce() throws IOException, TransformerException {
+        Bundle bundle = parser.parseResource(Bundle.class, getXmlString("src/test/resources/kbv-zip/PF01.xml"));
+        XSLTService xsltService = new XSLTService();
+        xsltService.init();
+
+        String preview = xsltService.generateHtmlForBundle(bundle);
+        String signingView = xsltService.generateHtmlForBundle(bundle);
+
+        assertEquals(preview, signingView);
+        assertEquals(1, xsltService.getHtmlRenderCache().getMisses());
+        assertEquals(1, xsltService.getHtmlRenderCache().getHits());
+    }
+
     private String getXmlString(String string) throws IOException {
         return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"+Files.readString(Paths.get(string));
     }
@@ -0,0 +1,82 @@
+package health.ere.ps.service.pdf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.fop.apps.FOPException;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
+import health.ere.ps.service.fhir.FhirContextProvider;
+
+/**
+ * Measures the PDFs for 1, 9 and 27 prescriptions. As in
+ * {@link DocumentService#onBundlesWithAccessCodes} a PDF contains at most
+ * 9 prescriptions, so 27 prescriptions are 3 PDFs.
+ * <p>
+ * Run the main method with the test classpath, e.g. from the IDE after mvn
+ * test-compile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class DocumentServiceBenchmark {
+
+    @Param({"1", "9", "27"})
+    int prescriptions;
+
+    DocumentService documentService;
+    List<BundleWithAccessCodeOrThrowable> bundles;
+
+    @Setup
+    public void setup() throws IOException {
+        documentService = new DocumentService();
+        // the JMH warm-up iterations render the first PDFs
+        documentService.warmUp = false;
+        documentService.init();
+        bundles = new ArrayList<>();
+        for (int i = 0; i < prescriptions; i++) {
+            String template = "/examples_erezept/Erezept_template_" + (i % 5 + 1) + ".xml";
+            try (InputStream in = DocumentServiceBenchmark.class.getResourceAsStream(template)) {
+                Bundle bundle = FhirContextProvider.newXmlParser().parseResource(Bundle.class, in);
+                bundles.add(new BundleWithAccessCodeOrThrowable(bundle, "MOCK_CODE"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void generateERezeptPdfs(Blackhole blackhole) throws IOException, FOPException, TransformerException {
+        for (int i = 0; i < bundles.size(); i += DocumentService.MAX_NUMBER_OF_MEDICINES_PER_PRESCRIPTIONS) {
+            blackhole.consume(documentService.generateERezeptPdf(bundles.subList(i,
+                Math.min(i + DocumentService.MAX_NUMBER_OF_MEDICINES_PER_PRESCRIPTIONS, bundles.size()))));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().include(DocumentServiceBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
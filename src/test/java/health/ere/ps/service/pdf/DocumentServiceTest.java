@@ -1,5 +1,6 @@
 package health.ere.ps.service.pdf;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.ByteArrayOutputStream;
@@ -24,6 +25,7 @@ import org.hl7.fhir.r4.model.Bundle;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import ca.uhn.fhir.context.ConfigurationException;
@@ -32,6 +34,7 @@ import ca.uhn.fhir.parser.DataFormatException;
 import health.ere.ps.event.BundlesWithAccessCodeEvent;
 import health.ere.ps.event.ERezeptWithDocumentsEvent;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
+import health.ere.ps.model.pdf.ERezeptDocument;
 import health.ere.ps.profile.TitusTestProfile;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.junit.TestProfile;
@@ -109,7 +112,15 @@ public class DocumentServiceTest {
         documentService.onBundlesWithAccessCodes(new BundlesWithAccessCodeEvent(List.of(bundles)));
 
         // THEN2
-        Mockito.verify(mockedEvent, Mockito.times(2)).fireAsync(Mockito.any());
+        // both documents are sent with one event in the order of the bundles
+        ArgumentCaptor<ERezeptWithDocumentsEvent> eventCaptor = ArgumentCaptor.forClass(ERezeptWithDocumentsEvent.class);
+        Mockito.verify(mockedEvent, Mockito.times(1)).fireAsync(eventCaptor.capture());
+        List<ERezeptDocument> documents = eventCaptor.getValue().getERezeptWithDocuments();
+        assertEquals(2, documents.size());
+        assertEquals(bundles.subList(0, maxNumberOfMedicationsPerPrescription),
+                documents.get(0).getBundleWithAccessCodeOrThrowables());
+        assertEquals(bundles.subList(maxNumberOfMedicationsPerPrescription, bundles.size()),
+                documents.get(1).getBundleWithAccessCodeOrThrowables());
     }
 
     @Test
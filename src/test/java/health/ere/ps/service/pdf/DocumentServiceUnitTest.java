@@ -0,0 +1,66 @@
+package health.ere.ps.service.pdf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import javax.enterprise.event.Event;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import health.ere.ps.event.BundlesWithAccessCodeEvent;
+import health.ere.ps.event.ERezeptWithDocumentsEvent;
+import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
+import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
+
+public class DocumentServiceUnitTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedGroupDoesNotDropTheOtherDocuments() throws Exception {
+        DocumentService documentService = spy(new DocumentService());
+        documentService.eRezeptDocumentsEvent = mock(Event.class);
+        documentService.exceptionEvent = mock(Event.class);
+        documentService.pdfExecutor = Executors.newFixedThreadPool(2);
+
+        BundleWithAccessCodeOrThrowable first = new BundleWithAccessCodeOrThrowable(new Bundle(), "1");
+        BundleWithAccessCodeOrThrowable failing = new BundleWithAccessCodeOrThrowable(new Bundle(), "2");
+        BundleWithAccessCodeOrThrowable last = new BundleWithAccessCodeOrThrowable(new Bundle(), "3");
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        pdf.write(new byte[] {1});
+        doReturn(pdf).when(documentService).generateERezeptPdf(any());
+        IllegalStateException renderError = new IllegalStateException("render failed");
+        doThrow(renderError).when(documentService).generateERezeptPdf(argThat(bundles -> bundles.contains(failing)));
+
+        try {
+            documentService.onBundlesWithAccessCodes(new BundlesWithAccessCodeEvent(
+                List.of(List.of(first), List.of(failing), List.of(last)), null, "42"));
+
+            ArgumentCaptor<ERezeptWithDocumentsEvent> documents = ArgumentCaptor.forClass(ERezeptWithDocumentsEvent.class);
+            verify(documentService.eRezeptDocumentsEvent, timeout(5000)).fireAsync(documents.capture());
+            assertEquals(2, documents.getValue().getERezeptWithDocuments().size());
+            assertEquals(List.of(first), documents.getValue().getERezeptWithDocuments().get(0).getBundleWithAccessCodeOrThrowables());
+            assertEquals(List.of(last), documents.getValue().getERezeptWithDocuments().get(1).getBundleWithAccessCodeOrThrowables());
+
+            ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+            verify(documentService.exceptionEvent).fireAsync(exception.capture());
+            assertSame(renderError, ((ExceptionWithReplyToExcetion) exception.getValue()).getException());
+            assertEquals("42", ((ExceptionWithReplyToExcetion) exception.getValue()).getMessageId());
+        } finally {
+            documentService.pdfExecutor.shutdown();
+        }
+    }
+}
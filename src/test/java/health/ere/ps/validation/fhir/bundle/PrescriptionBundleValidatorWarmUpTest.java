@@ -0,0 +1,125 @@
+package health.ere.ps.validation.fhir.bundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.ValidationResult;
+import health.ere.ps.exception.bundle.ValidatorNotReadyException;
+import health.ere.ps.service.fhir.FhirContextProvider;
+
+class PrescriptionBundleValidatorWarmUpTest {
+
+    static class BlockingPrescriptionBundleValidator extends PrescriptionBundleValidator {
+        final CountDownLatch createValidator = new CountDownLatch(1);
+        final FhirValidator fhirValidator = mock(FhirValidator.class);
+        RuntimeException createException;
+
+        BlockingPrescriptionBundleValidator(Duration warmUpTimeout) {
+            this.warmUpTimeout = warmUpTimeout;
+            this.parallelism = 1;
+            this.resultCacheMaxSize = 10;
+            when(fhirValidator.validateWithResult(anyString()))
+                .thenReturn(new ValidationResult(FhirContextProvider.getFhirContext(), Collections.emptyList()));
+        }
+
+        @Override
+        VersionedValidatorRegistry createValidators() {
+            try {
+                createValidator.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (createException != null) {
+                throw createException;
+            }
+            return new VersionedValidatorRegistry(Map.of("1.1.0", fhirValidator));
+        }
+    }
+
+    @Test
+    void testValidationBeforeWarmUpFailsAfterTimeout() {
+        BlockingPrescriptionBundleValidator validator = new BlockingPrescriptionBundleValidator(Duration.ofMillis(50));
+        validator.init();
+        try {
+            assertFalse(validator.isReady());
+            assertTrue(validator.getWarmUpStatus().startsWith("Warming up"));
+            assertThrows(ValidatorNotReadyException.class, () -> validator.validateBundle("{\"resourceType\":\"Bundle\"}"));
+        } finally {
+            validator.createValidator.countDown();
+            validator.destroy();
+        }
+    }
+
+    @Test
+    void testValidationWaitsForWarmUp() throws Exception {
+        BlockingPrescriptionBundleValidator validator = new BlockingPrescriptionBundleValidator(Duration.ofSeconds(5));
+        validator.init();
+        try {
+            CompletableFuture<String> result = CompletableFuture.supplyAsync(
+                () -> validator.validateBundle("{\"resourceType\":\"Bundle\"}").build().toString());
+            validator.createValidator.countDown();
+
+            assertEquals("{\"valid\":true}", result.get(5, TimeUnit.SECONDS));
+            assertTrue(validator.isReady());
+            assertTrue(validator.getWarmUpStatus().startsWith("Ready after"));
+        } finally {
+            validator.destroy();
+        }
+    }
+
+    @Test
+    void testFailedWarmUpIsReported() {
+        BlockingPrescriptionBundleValidator validator = new BlockingPrescriptionBundleValidator(Duration.ofSeconds(5));
+        validator.createException = new IllegalStateException("KBV profiles not found");
+        validator.createValidator.countDown();
+        validator.init();
+        try {
+            ValidatorNotReadyException exception = assertThrows(ValidatorNotReadyException.class,
+                () -> validator.validateBundle("{\"resourceType\":\"Bundle\"}"));
+
+            assertTrue(exception.getMessage().contains("KBV profiles not found"));
+            assertFalse(validator.isReady());
+            assertTrue(validator.getWarmUpStatus().startsWith("Warm-up failed"));
+        } finally {
+            validator.destroy();
+        }
+    }
+
+    @Test
+    void testWarmUpUsesTheBundleOfTheVersion() {
+        FhirValidator fhirValidator = mock(FhirValidator.class);
+        new PrescriptionBundleValidator().warmUp(fhirValidator, "1.0.2");
+
+        ArgumentCaptor<String> bundle = ArgumentCaptor.forClass(String.class);
+        verify(fhirValidator).validateWithResult(bundle.capture());
+        assertTrue(bundle.getValue().contains("KBV_PR_ERP_Bundle|1.0.2"));
+        assertTrue(bundle.getValue().contains("KBV_PR_FOR_Patient|1.0.3"));
+        assertFalse(bundle.getValue().contains("|1.1.0"));
+    }
+
+    @Test
+    void testWarmUpIsSkippedForUnknownVersion() {
+        FhirValidator fhirValidator = mock(FhirValidator.class);
+        new PrescriptionBundleValidator().warmUp(fhirValidator, "KBV_FHIR_eRP_V9_9_9");
+
+        verifyNoInteractions(fhirValidator);
+    }
+}
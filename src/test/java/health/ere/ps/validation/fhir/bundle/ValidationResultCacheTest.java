@@ -0,0 +1,106 @@
+package health.ere.ps.validation.fhir.bundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonValue;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.service.common.util.DigestCache.Loader;
+
+class ValidationResultCacheTest {
+
+    @Test
+    void testContentHashIsCanonical() {
+        String bundle = "{\"resourceType\":\"Bundle\",\"id\":\"1\",\"entry\":[{\"fullUrl\":\"a\"},{\"fullUrl\":\"b\"}]}";
+        String reordered = "{ \"id\": \"1\",\n  \"entry\": [ {\"fullUrl\": \"a\"}, {\"fullUrl\": \"b\"} ], \"resourceType\": \"Bundle\" }";
+        String otherOrderOfEntries = "{\"resourceType\":\"Bundle\",\"id\":\"1\",\"entry\":[{\"fullUrl\":\"b\"},{\"fullUrl\":\"a\"}]}";
+
+        assertEquals(ValidationResultCache.contentHash(bundle), ValidationResultCache.contentHash(reordered));
+        assertNotEquals(ValidationResultCache.contentHash(bundle), ValidationResultCache.contentHash(otherOrderOfEntries));
+        assertNotEquals(ValidationResultCache.contentHash("{\"value\":1}"), ValidationResultCache.contentHash("{\"value\":\"1\"}"));
+        assertEquals(ValidationResultCache.contentHash("<Bundle/>"), ValidationResultCache.contentHash("<Bundle/>"));
+    }
+
+    @Test
+    void testSameBundleIsValidatedOnce() {
+        ValidationResultCache cache = new ValidationResultCache(10);
+        AtomicInteger validations = new AtomicInteger();
+        Loader<List<String>, RuntimeException> validator = bundle -> {
+            validations.incrementAndGet();
+            return List.of("error");
+        };
+
+        assertEquals(List.of("error"), cache.get("{\"id\":\"1\",\"type\":\"document\"}", validator));
+        assertEquals(List.of("error"), cache.get("{\"type\":\"document\",\"id\":\"1\"}", validator));
+
+        assertEquals(1, validations.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate());
+    }
+
+    @Test
+    void testParsedBundleHasTheSameKey() {
+        String bundleJson = "{\"type\":\"document\",\"id\":\"1\",\"total\":1.50}";
+        JsonValue bundle = Json.createReader(new StringReader(bundleJson)).readValue();
+        assertEquals(ValidationResultCache.contentHash(bundleJson), ValidationResultCache.contentHash(bundle));
+
+        ValidationResultCache cache = new ValidationResultCache(10);
+        AtomicInteger validations = new AtomicInteger();
+        Loader<List<String>, RuntimeException> validator = content -> {
+            validations.incrementAndGet();
+            assertEquals(bundleJson, content);
+            return List.of();
+        };
+
+        cache.get(bundleJson, validator);
+        cache.get(bundle, bundleJson, validator);
+
+        assertEquals(1, validations.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void testLeastRecentlyUsedResultIsRemoved() {
+        ValidationResultCache cache = new ValidationResultCache(2);
+        AtomicInteger validations = new AtomicInteger();
+        Loader<List<String>, RuntimeException> validator = bundle -> {
+            validations.incrementAndGet();
+            return List.of();
+        };
+
+        cache.get("{\"id\":\"1\"}", validator);
+        cache.get("{\"id\":\"2\"}", validator);
+        cache.get("{\"id\":\"1\"}", validator);
+        cache.get("{\"id\":\"3\"}", validator);
+        cache.get("{\"id\":\"1\"}", validator);
+        cache.get("{\"id\":\"2\"}", validator);
+
+        assertEquals(2, cache.size());
+        assertEquals(4, validations.get());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    void testCacheCanBeDisabled() {
+        ValidationResultCache cache = new ValidationResultCache(0);
+        AtomicInteger validations = new AtomicInteger();
+        Loader<List<String>, RuntimeException> validator = bundle -> {
+            validations.incrementAndGet();
+            return List.of();
+        };
+
+        cache.get("{\"id\":\"1\"}", validator);
+        cache.get("{\"id\":\"1\"}", validator);
+
+        assertEquals(2, validations.get());
+        assertEquals(0, cache.size());
+    }
+}
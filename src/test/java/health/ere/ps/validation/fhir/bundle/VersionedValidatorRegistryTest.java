@@ -0,0 +1,65 @@
+package health.ere.ps.validation.fhir.bundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.validation.FhirValidator;
+
+class VersionedValidatorRegistryTest {
+
+    FhirValidator validator110 = mock(FhirValidator.class);
+    FhirValidator validator102 = mock(FhirValidator.class);
+
+    private VersionedValidatorRegistry createRegistry() {
+        Map<String, FhirValidator> validators = new LinkedHashMap<>();
+        validators.put("1.1.0", validator110);
+        validators.put("1.0.2", validator102);
+        return new VersionedValidatorRegistry(validators);
+    }
+
+    @Test
+    void testProfileVersionOfText() {
+        assertEquals("1.0.2", VersionedValidatorRegistry.getProfileVersion(
+            "{\"resourceType\":\"Bundle\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2\"]}}"));
+        assertEquals("1.1.0", VersionedValidatorRegistry.getProfileVersion(
+            "<Bundle xmlns=\"http://hl7.org/fhir\"><meta><profile value=\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.1.0\"/></meta></Bundle>"));
+        assertNull(VersionedValidatorRegistry.getProfileVersion(
+            "{\"resourceType\":\"Bundle\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle\"]}}"));
+        assertNull(VersionedValidatorRegistry.getProfileVersion((String) null));
+    }
+
+    @Test
+    void testBundlesAreRoutedByProfileVersion() {
+        VersionedValidatorRegistry registry = createRegistry();
+
+        assertSame(validator102, registry.getValidator(
+            "{\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2\"]}}"));
+        assertSame(validator110, registry.getValidator(
+            "{\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.1.0\"]}}"));
+
+        Bundle bundle = new Bundle();
+        bundle.getMeta().addProfile("https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2");
+        assertSame(validator102, registry.getValidator(bundle));
+    }
+
+    @Test
+    void testUnknownVersionsUseDefaultValidator() {
+        VersionedValidatorRegistry registry = createRegistry();
+
+        assertEquals("1.1.0", registry.getDefaultVersion());
+        assertEquals(List.of("1.1.0", "1.0.2"), List.copyOf(registry.getVersions()));
+        assertSame(validator110, registry.getValidator(
+            "{\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|2.0.0\"]}}"));
+        assertSame(validator110, registry.getValidator("{\"resourceType\":\"Bundle\"}"));
+        assertSame(validator110, registry.getValidator(new Bundle()));
+    }
+}
@@ -0,0 +1,96 @@
+package health.ere.ps.validation.fhir.context.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
+import health.ere.ps.service.fhir.FhirContextProvider;
+
+class ErePrePopulatedValidationSupportTest {
+
+    private static final Path KBV_CONFIG = Paths.get("KBV_FHIR_eRP_V1_1_0");
+    private static final String BVG_URL = "https://fhir.kbv.de/StructureDefinition/KBV_EX_ERP_BVG";
+
+    static FhirContext fhirContext = FhirContextProvider.getFhirContext();
+    static DefaultProfileValidationSupport defaultProfileValidationSupport;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void init() {
+        defaultProfileValidationSupport = new DefaultProfileValidationSupport(fhirContext);
+    }
+
+    private Path createConfigDirectory() throws IOException {
+        Path configDirectory = Files.createDirectories(tempDir.resolve("KBV_FHIR_eRP_V1_1_0"));
+        Files.copy(KBV_CONFIG.resolve("KBV_EX_ERP_BVG.xml"), configDirectory.resolve("KBV_EX_ERP_BVG.xml"));
+        Files.copy(KBV_CONFIG.resolve("Codesystem/KBV_CS_ERP_Section_Type.xml"), configDirectory.resolve("KBV_CS_ERP_Section_Type.xml"));
+        Files.copy(KBV_CONFIG.resolve("Codesystem/KBV_VS_ERP_Accident_Type.xml"), configDirectory.resolve("KBV_VS_ERP_Accident_Type.xml"));
+        return configDirectory;
+    }
+
+    @Test
+    void testSnapshotCacheIsWrittenAndLoaded() throws IOException {
+        Path configDirectory = createConfigDirectory();
+        Path cacheDirectory = tempDir.resolve("cache");
+
+        ErePrePopulatedValidationSupport fromDirectory = new ErePrePopulatedValidationSupport(fhirContext,
+            defaultProfileValidationSupport, configDirectory, cacheDirectory);
+
+        assertFalse(fromDirectory.isLoadedFromSnapshotCache());
+        assertTrue(Files.isRegularFile(fromDirectory.getSnapshotCacheFile()));
+        assertTrue(((StructureDefinition) fromDirectory.fetchStructureDefinition(BVG_URL)).hasSnapshot());
+
+        ErePrePopulatedValidationSupport fromCache = new ErePrePopulatedValidationSupport(fhirContext,
+            defaultProfileValidationSupport, configDirectory, cacheDirectory);
+
+        assertTrue(fromCache.isLoadedFromSnapshotCache());
+        assertEquals(fromDirectory.countAll(), fromCache.countAll());
+        assertTrue(((StructureDefinition) fromCache.fetchStructureDefinition(BVG_URL)).hasSnapshot());
+        assertNotNull(fromCache.fetchCodeSystem("https://fhir.kbv.de/CodeSystem/KBV_CS_ERP_Section_Type"));
+    }
+
+    @Test
+    void testSnapshotCacheIsRebuiltWhenConfigurationChanges() throws IOException {
+        Path configDirectory = createConfigDirectory();
+        Path cacheDirectory = tempDir.resolve("cache");
+        new ErePrePopulatedValidationSupport(fhirContext, defaultProfileValidationSupport, configDirectory, cacheDirectory);
+
+        Files.copy(KBV_CONFIG.resolve("Codesystem/KBV_CS_ERP_Medication_Type.xml"), configDirectory.resolve("KBV_CS_ERP_Medication_Type.xml"));
+        ErePrePopulatedValidationSupport changed = new ErePrePopulatedValidationSupport(fhirContext,
+            defaultProfileValidationSupport, configDirectory, cacheDirectory);
+
+        assertFalse(changed.isLoadedFromSnapshotCache());
+        assertNotNull(changed.fetchCodeSystem("https://fhir.kbv.de/CodeSystem/KBV_CS_ERP_Medication_Type"));
+        assertTrue(new ErePrePopulatedValidationSupport(fhirContext, defaultProfileValidationSupport,
+            configDirectory, cacheDirectory).isLoadedFromSnapshotCache());
+    }
+
+    @Test
+    void testSnapshotCacheCanBeDisabled() throws IOException {
+        ErePrePopulatedValidationSupport support = new ErePrePopulatedValidationSupport(fhirContext,
+            defaultProfileValidationSupport, createConfigDirectory(), null);
+
+        assertNull(support.getSnapshotCacheFile());
+        assertFalse(support.isLoadedFromSnapshotCache());
+        assertNotNull(support.fetchStructureDefinition(BVG_URL));
+        // the configuration has no bundle profile
+        assertEquals("KBV_FHIR_eRP_V1_1_0", support.getKbvProfileVersion());
+        assertFalse(support.hasKbvBundleProfile());
+    }
+}
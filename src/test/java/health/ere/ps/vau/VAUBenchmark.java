@@ -0,0 +1,130 @@
+package health.ere.ps.vau;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import health.ere.ps.vau.VAU.KeyCoords;
+
+/**
+ * Measures encrypting a request and decrypting a response of the VAU for
+ * bundles of 10 KB and 200 KB.
+ * <p>
+ * Run the main method with the test classpath, e.g. from the IDE after
+ * mvn test-compile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VAUBenchmark {
+
+    private static final String REQUEST_ID = "1c51e243bf3f657b8f9d0034e30aac40";
+
+    @Param({"10240", "204800"})
+    int bundleSize;
+
+    private final VAU vau = new VAU();
+    private final VAUEngine vauEngine = new VAUEngine("");
+    private KeyPair keyPair;
+    private KeyCoords vauPublicKey;
+    private byte[] requestHeader;
+    private byte[] bundle;
+    private byte[] encryptedResponse;
+    private VAURequestContext vauRequestContext;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC", BouncyCastleProvider.PROVIDER_NAME);
+        keyPairGenerator.initialize(ECNamedCurveTable.getParameterSpec("brainpoolP256r1"));
+        keyPair = keyPairGenerator.generateKeyPair();
+        BCECPublicKey publicKey = (BCECPublicKey) keyPairGenerator.generateKeyPair().getPublic();
+        vauPublicKey = new KeyCoords(publicKey.getQ().getAffineXCoord().toBigInteger(), publicKey.getQ().getAffineYCoord().toBigInteger());
+
+        bundle = createBundle(bundleSize);
+        requestHeader = ("1 token " + REQUEST_ID + " 42d731ad33d8bf6046caf42b4d25ef0f POST /Task/$create HTTP/1.1\r\n"
+            + "Host: erp.zentral.erp.splitdns.ti-dienste.de\r\n"
+            + "Authorization: Bearer token\r\n"
+            + "Content-Type: application/fhir+xml; charset=utf-8\r\n"
+            + "Content-Length: " + bundle.length + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+
+        byte[] aesKey = new byte[16];
+        new SecureRandom().nextBytes(aesKey);
+        vauRequestContext = new VAURequestContext(REQUEST_ID, aesKey);
+        byte[] responseHeader = ("1 " + REQUEST_ID + " HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/fhir+xml;charset=utf-8\r\n"
+            + "Content-Length: " + bundle.length + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] response = new byte[responseHeader.length + bundle.length];
+        System.arraycopy(responseHeader, 0, response, 0, responseHeader.length);
+        System.arraycopy(bundle, 0, response, responseHeader.length, bundle.length);
+        encryptedResponse = encryptWithKey(response, aesKey);
+    }
+
+    private static byte[] createBundle(int size) {
+        StringBuilder sb = new StringBuilder(size + 200);
+        sb.append("<Bundle xmlns=\"http://hl7.org/fhir\">");
+        while (sb.length() < size - 10) {
+            sb.append("<entry><fullUrl value=\"http://pvs.praxis.local/fhir/Medication/5fe6e06c-8725-46d5-aecd-e65e041ca3de\"/></entry>");
+        }
+        sb.append("</Bundle>");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encryptWithKey(byte[] plainText, byte[] aesKey) throws Exception {
+        byte[] iv = new byte[VAU.IV_LENGTH];
+        new SecureRandom().nextBytes(iv);
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(true, new AEADParameters(new KeyParameter(aesKey), 128, iv));
+        byte[] output = new byte[iv.length + cipher.getOutputSize(plainText.length)];
+        System.arraycopy(iv, 0, output, 0, iv.length);
+        int len = cipher.processBytes(plainText, 0, plainText.length, output, iv.length);
+        cipher.doFinal(output, iv.length + len);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] encryptRequest() throws Exception {
+        return vau.encrypt(keyPair, vauPublicKey, null, requestHeader, bundle);
+    }
+
+    @Benchmark
+    public int decryptResponse() throws Exception {
+        HttpResponse httpResponse = vauEngine.extractHttpResponse(VAU.decryptWithKey(encryptedResponse, vauRequestContext.getAesKey()), vauRequestContext);
+        try (InputStream inputStream = httpResponse.getEntity().getContent()) {
+            return inputStream.readAllBytes().length;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().include(VAUBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,64 @@
+package health.ere.ps.vau;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+
+import javax.net.ssl.SSLContext;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+
+import org.apache.http.pool.PoolStats;
+import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
+import org.junit.jupiter.api.Test;
+
+class VAUConnectionPoolTest {
+
+    @Test
+    void testDefaultsForInvalidValues() {
+        VAUConnectionPool vauConnectionPool = new VAUConnectionPool(0, -1, null, Duration.ZERO, null, null, null);
+
+        assertEquals(VAUConnectionPool.DEFAULT_MAX_TOTAL, vauConnectionPool.getStats().getMax());
+        assertEquals(VAUConnectionPool.DEFAULT_MAX_PER_ROUTE, vauConnectionPool.getConnectionManager().getDefaultMaxPerRoute());
+        assertEquals(VAUConnectionPool.DEFAULT_CONNECT_TIMEOUT.toMillis(), vauConnectionPool.getRequestConfig().getConnectTimeout());
+        assertEquals(VAUConnectionPool.DEFAULT_SOCKET_TIMEOUT.toMillis(), vauConnectionPool.getRequestConfig().getSocketTimeout());
+    }
+
+    @Test
+    void testDefaultSslContextIsNotChanged() throws Exception {
+        int defaultSessionTimeout = SSLContext.getDefault().getClientSessionContext().getSessionTimeout();
+
+        new VAUConnectionPool(4, 2, null, null, null, null, Duration.ofSeconds(defaultSessionTimeout + 42));
+
+        assertEquals(defaultSessionTimeout, SSLContext.getDefault().getClientSessionContext().getSessionTimeout());
+    }
+
+    @Test
+    void testConnectionIsReused() throws Exception {
+        try (VAUServerStub vauServerStub = new VAUServerStub(innerRequest -> "<Bundle xmlns=\"http://hl7.org/fhir\"/>", 0)) {
+            VAUConnectionPool vauConnectionPool = new VAUConnectionPool(4, 2, Duration.ofMinutes(1), Duration.ofMinutes(5),
+                Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofHours(1));
+            VAUEngine vauEngine = new VAUEngine(vauServerStub.getUrl(), VAUKeyCache.DEFAULT_TTL, vauConnectionPool);
+            Client client = ((ResteasyClientBuilderImpl) ClientBuilder.newBuilder()).httpEngine(vauEngine).build();
+            try {
+                for(int i = 0; i < 5; i++) {
+                    try (Response response = client.target(vauServerStub.getUrl()).path("/Task/" + i + "/$activate").request()
+                        .header("User-Agent", "VAUConnectionPoolTest")
+                        .header("Authorization", "Bearer token")
+                        .post(Entity.entity("<Parameters xmlns=\"http://hl7.org/fhir\"/>", "application/fhir+xml; charset=utf-8"))) {
+                        assertEquals(200, response.getStatus());
+                    }
+                }
+                // all sequential requests used the same keep-alive connection
+                PoolStats stats = vauConnectionPool.getStats();
+                assertEquals(0, stats.getLeased());
+                assertEquals(1, stats.getAvailable());
+                assertEquals(4, stats.getMax());
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
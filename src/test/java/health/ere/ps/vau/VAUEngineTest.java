@@ -1,12 +1,24 @@
 package health.ere.ps.vau;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
+import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
 import org.junit.jupiter.api.Test;
 
 class VAUEngineTest {
@@ -24,10 +36,51 @@ class VAUEngineTest {
         "\n"+
         "<OperationOutcome xmlns=\"http://hl7.org/fhir\"><meta><profile value=\"http://hl7.org/fhir/StructureDefinition/OperationOutcome\"/></meta><issue><severity value=\"error\"/><code value=\"unknown\"/><details><text value=\"Access Token Error: Expired!\"/></details></issue></OperationOutcome>";
         VAUEngine vauEngine = new VAUEngine("");
-        vauEngine.requestid = "1c51e243bf3f657b8f9d0034e30aac40";
-        HttpResponse res = vauEngine.extractHttpResponse(testResponse);
+        VAURequestContext vauRequestContext = new VAURequestContext("1c51e243bf3f657b8f9d0034e30aac40", new byte[16]);
+        HttpResponse res = vauEngine.extractHttpResponse(testResponse, vauRequestContext);
         assertEquals(401, res.getStatusLine().getStatusCode());
         assertEquals("application/fhir+xml", res.getFirstHeader("content-type").getValue());
         assertEquals("<OperationOutcome xmlns=\"http://hl7.org/fhir\"><meta><profile value=\"http://hl7.org/fhir/StructureDefinition/OperationOutcome\"/></meta><issue><severity value=\"error\"/><code value=\"unknown\"/><details><text value=\"Access Token Error: Expired!\"/></details></issue></OperationOutcome>", new String(res.getEntity().getContent().readAllBytes()));
     }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        // the stub answers with the first line and the authorization header of the inner request
+        try (VAUServerStub vauServerStub = new VAUServerStub(innerRequest -> {
+                String[] lines = innerRequest.split("\r\n");
+                return lines[0] + "|" + lines[2];
+            }, 20)) {
+            VAUEngine vauEngine = new VAUEngine(vauServerStub.getUrl());
+            Client client = ((ResteasyClientBuilderImpl) ClientBuilder.newBuilder()).httpEngine(vauEngine).build();
+            ExecutorService executorService = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<String>> futures = new ArrayList<>();
+                for(int i = 0; i < 64; i++) {
+                    final int number = i;
+                    futures.add(executorService.submit(() -> {
+                        try (Response response = client.target(vauServerStub.getUrl()).path("/Task/" + number + "/$activate").request()
+                            .header("User-Agent", "VAUEngineTest")
+                            .header("Authorization", "Bearer token-" + number)
+                            .post(Entity.entity("<Parameters xmlns=\"http://hl7.org/fhir\"/>", "application/fhir+xml; charset=utf-8"))) {
+                            assertEquals(200, response.getStatus());
+                            return response.readEntity(String.class);
+                        }
+                    }));
+                }
+                for(int i = 0; i < futures.size(); i++) {
+                    assertEquals("POST /Task/" + i + "/$activate HTTP/1.1|Authorization: Bearer token-" + i, futures.get(i).get());
+                }
+            } finally {
+                executorService.shutdown();
+                client.close();
+            }
+            // the user pseudonym from the responses is used for the following requests
+            assertEquals(VAUServerStub.USER_PSEUDONYM, vauEngine.userpseudonym);
+            List<String> vauPaths = vauServerStub.getVauPaths();
+            assertTrue(vauPaths.contains("/VAU/" + VAUServerStub.USER_PSEUDONYM));
+            assertEquals("/VAU/" + VAUServerStub.USER_PSEUDONYM, vauPaths.get(vauPaths.size() - 1));
+            // the certificate was only downloaded once
+            assertEquals(1, vauEngine.getVauKeyCache().getMisses());
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package health.ere.ps.vau;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.MutableClock;
+import health.ere.ps.vau.VAU.KeyCoords;
+
+class VAUKeyCacheTest {
+
+    @Test
+    void testHitsAndMisses() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        MutableClock clock = new MutableClock();
+        VAUKeyCache vauKeyCache = new VAUKeyCache(() -> {
+            loads.incrementAndGet();
+            return new VAUKeyCache.Entry(new KeyCoords(BigInteger.ONE, BigInteger.TWO), null);
+        }, Duration.ofMinutes(10), clock, false);
+
+        KeyCoords keyCoords = vauKeyCache.get();
+        assertSame(keyCoords, vauKeyCache.get());
+        assertSame(keyCoords, vauKeyCache.get());
+
+        assertEquals(1, loads.get());
+        assertEquals(1, vauKeyCache.getMisses());
+        assertEquals(2, vauKeyCache.getHits());
+        assertEquals(clock.now.plus(Duration.ofMinutes(10)), vauKeyCache.getValidUntil());
+    }
+
+    @Test
+    void testExpiresWithCertificateValidity() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        MutableClock clock = new MutableClock();
+        Instant ocspNextUpdate = clock.now.plus(Duration.ofMinutes(1));
+        VAUKeyCache vauKeyCache = new VAUKeyCache(() -> {
+            loads.incrementAndGet();
+            return new VAUKeyCache.Entry(new KeyCoords(BigInteger.ONE, BigInteger.TWO), ocspNextUpdate);
+        }, Duration.ofMinutes(10), clock, false);
+
+        vauKeyCache.get();
+        assertEquals(ocspNextUpdate, vauKeyCache.getValidUntil());
+
+        clock.now = clock.now.plus(Duration.ofMinutes(2));
+        vauKeyCache.get();
+        assertEquals(2, loads.get());
+        assertEquals(2, vauKeyCache.getMisses());
+    }
+
+    @Test
+    void testInvalidate() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        VAUKeyCache vauKeyCache = new VAUKeyCache(() -> {
+            loads.incrementAndGet();
+            return new VAUKeyCache.Entry(new KeyCoords(BigInteger.ONE, BigInteger.TWO), null);
+        }, Duration.ofMinutes(10), new MutableClock(), false);
+
+        vauKeyCache.get();
+        vauKeyCache.invalidate();
+        vauKeyCache.get();
+
+        assertEquals(2, loads.get());
+        assertEquals(1, vauKeyCache.getInvalidations());
+    }
+
+    @Test
+    void testRefreshKeepsEntryOnError() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        VAUKeyCache vauKeyCache = new VAUKeyCache(() -> {
+            if(loads.incrementAndGet() > 1) {
+                throw new IOException("Prescription server not reachable");
+            }
+            return new VAUKeyCache.Entry(new KeyCoords(BigInteger.ONE, BigInteger.TWO), null);
+        }, Duration.ofMinutes(10), new MutableClock(), false);
+
+        KeyCoords keyCoords = vauKeyCache.get();
+        vauKeyCache.refresh();
+        assertSame(keyCoords, vauKeyCache.get());
+        assertEquals(0, vauKeyCache.getRefreshes());
+
+        vauKeyCache.invalidate();
+        assertThrows(IOException.class, vauKeyCache::get);
+    }
+}
@@ -0,0 +1,170 @@
+package health.ere.ps.vau;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.HKDFParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local VAU of a prescription server for tests.
+ * <p>
+ * It serves the VAU certificate, decrypts the inner HTTP request, passes it to
+ * the given handler and encrypts the returned body with the AES key of the
+ * request.
+ */
+public class VAUServerStub implements AutoCloseable {
+
+    public static final String USER_PSEUDONYM = "stub-pseudonym";
+
+    private final HttpServer server;
+    private final ExecutorService executorService = Executors.newFixedThreadPool(16);
+    private final KeyPair keyPair;
+    private final X509Certificate certificate;
+    private final Function<String, String> handler;
+    private final int maxDelayMillis;
+    private final List<String> vauPaths = new CopyOnWriteArrayList<>();
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    /**
+     * @param handler gets the decrypted inner HTTP request and returns the response body
+     * @param maxDelayMillis every response is delayed randomly up to this value
+     */
+    public VAUServerStub(Function<String, String> handler, int maxDelayMillis) throws Exception {
+        this.handler = handler;
+        this.maxDelayMillis = maxDelayMillis;
+        Security.addProvider(new BouncyCastleProvider());
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC", BouncyCastleProvider.PROVIDER_NAME);
+        keyPairGenerator.initialize(ECNamedCurveTable.getParameterSpec("brainpoolP256r1"), secureRandom);
+        keyPair = keyPairGenerator.generateKeyPair();
+        X500Name name = new X500Name("CN=VAU Stub");
+        certificate = new JcaX509CertificateConverter().setProvider(BouncyCastleProvider.PROVIDER_NAME)
+            .getCertificate(new JcaX509v3CertificateBuilder(name, BigInteger.ONE,
+                new Date(System.currentTimeMillis() - 60000), new Date(System.currentTimeMillis() + 3600000),
+                name, keyPair.getPublic())
+            .build(new JcaContentSignerBuilder("SHA256withECDSA").setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keyPair.getPrivate())));
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executorService);
+        byte[] encodedCertificate = certificate.getEncoded();
+        server.createContext("/VAUCertificate", exchange -> send(exchange, 200, "application/pkix-cert", encodedCertificate));
+        server.createContext("/VAU/", this::handleVau);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public List<String> getVauPaths() {
+        return this.vauPaths;
+    }
+
+    private void handleVau(HttpExchange exchange) throws IOException {
+        vauPaths.add(exchange.getRequestURI().getPath());
+        try {
+            byte[] message = exchange.getRequestBody().readAllBytes();
+            // 1 {bearer} {requestid} {aeskey} {inner http request}
+            String[] parts = new String(decrypt(message), StandardCharsets.UTF_8).split(" ", 5);
+            String requestId = parts[2];
+            byte[] aesKey = DatatypeConverter.parseHexBinary(parts[3]);
+            String body = handler.apply(parts[4]);
+            Thread.sleep(ThreadLocalRandom.current().nextInt(maxDelayMillis + 1));
+            byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+            String innerResponse = "1 " + requestId + " HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/fhir+xml\r\n"
+                + "Content-Length: " + bodyBytes.length + "\r\n\r\n" + body;
+            exchange.getResponseHeaders().add("userpseudonym", USER_PSEUDONYM);
+            send(exchange, 200, "application/octet-stream", encryptWithKey(innerResponse.getBytes(StandardCharsets.UTF_8), aesKey));
+        } catch (Exception e) {
+            send(exchange, 500, "text/plain", e.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private byte[] decrypt(byte[] message) throws Exception {
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(message, 1, 33));
+        BigInteger y = new BigInteger(1, Arrays.copyOfRange(message, 33, 65));
+        byte[] iv = Arrays.copyOfRange(message, 65, 77);
+        byte[] cipherText = Arrays.copyOfRange(message, 77, message.length);
+
+        ECDHBasicAgreement agreement = new ECDHBasicAgreement();
+        agreement.init(new ECPrivateKeyParameters(((BCECPrivateKey) keyPair.getPrivate()).getD(), VAU.getECDomain()));
+        byte[] sharedSecret = VAU.make32ByteLong(agreement.calculateAgreement(
+            new ECPublicKeyParameters(VAU.x9EC.getCurve().createPoint(x, y), VAU.getECDomain())).toByteArray());
+
+        HKDFBytesGenerator hkdfBytesGenerator = new HKDFBytesGenerator(new SHA256Digest());
+        hkdfBytesGenerator.init(new HKDFParameters(sharedSecret, new byte[0], "ecies-vau-transport".getBytes()));
+        byte[] aesKey = new byte[16];
+        hkdfBytesGenerator.generateBytes(aesKey, 0, aesKey.length);
+
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(false, new AEADParameters(new KeyParameter(aesKey), 128, iv));
+        byte[] plainText = new byte[cipher.getOutputSize(cipherText.length)];
+        int len = cipher.processBytes(cipherText, 0, cipherText.length, plainText, 0);
+        cipher.doFinal(plainText, len);
+        return plainText;
+    }
+
+    private byte[] encryptWithKey(byte[] plainText, byte[] aesKey) throws Exception {
+        byte[] iv = new byte[12];
+        secureRandom.nextBytes(iv);
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(true, new AEADParameters(new KeyParameter(aesKey), 128, iv));
+        byte[] output = new byte[iv.length + cipher.getOutputSize(plainText.length)];
+        System.arraycopy(iv, 0, output, 0, iv.length);
+        int len = cipher.processBytes(plainText, 0, plainText.length, output, iv.length);
+        cipher.doFinal(output, iv.length + len);
+        return output;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+}
@@ -0,0 +1,96 @@
+package health.ere.ps.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.websocket.Session;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.event.ERezeptWithDocumentsEvent;
+import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
+import health.ere.ps.model.pdf.ERezeptDocument;
+
+class BinaryDocumentsMessageTest {
+
+    @Test
+    void testPdfIsSentAsBinaryFrame() {
+        byte[] pdf = "%PDF-1.4 test".getBytes(StandardCharsets.US_ASCII);
+        Bundle bundle = new Bundle();
+        bundle.setId("1");
+        ERezeptDocument document = new ERezeptDocument(List.of(new BundleWithAccessCodeOrThrowable(bundle, "ACCESS_CODE")), pdf);
+        ERezeptDocument documentWithoutPdf = new ERezeptDocument(List.of(), null);
+
+        BinaryDocumentsMessage binaryDocumentsMessage = BinaryDocumentsMessage.create(Websocket.messageWriter,
+            new ERezeptWithDocumentsEvent(List.of(document, documentWithoutPdf), null, "42"));
+
+        JsonObject message = Json.createReader(new StringReader(binaryDocumentsMessage.getMessage())).readObject();
+        assertEquals("ERezeptWithDocuments", message.getString("type"));
+        assertEquals("42", message.getString("replyToMessageId"));
+        JsonObject pdfDocument = message.getJsonArray("payload").getJsonObject(0).getJsonObject("pdfDocument");
+        assertEquals(pdf.length, pdfDocument.getInt("size"));
+        assertEquals("ACCESS_CODE", message.getJsonArray("payload").getJsonObject(0)
+            .getJsonArray("bundleWithAccessCodeOrThrowables").getJsonObject(0).getString("accessCode"));
+        assertFalse(message.getJsonArray("payload").getJsonObject(1).containsKey("pdfDocument"));
+
+        assertEquals(1, binaryDocumentsMessage.getFrames().size());
+        ByteBuffer frame = binaryDocumentsMessage.getFrames().get(0).duplicate();
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        assertEquals(pdfDocument.getString("binaryFrameId"),
+            new String(bytes, 0, BinaryDocumentsMessage.FRAME_ID_LENGTH, StandardCharsets.US_ASCII));
+        assertArrayEquals(pdf, Arrays.copyOfRange(bytes, BinaryDocumentsMessage.FRAME_ID_LENGTH, bytes.length));
+    }
+
+    @Test
+    void testMessageMatchesTheJsonOfTheDocuments() {
+        Bundle bundle = new Bundle();
+        bundle.setId("1");
+        ERezeptWithDocumentsEvent event = new ERezeptWithDocumentsEvent(List.of(
+            new ERezeptDocument(List.of(new BundleWithAccessCodeOrThrowable(bundle, "ACCESS_CODE")), new byte[] {1, 2}),
+            new ERezeptDocument(List.of(new BundleWithAccessCodeOrThrowable(new IllegalStateException("failed"))), null)),
+            null, "42");
+
+        JsonObject binaryMessage = Json.createReader(new StringReader(
+            BinaryDocumentsMessage.create(Websocket.messageWriter, event).getMessage())).readObject();
+        JsonObject textMessage = Json.createReader(new StringReader(Websocket.messageWriter.toMessage(
+            "ERezeptWithDocuments", event.getERezeptWithDocuments(), "42"))).readObject();
+
+        assertEquals(textMessage.keySet(), binaryMessage.keySet());
+        assertEquals(textMessage.getString("replyToMessageId"), binaryMessage.getString("replyToMessageId"));
+        JsonArray textPayload = textMessage.getJsonArray("payload");
+        JsonArray binaryPayload = binaryMessage.getJsonArray("payload");
+        assertEquals(textPayload.size(), binaryPayload.size());
+        for (int i = 0; i < textPayload.size(); i++) {
+            assertEquals(textPayload.getJsonObject(i).keySet(), binaryPayload.getJsonObject(i).keySet());
+            assertEquals(textPayload.getJsonObject(i).get("bundleWithAccessCodeOrThrowables"),
+                binaryPayload.getJsonObject(i).get("bundleWithAccessCodeOrThrowables"));
+        }
+    }
+
+    @Test
+    void testSessionOptsInWithRequestParameter() {
+        Session binarySession = mock(Session.class);
+        when(binarySession.getRequestParameterMap()).thenReturn(Map.of("documents", List.of("binary")));
+        Session textSession = mock(Session.class);
+        when(textSession.getRequestParameterMap()).thenReturn(Map.of());
+
+        assertTrue(BinaryDocumentsMessage.isBinaryDocumentsSession(binarySession));
+        assertFalse(BinaryDocumentsMessage.isBinaryDocumentsSession(textSession));
+    }
+}
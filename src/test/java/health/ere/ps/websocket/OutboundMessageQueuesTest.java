@@ -0,0 +1,128 @@
+package health.ere.ps.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.websocket.RemoteEndpoint.Async;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class OutboundMessageQueuesTest {
+
+    @Test
+    void testMessagesAreSentOneAfterTheOther() {
+        Session session = mock(Session.class);
+        when(session.isOpen()).thenReturn(true);
+        Async async = mock(Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        OutboundMessageQueues queues = new OutboundMessageQueues(10);
+
+        queues.send(session, "1", List.of(ByteBuffer.wrap(new byte[] {1})), "Unable to send 1");
+        queues.send(session, "2", (String) null, "Unable to send 2");
+
+        ArgumentCaptor<SendHandler> sendHandlerCaptor = ArgumentCaptor.forClass(SendHandler.class);
+        verify(async).sendObject(anyString(), sendHandlerCaptor.capture());
+        assertEquals(Map.of("null", 1), queues.getQueueDepths());
+
+        sendHandlerCaptor.getValue().onResult(new SendResult());
+        verify(async).sendBinary(any(), sendHandlerCaptor.capture());
+        verify(async, times(1)).sendObject(anyString(), any());
+
+        sendHandlerCaptor.getValue().onResult(new SendResult());
+        ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+        verify(async, times(2)).sendObject(messageCaptor.capture(), any());
+        assertEquals(List.of("1", "2"), messageCaptor.getAllValues());
+        assertEquals(Map.of("null", 0), queues.getQueueDepths());
+    }
+
+    @Test
+    void testMessagesWrittenDuringTheSendDoNotGrowTheStack() {
+        Session session = mock(Session.class);
+        when(session.isOpen()).thenReturn(true);
+        Async async = mock(Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        AtomicReference<SendHandler> pending = new AtomicReference<>();
+        AtomicInteger sent = new AtomicInteger();
+        doAnswer(invocation -> {
+            SendHandler sendHandler = invocation.getArgument(1);
+            if (sent.incrementAndGet() == 1) {
+                pending.set(sendHandler);
+            } else {
+                // the message is written before sendObject returns
+                sendHandler.onResult(new SendResult());
+            }
+            return null;
+        }).when(async).sendObject(anyString(), any());
+        int messages = 50000;
+        OutboundMessageQueues queues = new OutboundMessageQueues(messages);
+
+        for (int i = 0; i < messages; i++) {
+            queues.send(session, String.valueOf(i), (String) null, "Unable to send");
+        }
+        pending.get().onResult(new SendResult());
+
+        assertEquals(messages, sent.get());
+        assertEquals(Map.of("null", 0), queues.getQueueDepths());
+    }
+
+    @Test
+    void testSlowClientOnlyGetsLatestNotificationAndDropsMessages() {
+        Session session = mock(Session.class);
+        when(session.isOpen()).thenReturn(true);
+        Async async = mock(Async.class);
+        when(session.getId()).thenReturn("slow");
+        when(session.getAsyncRemote()).thenReturn(async);
+        OutboundMessageQueues queues = new OutboundMessageQueues(2);
+
+        assertTrue(queues.send(session, "sending", (String) null, "Unable to send"));
+        assertTrue(queues.send(session, "notification 1", "Notification", "Unable to send"));
+        assertTrue(queues.send(session, "notification 2", "Notification", "Unable to send"));
+        assertEquals(1, queues.getCoalescedMessages());
+        assertTrue(queues.send(session, "bundles 1", (String) null, "Unable to send"));
+        // the notification is dropped for the bundles
+        assertTrue(queues.send(session, "bundles 2", (String) null, "Unable to send"));
+        assertFalse(queues.send(session, "bundles 3", (String) null, "Unable to send"));
+        assertEquals(2, queues.getDroppedMessages());
+        assertEquals(Map.of("slow", 2), queues.getQueueDepths());
+
+        queues.close(session);
+        assertEquals(Map.of(), queues.getQueueDepths());
+    }
+
+    @Test
+    void testNoQueueIsCreatedAfterClose() {
+        Session session = mock(Session.class);
+        Async async = mock(Async.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAsyncRemote()).thenReturn(async);
+        OutboundMessageQueues queues = new OutboundMessageQueues(10);
+
+        assertTrue(queues.send(session, "1", (String) null, "Unable to send"));
+        when(session.isOpen()).thenReturn(false);
+        queues.close(session);
+        // e.g. the validation result of a tab that was closed
+        assertFalse(queues.send(session, "2", (String) null, "Unable to send"));
+        assertFalse(queues.send(session, "3", List.of(ByteBuffer.wrap(new byte[] {1})), "Unable to send"));
+
+        assertEquals(Map.of(), queues.getQueueDepths());
+        verify(async, times(1)).sendObject(anyString(), any());
+    }
+}
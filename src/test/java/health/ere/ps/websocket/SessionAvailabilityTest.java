@@ -0,0 +1,66 @@
+package health.ere.ps.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.websocket.Session;
+
+import org.junit.jupiter.api.Test;
+
+class SessionAvailabilityTest {
+
+    @Test
+    void testMessagesAreReplayedToNextSession() throws InterruptedException {
+        Set<Session> sessions = new CopyOnWriteArraySet<>();
+        AtomicInteger browserStarts = new AtomicInteger();
+        CountDownLatch browserStarted = new CountDownLatch(1);
+        SessionAvailability sessionAvailability = new SessionAvailability(sessions, 2, () -> {
+            browserStarts.incrementAndGet();
+            browserStarted.countDown();
+        });
+
+        assertTrue(sessionAvailability.keepIfNoSession("1", true));
+        assertTrue(sessionAvailability.keepIfNoSession("2", true));
+        assertTrue(sessionAvailability.keepIfNoSession("3", true));
+        assertTrue(browserStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, browserStarts.get());
+
+        Session session = mock(Session.class);
+        List<String> replayed = new ArrayList<>();
+        assertEquals(2, sessionAvailability.open(session, message -> {
+            // the session is added after the replay
+            assertFalse(sessions.contains(session));
+            replayed.add(message);
+        }));
+        // the oldest message was dropped
+        assertEquals(List.of("2", "3"), replayed);
+        assertTrue(sessions.contains(session));
+        assertFalse(sessionAvailability.keepIfNoSession("4", true));
+        assertEquals(0, sessionAvailability.getReplayQueueSize());
+    }
+
+    @Test
+    void testBrowserIsOnlyStartedWhenRequested() {
+        Set<Session> sessions = new CopyOnWriteArraySet<>();
+        AtomicInteger browserStarts = new AtomicInteger();
+        SessionAvailability sessionAvailability = new SessionAvailability(sessions, 2, browserStarts::incrementAndGet);
+
+        assertTrue(sessionAvailability.keepIfNoSession("exception", false));
+        assertEquals(1, sessionAvailability.getReplayQueueSize());
+        assertFalse(sessionAvailability.isBrowserStarted());
+
+        sessionAvailability.open(mock(Session.class), message -> { });
+        sessionAvailability.startBrowserIfNoSession();
+        assertFalse(sessionAvailability.isBrowserStarted());
+    }
+}
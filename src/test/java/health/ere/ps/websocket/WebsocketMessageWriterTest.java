@@ -0,0 +1,52 @@
+package health.ere.ps.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.bind.JsonbBuilder;
+
+import org.junit.jupiter.api.Test;
+
+class WebsocketMessageWriterTest {
+
+    WebsocketMessageWriter messageWriter = new WebsocketMessageWriter(JsonbBuilder.create());
+
+    @Test
+    void testMessageIsCompact() {
+        String message = messageWriter.toMessage("HTMLBundles", List.of("<html/>"), "1");
+
+        assertEquals("{\"type\":\"HTMLBundles\",\"payload\":[\"<html/>\"],\"replyToMessageId\":\"1\"}", message);
+    }
+
+    @Test
+    void testPayloadWriterAndEscaping() {
+        String message = messageWriter.toMessage("Bundles", writer -> writer.write("[{\"id\":\"a\"}]"),
+            "quote\" backslash\\ newline\n");
+
+        JsonObject object = Json.createReader(new StringReader(message)).readObject();
+        assertEquals("Bundles", object.getString("type"));
+        assertEquals("a", object.getJsonArray("payload").getJsonObject(0).getString("id"));
+        assertEquals("quote\" backslash\\ newline\n", object.getString("replyToMessageId"));
+    }
+
+    @Test
+    void testReplyToMessageIdIsLeftOutWhenNull() {
+        assertEquals("{\"type\":\"Settings\",\"payload\":{\"a\":\"b\"}}",
+            messageWriter.toMessage("Settings", Map.of("a", "b"), null));
+    }
+
+    @Test
+    void testLargeBufferIsNotReused() {
+        String large = "x".repeat(WebsocketMessageWriter.MAX_REUSED_CAPACITY + 1);
+
+        assertEquals("{\"type\":\"Publish\",\"payload\":[\"\"],\"replyToMessageId\":\"1\"}".length() + large.length(),
+            messageWriter.toMessage("Publish", List.of(large), "1").length());
+        assertEquals("{\"type\":\"Publish\",\"payload\":[],\"replyToMessageId\":\"1\"}",
+            messageWriter.toMessage("Publish", List.of(), "1"));
+    }
+}
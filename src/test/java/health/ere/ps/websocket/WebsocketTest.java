@@ -1,8 +1,13 @@
 package health.ere.ps.websocket;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -12,13 +17,18 @@ import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.enterprise.event.Event;
 import javax.json.Json;
 import javax.websocket.RemoteEndpoint.Async;
 import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 
 import org.hl7.fhir.r4.model.Bundle;
@@ -28,8 +38,10 @@ import org.mockito.ArgumentCaptor;
 
 import ca.uhn.fhir.context.FhirContext;
 import health.ere.ps.event.ERezeptWithDocumentsEvent;
+import health.ere.ps.event.EreLogNotificationEvent;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
 import health.ere.ps.model.pdf.ERezeptDocument;
+import health.ere.ps.validation.fhir.bundle.PrescriptionBundleValidator;
 
 class WebsocketTest {
 
@@ -57,7 +69,7 @@ class WebsocketTest {
     ERezeptDocument eRezeptDocument = new ERezeptDocument(list, Files.readAllBytes(Paths.get("src/test/resources/document-service/0428d416-149e-48a4-977c-394887b3d85c.pdf")));
       String json = websocket.generateJson(new ERezeptWithDocumentsEvent(List.of(eRezeptDocument)));
 
-    Files.writeString(Paths.get("src/test/resources/websocket-messages/ERezeptDocuments.json"), json);
+    Files.writeString(Paths.get("target/ERezeptDocuments.json"), json);
   }
   @Test
   void testOnMessageNull() {
@@ -74,6 +86,7 @@ class WebsocketTest {
   void testOnMessageInvalidJsonWithReplyTo() {
     Websocket websocket = new Websocket();
     Session mockedSession = mock(Session.class);
+    when(mockedSession.isOpen()).thenReturn(true);
 
     Async mockedAsync = mock(Async.class);
 
@@ -92,4 +105,100 @@ class WebsocketTest {
     assertEquals("Exception", exceptionObject.getString("type"));
 
   }
+
+  @Test
+  void testOnERezeptDocumentsSendsBinaryFrameAfterMessage() throws IOException {
+    Websocket websocket = new Websocket();
+    Session mockedSession = mock(Session.class);
+    when(mockedSession.isOpen()).thenReturn(true);
+    Async mockedAsync = mock(Async.class);
+    when(mockedSession.getAsyncRemote()).thenReturn(mockedAsync);
+    when(mockedSession.getRequestParameterMap()).thenReturn(Map.of("documents", List.of("binary")));
+    byte[] pdf = Files.readAllBytes(Paths.get("src/test/resources/document-service/0428d416-149e-48a4-977c-394887b3d85c.pdf"));
+    ERezeptDocument eRezeptDocument = new ERezeptDocument(new ArrayList<>(), pdf);
+
+    websocket.onERezeptDocuments(new ERezeptWithDocumentsEvent(List.of(eRezeptDocument), mockedSession, "1"));
+
+    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<SendHandler> sendHandlerCaptor = ArgumentCaptor.forClass(SendHandler.class);
+    verify(mockedAsync).sendObject(messageCaptor.capture(), sendHandlerCaptor.capture());
+    verify(mockedAsync, never()).sendBinary(any(), any());
+    assertEquals(pdf.length, Json.createReader(new StringReader(messageCaptor.getValue())).readObject()
+        .getJsonArray("payload").getJsonObject(0).getJsonObject("pdfDocument").getInt("size"));
+
+    sendHandlerCaptor.getValue().onResult(new SendResult());
+
+    ArgumentCaptor<ByteBuffer> frameCaptor = ArgumentCaptor.forClass(ByteBuffer.class);
+    verify(mockedAsync).sendBinary(frameCaptor.capture(), any());
+    assertEquals(36 + pdf.length, frameCaptor.getValue().remaining());
+    verify(mockedAsync, never()).sendObject(anyString());
+  }
+
+  @Test
+  void testNotificationIsWrittenWithTheConfiguredMessageWriter() {
+    Websocket websocket = new Websocket();
+    websocket.prettyPrint = true;
+    Session mockedSession = mock(Session.class);
+    when(mockedSession.isOpen()).thenReturn(true);
+    when(mockedSession.getId()).thenReturn("notification-session");
+    Async mockedAsync = mock(Async.class);
+    when(mockedSession.getAsyncRemote()).thenReturn(mockedAsync);
+    websocket.onOpen(mockedSession);
+
+    try {
+      websocket.onEreLogNotificationEvent(new EreLogNotificationEvent(List.of("test"), "Signed", "OK",
+          "Bundle was signed", List.of(), Map.of()));
+
+      ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+      verify(mockedAsync).sendObject(messageCaptor.capture(), any());
+      javax.json.JsonObject notification = Json.createReader(new StringReader(messageCaptor.getValue())).readObject();
+      assertEquals("Notification", notification.getString("type"));
+      assertEquals("Signed", notification.getJsonObject("payload").getString("simpleLogMessage"));
+      assertTrue(messageCaptor.getValue().contains("\n"));
+    } finally {
+      websocket.onClose(mockedSession);
+    }
+  }
+
+  @Test
+  void testOnMessageRepliesBusyWhenSessionQueueIsFull() throws InterruptedException {
+    Websocket websocket = new Websocket();
+    websocket.sessionQueueCapacity = 1;
+    websocket.prescriptionBundleValidator = mock(PrescriptionBundleValidator.class);
+    CountDownLatch validating = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(websocket.prescriptionBundleValidator.bundlesValidationResult(any())).thenAnswer(invocation -> {
+      validating.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return Json.createObjectBuilder().add("type", "BundlesValidationResult").build();
+    });
+    Session mockedSession = mock(Session.class);
+    when(mockedSession.isOpen()).thenReturn(true);
+    Async mockedAsync = mock(Async.class);
+    when(mockedSession.getId()).thenReturn("busy-session");
+    when(mockedSession.getAsyncRemote()).thenReturn(mockedAsync);
+    // the messages of a session are sent one after the other, the client reads them
+    doAnswer(invocation -> {
+      invocation.<SendHandler>getArgument(1).onResult(new SendResult());
+      return null;
+    }).when(mockedAsync).sendObject(anyString(), any());
+
+    websocket.onMessage("{\"type\":\"ValidateBundles\",\"id\":\"1\",\"payload\":[]}", mockedSession);
+    assertTrue(validating.await(5, TimeUnit.SECONDS));
+    websocket.onMessage("{\"type\":\"ValidateBundles\",\"id\":\"2\",\"payload\":[]}", mockedSession);
+    websocket.onMessage("{\"type\":\"ValidateBundles\",\"id\":\"3\",\"payload\":[]}", mockedSession);
+
+    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    verify(mockedAsync).sendObject(messageCaptor.capture(), any());
+    javax.json.JsonObject busy = Json.createReader(new StringReader(messageCaptor.getValue())).readObject();
+    assertEquals("Busy", busy.getString("type"));
+    assertEquals("3", busy.getString("replyToMessageId"));
+    assertEquals("ValidateBundles", busy.getJsonObject("payload").getString("messageType"));
+
+    release.countDown();
+    // the busy reply and the two validation results
+    verify(mockedAsync, timeout(5000).times(3)).sendObject(anyString(), any());
+    verify(websocket.prescriptionBundleValidator, times(2)).bundlesValidationResult(any());
+    websocket.onClose(mockedSession);
+  }
 }
@@ -26,8 +26,8 @@ public class ResponseEventEncoderTest {
             response = e.getMessage();
         }
         
-        assertEquals("{\"payload\":{\"attribute\":\"TestPayload\"},\"replyToMessageId\":\"ReplyToID\",\"type\":\"StatusResponse\"}", 
-                     response.replaceAll("\\s+",""));
+        assertEquals("{\"type\":\"StatusResponse\",\"payload\":{\"attribute\":\"TestPayload\"},\"replyToMessageId\":\"ReplyToID\"}", 
+                     response);
     }
 
     public class ResponsePayload implements Serializable{